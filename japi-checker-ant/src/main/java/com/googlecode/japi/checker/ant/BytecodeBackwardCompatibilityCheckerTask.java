@@ -35,6 +35,7 @@ public class BytecodeBackwardCompatibilityCheckerTask extends Task {
 	private File referenceFile;
 	private File file;
 	private boolean failOnError = true;
+	private int maxErrors;
 	private List<Path> classpaths = new ArrayList<Path>();
 	private List<Path> referenceClasspaths = new ArrayList<Path>();
 	private List<RuleSet> ruleSets = new ArrayList<RuleSet>();
@@ -59,6 +60,10 @@ public class BytecodeBackwardCompatibilityCheckerTask extends Task {
 		this.failOnError = failOnError;
 	}
 
+	public void setMaxErrors(int maxErrors) {
+		this.maxErrors = maxErrors;
+	}
+
 	public Path createReferenceClassPath() {
 		Path path = new Path(this.getProject());
 		referenceClasspaths.add(path);
@@ -126,6 +131,7 @@ public class BytecodeBackwardCompatibilityCheckerTask extends Task {
             // Running the check...
             checker.setReporter(mux);
             checker.setRules(rules);
+            checker.setMaxErrors(maxErrors);
 			checker.checkBacwardCompatibility(getReferenceFile(), getFile());
 
 			// Summary, failing ant in case of error...
@@ -34,6 +34,7 @@ import org.apache.commons.vfs2.FileObject;
 import org.apache.commons.vfs2.FileSystemException;
 import org.apache.commons.vfs2.VFS;
 
+import com.googlecode.japi.checker.ApiSnapshotWriter;
 import com.googlecode.japi.checker.BCChecker;
 import com.googlecode.japi.checker.Rule;
 import com.googlecode.japi.checker.Severity;
@@ -48,7 +49,8 @@ import com.googlecode.japi.checker.rules.CheckMethodVariableArity;
  *
  */
 public class Main {
-    private static final String HELP_CMDLINE = "japi-checker-cli [-bin] [-cp <arg>] [-h] [-rcp <arg>] REFERENCE_LIBRARY NEW_LIBRARY";
+    private static final String HELP_CMDLINE = "japi-checker-cli [-bin] [-cp <arg>] [-h] [-rcp <arg>] REFERENCE_LIBRARY NEW_LIBRARY\n"
+            + "       japi-checker-cli -export <arg> LIBRARY";
     private static final String HELP_HEADER = "Check API and ABI compatiblity of Java libraries.";
     private String[] args;
 
@@ -111,6 +113,9 @@ public class Main {
                 "check only binary compatibility (default - source and binary compatibility)");
         options.addOption("rcp", true, "reference classpath.");
         options.addOption("cp", true, "classpath.");
+        options.addOption("export", true, "write the API snapshot of LIBRARY to the given file,"
+                + " it can then be used as REFERENCE_LIBRARY.");
+        options.addOption("maxerrors", true, "stop the check after this number of errors.");
         options.addOption("h", "help", false, "This help message.");
 
         CommandLineParser parser = new GnuParser();
@@ -122,6 +127,12 @@ public class Main {
                 formatter.printHelp(HELP_CMDLINE, getHeader(), options, null);
                 return 0;
             }
+            if (cmdLine.hasOption("export")) {
+                if (cmdLine.getArgs().length != 1) {
+                    throw new ParseException("Missing LIBRARY.");
+                }
+                return export(new File(cmdLine.getArgs()[0]), new File(cmdLine.getOptionValue("export")));
+            }
             if (cmdLine.getArgs().length != 2) {
                 throw new ParseException(
                         "Missing REFERENCE_LIBRARY and/or NEW_LIBRARY.");
@@ -149,14 +160,14 @@ public class Main {
         String newPath = cmdLine.getArgs()[1];
         File reference = new File(referencePath);
         File newArtifact = new File(newPath);
-        if (!reference.isDirectory() && !Utils.isArchive(reference)) {
+        if (!reference.isDirectory() && !Utils.isArchive(reference) && !Utils.isApiSnapshot(reference)) {
             try {
                 FileObject fo = VFS.getManager().resolveFile(referencePath);
                 reference = writeToTempFile(fo);
             } catch (FileSystemException e) {
                 System.err.println("Error: " + e.getMessage()
                         + " - reference can be either a directory"
-                        + ", a jar (or a zip kind of archive) file, or a URL.");
+                        + ", a jar (or a zip kind of archive) file, an API snapshot or a URL.");
                 return -1;
             } catch (IOException e) {
                 System.err.println("Error: " + e.getMessage());
@@ -193,6 +204,15 @@ public class Main {
             }
         }
 
+        if (cmdLine.hasOption("maxerrors")) {
+            try {
+                checker.setMaxErrors(Integer.parseInt(cmdLine.getOptionValue("maxerrors")));
+            } catch (NumberFormatException e) {
+                System.err.println("Error: invalid maxerrors value: " + cmdLine.getOptionValue("maxerrors"));
+                return -1;
+            }
+        }
+
         // checker initialization
         CLIReporter reporter = new CLIReporter();
 
@@ -224,6 +244,21 @@ public class Main {
         return 0;
     }
 
+    private int export(File library, File snapshot) {
+        if (!library.isDirectory() && !Utils.isArchive(library)) {
+            System.err.println("Error: " + library + " must be either a directory or a jar (or a zip kind of archive) file.");
+            return -1;
+        }
+        try {
+            new ApiSnapshotWriter().write(library, snapshot);
+            System.out.println("API snapshot written to " + snapshot);
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            return -1;
+        }
+        return 0;
+    }
+
     public static void main(String[] args) {
         System.exit(new Main(args).run());
     }
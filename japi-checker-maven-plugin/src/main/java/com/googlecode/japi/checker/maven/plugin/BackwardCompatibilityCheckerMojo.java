@@ -150,6 +150,48 @@ public class BackwardCompatibilityCheckerMojo
       */
      protected String excludedPackages;
 
+     /**
+      * Only parse the dependency classes which are needed to resolve the class hierarchy.
+      * @parameter default-value="false"
+      */
+     protected boolean lazyDependencies;
+
+     /**
+      * Bound, in megabytes, the memory used by the dependency classes of each side of the check,
+      * estimated from the size of their class files. The dependencies are then parsed lazily and
+      * the least recently used classes are parsed again when needed. Unbounded if 0.
+      * @parameter default-value="0"
+      */
+     protected int dependencyCacheSize;
+
+     /**
+      * Directory where the parsed model of the reference and dependencies is cached between builds.
+      * The cache is disabled if not defined.
+      * @parameter
+      */
+     protected File cacheDirectory;
+
+     /**
+      * API snapshot of the reference, written by the japi-checker-cli -export option.
+      * When defined it is used in place of the reference artifact, which is then not downloaded.
+      * @parameter
+      */
+     protected File referenceSnapshot;
+
+     /**
+      * Stop the check once this number of errors is reached, the build fails anyway.
+      * All the classes are checked if 0.
+      * @parameter default-value="0"
+      */
+     protected int maxErrors;
+
+     /**
+      * Check the classes of the artifact while it is being read, once the reference and the
+      * dependencies are read.
+      * @parameter default-value="false"
+      */
+     protected boolean streaming;
+
      private boolean isNewMinorVersion;
 
      /**
@@ -202,8 +244,16 @@ public class BackwardCompatibilityCheckerMojo
 
 
             // Retrieving the reference artifact.
-            updateArtifact(reference);
-            Artifact referenceArtifact = reference.getArtifact();
+            File referenceFile;
+            String referenceName;
+            if (referenceSnapshot != null) {
+                referenceFile = referenceSnapshot;
+                referenceName = referenceSnapshot.toString();
+            } else {
+                updateArtifact(reference);
+                referenceFile = reference.getArtifact().getFile();
+                referenceName = reference.getArtifact().toString();
+            }
 
             try {
                 // Creating a new checker which compare the generated artifact against the provided reference.
@@ -226,12 +276,17 @@ public class BackwardCompatibilityCheckerMojo
                 mux.add(ec);
 
                 // Running the check...
-                this.getLog().info("Checking backward compatibility of " + artifact.toString() + " against " + referenceArtifact.toString());
+                this.getLog().info("Checking backward compatibility of " + artifact.toString() + " against " + referenceName);
                 checker.setReporter(mux);
                 checker.setRules(getRuleInstances());
                 checker.setExcludedPackages(excludedPackages);
+                checker.setLazyDependencies(lazyDependencies);
+                checker.setDependencyCacheSize(dependencyCacheSize * 1024L * 1024L);
+                checker.setCacheDirectory(cacheDirectory);
+                checker.setMaxErrors(maxErrors);
+                checker.setStreaming(streaming);
                 checker.setNewMinorVersion(isNewMinorVersion);
-                checker.checkBacwardCompatibility(referenceArtifact.getFile(), artifact.getFile());
+                checker.checkBacwardCompatibility(referenceFile, artifact.getFile());
                 if (ec.hasSeverity()) {
                     getLog().error("You have " + ec.getCount() + " backward compatibility issues.");
                     throw new MojoFailureException("You have " + ec.getCount() + " backward compatibility issues.");
@@ -16,16 +16,25 @@
 package com.googlecode.japi.checker;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Hashtable;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import org.objectweb.asm.ClassReader;
 
 import com.googlecode.japi.checker.model.ClassData;
+import com.googlecode.japi.checker.model.LineNumberResolver;
 import com.googlecode.japi.checker.utils.AntPatternMatcher;
 
 /**
@@ -35,7 +44,47 @@ import com.googlecode.japi.checker.utils.AntPatternMatcher;
  * 
  */
 public abstract class AbstractClassReader {
-    private Map<String, List<ClassData>> classes = new Hashtable<String, List<ClassData>>();
+    // keeps the container order, so lookups by class name are deterministic.
+    private Map<String, ClassData> classes = Collections.synchronizedMap(new LinkedHashMap<String, ClassData>());
+    private Logger logger = Logger.getLogger(AbstractClassReader.class.getName());
+    private int parallelism = 1;
+    private ParseMode parseMode = ParseMode.FULL;
+    private ExecutorService executor;
+    private ClassListener listener;
+    private SymbolTable symbolTable = new SymbolTable();
+    private AnnotationPolicy annotationPolicy = AnnotationPolicy.ALL;
+
+    /**
+     * A class file which can be loaded independently of the others, possibly from a worker thread.
+     */
+    interface ClassFile {
+
+        /**
+         * @return the path of the class file inside its container.
+         */
+        String getName();
+
+        /**
+         * Load the content of the class file into the buffer of the current thread.
+         * @param buffer the buffer to load the content into.
+         * @throws IOException is thrown in case of reading error.
+         */
+        void load(ClassBuffer buffer) throws IOException;
+    }
+
+    /**
+     * Receives the classes as they are read, in the order of the container.
+     */
+    interface ClassListener {
+
+        /**
+         * Called from the reading thread once a class has been parsed and added to the cache.
+         * @param name the path of the class file inside its container.
+         * @param clazz the class defined by the class file.
+         * @throws InterruptedIOException if the reading thread is interrupted while passing the class.
+         */
+        void classRead(String name, ClassData clazz) throws InterruptedIOException;
+    }
 
     /**
      * This method should implement the extraction of the classes out of its container.
@@ -44,6 +93,22 @@ public abstract class AbstractClassReader {
      */
     abstract void read() throws IOException;
 
+    /**
+     * List the paths of the class files of the container, without reading them.
+     * @return the paths of the class files inside the container.
+     * @throws IOException is thrown in case of reading error.
+     */
+    abstract List<String> list() throws IOException;
+
+    /**
+     * Load the content of a single class file again, this is used to recover
+     * the parts of the class which have been skipped by the parse mode.
+     * @param name the path of the class file inside its container.
+     * @param buffer the buffer to load the content into.
+     * @throws IOException is thrown in case of reading error.
+     */
+    abstract void reload(String name, ClassBuffer buffer) throws IOException;
+
     /**
      * 
      * @param visitor
@@ -52,18 +117,208 @@ public abstract class AbstractClassReader {
      * @throws ReadClassException
      */
     protected void readClass(ClassDumper visitor, String name, byte[] data) throws ReadClassException {
+        this.put(name, parseClass(visitor, name, data, data.length));
+    }
+
+    /**
+     * Parse a class file without adding it to the cache.
+     * @param visitor the visitor used to build the model.
+     * @param name the filename.
+     * @param data the buffer holding the class file.
+     * @param length the size of the class file, the buffer might be larger.
+     * @return the class defined by the class file.
+     * @throws ReadClassException if the class file cannot be parsed.
+     */
+    protected ClassData parseClass(ClassDumper visitor, String name, byte[] data, int length) throws ReadClassException {
         try {
-            ClassReader cr = new ClassReader(data);
-            cr.accept(visitor, 0);
-            this.put(name, visitor.getClasses());
+            ClassReader cr = new ClassReader(data, 0, length);
+            cr.accept(visitor, parseMode.getFlags());
+            ClassData clazz = visitor.getClassData();
+            if (clazz != null && parseMode.isSkippingCode()) {
+                clazz.setLineNumberResolver(new LazyLineNumbers(name));
+            }
+            return clazz;
         } catch (RuntimeException exc) {
             throw new ReadClassException("Error occurred while loading class " + name + ": " + exc.toString(), exc);
         }
     }
+
+    /**
+     * Load a class file in the buffer of the current thread and parse it.
+     */
+    private ClassData parseClass(ClassFile file, ClassDataLoader loader) throws IOException {
+        ClassBuffer buffer = ClassBuffer.get();
+        file.load(buffer);
+        return parseClass(new ClassDumper(loader, symbolTable, annotationPolicy), file.getName(), buffer.getData(), buffer.getLength());
+    }
+
+    /**
+     * Load, parse and add a set of class files to the cache. When the parallelism is greater than one
+     * the files are inflated and parsed by a pool of worker threads, the results are still merged
+     * into the cache in the order of the list.
+     * Parsing errors are collected and reported together once all the files have been processed,
+     * while I/O errors abort the reading.
+     * 
+     * @param files the class files to read.
+     * @param loader the ClassDataLoader the model is associated with.
+     * @throws IOException is thrown in case of reading error.
+     */
+    void readClasses(List<? extends ClassFile> files, ClassDataLoader loader) throws IOException {
+        ReadClassesException errors = new ReadClassesException();
+        if (parallelism <= 1 || files.size() <= 1) {
+            for (ClassFile file : files) {
+                try {
+                    this.add(file.getName(), parseClass(file, loader));
+                } catch (ReadClassException exc) {
+                    errors.add(exc);
+                }
+            }
+        } else {
+            readClassesInParallel(files, loader, errors);
+        }
+        errors.throwIfNeeded();
+    }
+
+    private void readClassesInParallel(List<? extends ClassFile> files, final ClassDataLoader loader,
+            ReadClassesException errors) throws IOException {
+        ExecutorService executor = this.executor;
+        boolean ownExecutor = executor == null;
+        if (ownExecutor) {
+            executor = Executors.newFixedThreadPool(Math.min(parallelism, files.size()),
+                    new DaemonThreadFactory("japi-checker-reader"));
+        }
+        List<Future<ClassData>> results = new ArrayList<Future<ClassData>>(files.size());
+        try {
+            for (final ClassFile file : files) {
+                results.add(executor.submit(new Callable<ClassData>() {
+                    @Override
+                    public ClassData call() throws IOException {
+                        return parseClass(file, loader);
+                    }
+                }));
+            }
+            for (int i = 0; i < results.size(); i++) {
+                try {
+                    this.add(files.get(i).getName(), results.get(i).get());
+                } catch (ExecutionException exc) {
+                    Throwable cause = exc.getCause();
+                    if (cause instanceof ReadClassException) {
+                        errors.add((ReadClassException) cause);
+                    } else if (cause instanceof IOException) {
+                        throw (IOException) cause;
+                    } else if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    } else {
+                        throw (Error) cause;
+                    }
+                }
+            }
+        } catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading classes.");
+        } finally {
+            if (ownExecutor) {
+                executor.shutdownNow();
+            } else {
+                // the executor is shared, only the remaining tasks of this reader are dropped.
+                for (Future<ClassData> result : results) {
+                    result.cancel(true);
+                }
+            }
+        }
+    }
+
+    /**
+     * Add a parsed class to the cache and pass it to the listener.
+     */
+    private void add(String name, ClassData clazz) throws InterruptedIOException {
+        put(name, clazz);
+        if (clazz != null && listener != null) {
+            listener.classRead(name, clazz);
+        }
+    }
+
+    /**
+     * Defines how many threads are used to inflate and parse class files.
+     * @param parallelism the number of threads, 1 means the reading happens on the calling thread.
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * @return the number of threads used to inflate and parse class files.
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Defines a pool of worker threads shared with other readers, instead of creating one
+     * for each read. The executor is never shut down by the reader.
+     * @param executor the shared executor, or null to let each read create its own pool.
+     */
+    void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Defines a listener receiving the classes as they are parsed. The classes restored
+     * from the model cache are not passed to it.
+     * @param listener the listener, or null.
+     */
+    void setListener(ClassListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Defines the table holding the names, descriptors and signatures of the classes read.
+     * @param symbolTable the table, usually the one of the loader.
+     */
+    void setSymbolTable(SymbolTable symbolTable) {
+        this.symbolTable = symbolTable;
+    }
+
+    /**
+     * @return the table holding the names, descriptors and signatures of the classes read.
+     */
+    SymbolTable getSymbolTable() {
+        return symbolTable;
+    }
+
+    /**
+     * Defines which annotations are read from the class files.
+     * @param annotationPolicy the policy, usually the one of the loader.
+     */
+    void setAnnotationPolicy(AnnotationPolicy annotationPolicy) {
+        this.annotationPolicy = annotationPolicy;
+    }
+
+    /**
+     * @return the policy telling which annotations are read from the class files.
+     */
+    AnnotationPolicy getAnnotationPolicy() {
+        return annotationPolicy;
+    }
+
+    /**
+     * Defines how much of the class files is parsed.
+     * @param parseMode
+     */
+    public void setParseMode(ParseMode parseMode) {
+        this.parseMode = parseMode;
+    }
+
+    /**
+     * @return how much of the class files is parsed.
+     */
+    public ParseMode getParseMode() {
+        return parseMode;
+    }
     
     /**
      * Get all the discovered classes.
-     * @return a list of all the discovered classes.
+     * @return a list of all the discovered classes, in the order of the container.
      */
     public List<ClassData> getClasses() {
         return getClasses(Collections.<AntPatternMatcher> emptyList(), Collections.<AntPatternMatcher> emptyList());
@@ -76,15 +331,42 @@ public abstract class AbstractClassReader {
      * @return a filtered list.
      */
     public List<ClassData> getClasses(List<AntPatternMatcher> includes, List<AntPatternMatcher> excludes) {
-        List<ClassData> result = new ArrayList<ClassData>();
-        for (Entry<String, List<ClassData>> entry : this.classes.entrySet()) {
-            if (shouldInclude(entry.getKey(), includes, excludes)) {
-                result.addAll(entry.getValue());
+        synchronized (this.classes) {
+            if (includes.isEmpty() && excludes.isEmpty()) {
+                return new ArrayList<ClassData>(this.classes.values());
+            }
+            List<ClassData> result = new ArrayList<ClassData>();
+            for (Entry<String, ClassData> entry : this.classes.entrySet()) {
+                if (shouldInclude(entry.getKey(), includes, excludes)) {
+                    result.add(entry.getValue());
+                }
             }
+            return result;
         }
-        return result;
     }
     
+    /**
+     * @return a copy of the cache, the class file paths mapped to their class, in the order of the container.
+     */
+    Map<String, ClassData> getClassFiles() {
+        synchronized (this.classes) {
+            return new LinkedHashMap<String, ClassData>(this.classes);
+        }
+    }
+
+    /**
+     * Add a class which has been parsed previously, e.g. restored from the model cache,
+     * as if it had just been parsed using the current parse mode.
+     * @param name the filename
+     * @param clazz the class defined by this filename.
+     */
+    void restore(String name, ClassData clazz) {
+        if (parseMode.isSkippingCode()) {
+            clazz.setLineNumberResolver(new LazyLineNumbers(name));
+        }
+        put(name, clazz);
+    }
+
     /**
      * Empty this class data cache.
      */
@@ -95,13 +377,11 @@ public abstract class AbstractClassReader {
     /**
      * Add a new class definition to the cache.
      * @param name the filename
-     * @param classes the classes related to this filename.
+     * @param clazz the class defined by this filename.
      */
-    protected void put(String name, List<ClassData> classes) {
-        if (this.classes.containsKey(name)) {
-            this.classes.get(name).addAll(classes);
-        } else {
-            this.classes.put(name, new ArrayList<ClassData>(classes));
+    protected void put(String name, ClassData clazz) {
+        if (clazz != null) {
+            this.classes.put(name, clazz);
         }
     }
     
@@ -127,4 +407,30 @@ public abstract class AbstractClassReader {
         }
         return included;
     }
+
+    /**
+     * Recovers the line numbers by parsing the method bodies of the class file again,
+     * this only happens for the classes for which a line number is actually requested.
+     */
+    private class LazyLineNumbers implements LineNumberResolver {
+        private final String name;
+
+        LazyLineNumbers(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public void resolveLineNumbers(ClassData clazz) {
+            try {
+                ClassBuffer buffer = ClassBuffer.get();
+                reload(name, buffer);
+                ClassReader cr = new ClassReader(buffer.getData(), 0, buffer.getLength());
+                cr.accept(new LineNumberDumper(clazz), ClassReader.SKIP_FRAMES);
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Could not recover the line numbers of " + name + ": " + e.getMessage(), e);
+            } catch (RuntimeException e) {
+                logger.log(Level.WARNING, "Could not recover the line numbers of " + name + ": " + e.toString(), e);
+            }
+        }
+    }
 }
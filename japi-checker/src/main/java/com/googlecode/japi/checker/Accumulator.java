@@ -0,0 +1,32 @@
+/*
+ * Copyright 2012 William Bernardet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.japi.checker;
+
+/**
+ * A result computed by a rule over all the items of a check, e.g. if anything has been added.
+ * Each thread checking classes accumulates into its own instance, the instances are merged once
+ * the classes are checked, so an accumulator does not need to be thread safe.
+ *
+ * @param <A> the type of the accumulator itself.
+ */
+public interface Accumulator<A extends Accumulator<A>> {
+
+    /**
+     * Add the result accumulated by another instance during the same check.
+     * @param other the other instance, it is not used afterwards.
+     */
+    void merge(A other);
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright 2012 William Bernardet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.japi.checker;
+
+import java.util.Set;
+
+/**
+ * A rule declaring the annotations it reads, so the others do not have to be read from the
+ * class files. Annotations are captured for all the other rules.
+ */
+public interface AnnotationAwareRule extends Rule {
+
+    /**
+     * @return the descriptors of the annotations the rule reads, e.g. "Ljavax/annotation/Nonnull;",
+     *         or null if it reads all of them. It must not change once the rule is in use.
+     */
+    Set<String> getAnnotationDescriptors();
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2012 William Bernardet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.japi.checker;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * Tells which annotations are read from the class files, the others are skipped while parsing
+ * and do not appear in the model.
+ */
+final class AnnotationPolicy {
+    /**
+     * Captures all the annotations.
+     */
+    static final AnnotationPolicy ALL = new AnnotationPolicy(null);
+    private final SortedSet<String> descriptors;
+
+    private AnnotationPolicy(SortedSet<String> descriptors) {
+        this.descriptors = descriptors;
+    }
+
+    /**
+     * @param descriptors the descriptors of the annotations to capture, or null for all of them.
+     * @return the policy capturing these annotations.
+     */
+    static AnnotationPolicy of(Collection<String> descriptors) {
+        if (descriptors == null) {
+            return ALL;
+        }
+        return new AnnotationPolicy(Collections.unmodifiableSortedSet(new TreeSet<String>(descriptors)));
+    }
+
+    /**
+     * @param desc the descriptor of an annotation.
+     * @return true if the annotation is captured.
+     */
+    boolean isCaptured(String desc) {
+        return descriptors == null || descriptors.contains(desc);
+    }
+
+    /**
+     * @return the sorted descriptors of the annotations captured, or null if all of them are.
+     */
+    SortedSet<String> getDescriptors() {
+        return descriptors;
+    }
+}
@@ -0,0 +1,300 @@
+/*
+ * Copyright 2012 William Bernardet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.japi.checker;
+
+import java.io.DataInput;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.googlecode.japi.checker.model.ClassData;
+import com.googlecode.japi.checker.utils.AntPatternMatcher;
+
+/**
+ * Reads the classes of a snapshot written by {@link ApiSnapshotWriter}. The snapshot is mapped
+ * in memory and the classes are only decoded when they are requested, either by name through
+ * the sorted class index, or when they match the include and exclude patterns.
+ */
+public class ApiSnapshotReader extends AbstractClassReader {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private File filename;
+    private ClassDataLoader loader;
+    private ByteBuffer snapshot;
+    private int indexOffset;
+    private int dataOffset;
+    private String[] strings = new String[0];
+    private ClassData[] classes = new ClassData[0];
+
+    public ApiSnapshotReader(File filename, ClassDataLoader loader) {
+        this.filename = filename;
+        this.loader = loader;
+    }
+
+    @Override
+    public void read() throws IOException {
+        RandomAccessFile file = new RandomAccessFile(filename, "r");
+        ByteBuffer buffer;
+        try {
+            FileChannel channel = file.getChannel();
+            if (channel.size() > Integer.MAX_VALUE || channel.size() < ApiSnapshotWriter.HEADER_SIZE) {
+                throw new IOException("Invalid snapshot size: " + filename);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            // the mapping stays valid after the channel is closed.
+            file.close();
+        }
+        if (buffer.getInt(0) != ApiSnapshotWriter.MAGIC) {
+            throw new IOException("Not a snapshot: " + filename);
+        }
+        if (buffer.getInt(4) != ApiSnapshotWriter.FORMAT_VERSION) {
+            throw new IOException("Unsupported snapshot version " + buffer.getInt(4) + ": " + filename);
+        }
+        int stringCount = buffer.getInt(8);
+        int classCount = buffer.getInt(12);
+        int index = buffer.getInt(16);
+        int data = buffer.getInt(20);
+        if (stringCount < 0 || classCount < 0 || index < ApiSnapshotWriter.HEADER_SIZE + stringCount * 4L
+                || data != index + classCount * 12L || data > buffer.limit()) {
+            throw new IOException("Corrupted snapshot header: " + filename);
+        }
+        synchronized (this) {
+            this.snapshot = buffer;
+            this.indexOffset = index;
+            this.dataOffset = data;
+            this.strings = new String[stringCount];
+            this.classes = new ClassData[classCount];
+        }
+    }
+
+    @Override
+    List<String> list() throws IOException {
+        List<String> names = new ArrayList<String>();
+        for (int i = 0; i < size(); i++) {
+            names.add(getPath(i));
+        }
+        return names;
+    }
+
+    @Override
+    void reload(String name, ClassBuffer buffer) throws IOException {
+        throw new IOException("A snapshot does not contain class files: " + filename);
+    }
+
+    /**
+     * Only the classes matching the patterns are decoded.
+     * {@inheritDoc}
+     */
+    @Override
+    public List<ClassData> getClasses(List<AntPatternMatcher> includes, List<AntPatternMatcher> excludes) {
+        List<ClassData> result = new ArrayList<ClassData>();
+        for (int i = 0; i < size(); i++) {
+            if (shouldInclude(getPath(i), includes, excludes)) {
+                result.add(getClass(i));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    Map<String, ClassData> getClassFiles() {
+        Map<String, ClassData> result = new LinkedHashMap<String, ClassData>();
+        for (int i = 0; i < size(); i++) {
+            result.put(getPath(i), getClass(i));
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    /**
+     * Find a class using the class index, only this class gets decoded.
+     * @param name the class name.
+     * @return the class, or null if the snapshot does not contain it.
+     */
+    public ClassData fromName(String name) {
+        int i = indexOf(name);
+        return i < 0 ? null : getClass(i);
+    }
+
+    /**
+     * @param name the class name.
+     * @return true if the snapshot contains the class, nothing is decoded.
+     */
+    public boolean contains(String name) {
+        return indexOf(name) >= 0;
+    }
+
+    private synchronized int size() {
+        return classes.length;
+    }
+
+    private synchronized int indexOf(String name) {
+        int low = 0;
+        int high = classes.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int cmp = getString(snapshot.getInt(indexOffset + middle * 12)).compareTo(name);
+            if (cmp < 0) {
+                low = middle + 1;
+            } else if (cmp > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    private synchronized String getPath(int i) {
+        return getString(snapshot.getInt(indexOffset + i * 12 + 4));
+    }
+
+    private synchronized ClassData getClass(int i) {
+        if (classes[i] == null) {
+            ByteBuffer record = snapshot.duplicate();
+            try {
+                record.position(dataOffset + snapshot.getInt(indexOffset + i * 12 + 8));
+                classes[i] = new StringTableCodec().read(new ByteBufferDataInput(record), loader, null,
+                        getAnnotationPolicy());
+            } catch (IOException e) {
+                throw new IllegalStateException("Corrupted snapshot " + filename + ": " + e.getMessage(), e);
+            } catch (RuntimeException e) {
+                throw new IllegalStateException("Corrupted snapshot " + filename + ": " + e.toString(), e);
+            }
+        }
+        return classes[i];
+    }
+
+    private synchronized String getString(int id) {
+        if (id < 0) {
+            return null;
+        }
+        if (strings[id] == null) {
+            ByteBuffer string = snapshot.duplicate();
+            string.position(snapshot.getInt(ApiSnapshotWriter.HEADER_SIZE + id * 4));
+            byte[] bytes = new byte[string.getInt()];
+            string.get(bytes);
+            strings[id] = getSymbolTable().get(new String(bytes, UTF8));
+        }
+        return strings[id];
+    }
+
+    /**
+     * Decodes the strings out of the string table.
+     */
+    private class StringTableCodec extends ClassDataCodec {
+        @Override
+        protected String readString(DataInput in) throws IOException {
+            return getString(in.readInt());
+        }
+    }
+
+    /**
+     * DataInput reading from a buffer, reading past the end of the buffer
+     * throws a java.nio.BufferUnderflowException.
+     */
+    private static class ByteBufferDataInput implements DataInput {
+        private final ByteBuffer buffer;
+
+        ByteBufferDataInput(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public void readFully(byte[] b) {
+            buffer.get(b);
+        }
+
+        @Override
+        public void readFully(byte[] b, int off, int len) {
+            buffer.get(b, off, len);
+        }
+
+        @Override
+        public int skipBytes(int n) {
+            int skipped = Math.min(n, buffer.remaining());
+            buffer.position(buffer.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public boolean readBoolean() {
+            return buffer.get() != 0;
+        }
+
+        @Override
+        public byte readByte() {
+            return buffer.get();
+        }
+
+        @Override
+        public int readUnsignedByte() {
+            return buffer.get() & 0xff;
+        }
+
+        @Override
+        public short readShort() {
+            return buffer.getShort();
+        }
+
+        @Override
+        public int readUnsignedShort() {
+            return buffer.getShort() & 0xffff;
+        }
+
+        @Override
+        public char readChar() {
+            return buffer.getChar();
+        }
+
+        @Override
+        public int readInt() {
+            return buffer.getInt();
+        }
+
+        @Override
+        public long readLong() {
+            return buffer.getLong();
+        }
+
+        @Override
+        public float readFloat() {
+            return buffer.getFloat();
+        }
+
+        @Override
+        public double readDouble() {
+            return buffer.getDouble();
+        }
+
+        @Override
+        public String readLine() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String readUTF() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
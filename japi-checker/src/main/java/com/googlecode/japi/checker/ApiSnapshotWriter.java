@@ -0,0 +1,165 @@
+/*
+ * Copyright 2012 William Bernardet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.japi.checker;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import com.googlecode.japi.checker.model.ClassData;
+
+/**
+ * Writes the API model of an artifact into a compact binary snapshot, which can then be
+ * used as the reference of a check in place of the artifact itself.
+ * 
+ * The snapshot starts with a header, followed by a string table, a class index sorted by
+ * class name and the class records. All the strings of the records are references to the
+ * string table, so a mapped snapshot can be searched and decoded class by class.
+ * <pre>
+ * header:  magic, version, string count, class count, index offset, data offset
+ * strings: offset of each string, then each string as its length and UTF-8 bytes
+ * index:   for each class, sorted by name: name id, path id, offset of the record
+ * data:    the class records
+ * </pre>
+ * All the classes of the artifact are exported, including their non public members,
+ * so checking against a snapshot gives the same results as checking against the artifact.
+ */
+public class ApiSnapshotWriter {
+    static final int MAGIC = 0x4a415053; // JAPS
+    static final int FORMAT_VERSION = 1;
+    static final int HEADER_SIZE = 6 * 4;
+
+    /**
+     * Read an artifact and write its snapshot.
+     * @param artifact the jar or directory to export.
+     * @param snapshot the snapshot file to write.
+     * @throws IOException is thrown in case of reading or writing error.
+     */
+    public void write(File artifact, File snapshot) throws IOException {
+        if (Utils.isApiSnapshot(artifact)) {
+            throw new IllegalArgumentException(artifact + " is already a snapshot.");
+        }
+        DefaultClassDataLoader loader = new DefaultClassDataLoader();
+        AbstractClassReader reader = loader.createReader(artifact, ParseMode.FULL);
+        reader.read();
+        write(reader.getClassFiles(), snapshot);
+    }
+
+    /**
+     * Write a snapshot out of classes.
+     * @param classes the classes, by the path of their class file.
+     * @param snapshot the snapshot file to write.
+     * @throws IOException is thrown in case of writing error.
+     */
+    void write(Map<String, ClassData> classes, File snapshot) throws IOException {
+        List<Entry<String, ClassData>> entries = new ArrayList<Entry<String, ClassData>>(classes.entrySet());
+        Collections.sort(entries, new Comparator<Entry<String, ClassData>>() {
+            @Override
+            public int compare(Entry<String, ClassData> o1, Entry<String, ClassData> o2) {
+                return o1.getValue().getName().compareTo(o2.getValue().getName());
+            }
+        });
+        // the records are encoded first, so the string table is complete.
+        StringTableCodec codec = new StringTableCodec();
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        DataOutputStream dataOut = new DataOutputStream(data);
+        int[] index = new int[entries.size() * 3];
+        int count = 0;
+        for (int i = 0; i < entries.size(); i++) {
+            ClassData clazz = entries.get(i).getValue();
+            if (i > 0 && clazz.getName().equals(entries.get(i - 1).getValue().getName())) {
+                continue; // first one wins, as in the loaders.
+            }
+            index[count * 3] = codec.getId(clazz.getName());
+            index[count * 3 + 1] = codec.getId(entries.get(i).getKey());
+            index[count * 3 + 2] = dataOut.size();
+            codec.write(dataOut, clazz);
+            count++;
+        }
+        dataOut.flush();
+
+        List<byte[]> strings = codec.getStrings();
+        int stringsSize = strings.size() * 4;
+        for (byte[] string : strings) {
+            stringsSize += 4 + string.length;
+        }
+        int indexOffset = HEADER_SIZE + stringsSize;
+        int dataOffset = indexOffset + count * 3 * 4;
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(snapshot)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(strings.size());
+            out.writeInt(count);
+            out.writeInt(indexOffset);
+            out.writeInt(dataOffset);
+            int offset = HEADER_SIZE + strings.size() * 4;
+            for (byte[] string : strings) {
+                out.writeInt(offset);
+                offset += 4 + string.length;
+            }
+            for (byte[] string : strings) {
+                out.writeInt(string.length);
+                out.write(string);
+            }
+            for (int i = 0; i < count * 3; i++) {
+                out.writeInt(index[i]);
+            }
+            data.writeTo(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Encodes the strings as references to the string table.
+     */
+    private static class StringTableCodec extends ClassDataCodec {
+        private Map<String, Integer> ids = new HashMap<String, Integer>();
+        private List<byte[]> strings = new ArrayList<byte[]>();
+
+        int getId(String value) throws IOException {
+            Integer id = ids.get(value);
+            if (id == null) {
+                id = strings.size();
+                ids.put(value, id);
+                strings.add(value.getBytes("UTF-8"));
+            }
+            return id;
+        }
+
+        List<byte[]> getStrings() {
+            return strings;
+        }
+
+        @Override
+        protected void writeString(DataOutput out, String value) throws IOException {
+            out.writeInt(value == null ? -1 : getId(value));
+        }
+    }
+}
@@ -18,15 +18,27 @@ package com.googlecode.japi.checker;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
+import com.googlecode.japi.checker.DefaultClassDataLoader.ClassStream;
 import com.googlecode.japi.checker.Reporter.Report;
 import com.googlecode.japi.checker.model.ClassData;
-import com.googlecode.japi.checker.rules.AllRules;
+import com.googlecode.japi.checker.model.JavaItem;
 import com.googlecode.japi.checker.rules.CheckMinorVersionIncreaseNeeded;
 import com.googlecode.japi.checker.utils.AntPatternMatcher;
 import com.googlecode.japi.checker.utils.PackageTreeNode;
@@ -40,17 +52,30 @@ import com.googlecode.japi.checker.utils.PackageTreeNode;
  */
 public class BCChecker
 {
+    /**
+     * Default maximum size of the model cache: 256MB.
+     */
+    public static final long DEFAULT_CACHE_SIZE = 256L * 1024 * 1024;
     private List<File> referenceClasspath = new ArrayList<File>();
     private List<File> newArtifactClasspath = new ArrayList<File>();
     private List<AntPatternMatcher> includes = new ArrayList<AntPatternMatcher>();
     private List<AntPatternMatcher> excludes = new ArrayList<AntPatternMatcher>();
-    private ClassDataLoaderFactory classDataLoaderFactory = new DefaultClassDataLoaderFactory();
+    private DefaultClassDataLoaderFactory classDataLoaderFactory = new DefaultClassDataLoaderFactory();
     private boolean warnOnDependencyLoadingError;
     private Reporter reporter;
     private List<Rule> rules = Collections.emptyList();
+    private Set<String> capturedAnnotations = Collections.emptySet();
     private boolean isNewMinorVersion = false;
-    private CheckMinorVersionIncreaseNeeded cmvinRule;
+    private RuleSet ruleSet;
     private String excludedPackages;
+    private int ruleParallelism = 1;
+    private boolean streaming;
+    private boolean skipUnchanged;
+    private final AtomicInteger checkedClassCount = new AtomicInteger();
+    private final AtomicInteger skippedClassCount = new AtomicInteger();
+    private final AtomicInteger skippedMemberCount = new AtomicInteger();
+    private int maxErrors;
+    private volatile boolean stopped;
 
 
     /**
@@ -136,6 +161,332 @@ public class BCChecker
     }
 
 
+    /**
+     * Defines annotations to read from the class files in addition to those the rules need. The rules
+     * implementing {@link AnnotationAwareRule} declare the annotations they read, the others get all of
+     * them. When all the rules declare them, the other annotations are skipped while parsing, so they
+     * do not appear in the model.
+     *
+     * @param capturedAnnotations the descriptors of the annotations, e.g. "Ljavax/annotation/Nonnull;".
+     */
+    public void setCapturedAnnotations(Collection<String> capturedAnnotations)
+    {
+        this.capturedAnnotations = capturedAnnotations == null ? Collections.<String> emptySet()
+                        : new HashSet<String>(capturedAnnotations);
+    }
+
+
+    /**
+     * @return the descriptors of the annotations read in addition to those the rules need.
+     */
+    public Set<String> getCapturedAnnotations()
+    {
+        return Collections.unmodifiableSet(capturedAnnotations);
+    }
+
+
+    /**
+     * Defines how many threads are used to inflate and parse the class files of each
+     * archive or directory. When greater than 1, the artifacts and their classpath entries are
+     * also read concurrently, with the same progress reports and errors as a sequential read.
+     * The default is 1, meaning everything is read on the calling thread.
+     *
+     * @param parallelism
+     */
+    public void setParallelism(int parallelism)
+    {
+        this.classDataLoaderFactory.setParallelism(parallelism);
+    }
+
+
+    /**
+     * @return the number of threads used to read each archive or directory.
+     */
+    public int getParallelism()
+    {
+        return this.classDataLoaderFactory.getParallelism();
+    }
+
+
+    /**
+     * Defines how many threads evaluate the rules, the public classes of the reference are then
+     * checked concurrently. The rules and the class data loaders must allow it, which is the case
+     * of the built-in ones. The reports are passed to the reporter from the calling thread, in
+     * the same order as with a single thread. The default is 1.
+     *
+     * @param ruleParallelism
+     */
+    public void setRuleParallelism(int ruleParallelism)
+    {
+        this.ruleParallelism = Math.max(1, ruleParallelism);
+    }
+
+
+    /**
+     * @return the number of threads evaluating the rules.
+     */
+    public int getRuleParallelism()
+    {
+        return ruleParallelism;
+    }
+
+
+    /**
+     * Defines if the new artifact is checked while it is being read. The reference and the
+     * dependencies are read first, then each public class of the reference is checked as soon as
+     * its counterpart and the super types and exceptions it relies on have been read, on the calling
+     * thread, while the reading goes on in the background. The reports are the same, in the same order,
+     * as without streaming. The rule parallelism does not apply then. The default is false.
+     *
+     * @param streaming
+     */
+    public void setStreaming(boolean streaming)
+    {
+        this.streaming = streaming;
+    }
+
+
+    /**
+     * @return true if the new artifact is checked while it is being read.
+     */
+    public boolean isStreaming()
+    {
+        return streaming;
+    }
+
+
+    /**
+     * Defines if the rules should be skipped for the classes and members whose API did not change,
+     * see {@link JavaItem#hasSameApi(JavaItem)}. A class is only skipped if none of its supertypes
+     * changed either, so rules depending on the class hierarchy still apply. No rule is run on the
+     * skipped pairs, so their INFO reports are dropped: only the ERROR and WARNING reports are the
+     * same as without skipping. The default is false.
+     *
+     * @param skipUnchanged
+     */
+    public void setSkipUnchanged(boolean skipUnchanged)
+    {
+        this.skipUnchanged = skipUnchanged;
+    }
+
+
+    /**
+     * @return true if the classes and members whose API did not change are skipped.
+     */
+    public boolean isSkipUnchanged()
+    {
+        return skipUnchanged;
+    }
+
+
+    /**
+     * @return the number of public classes the last check has compared.
+     */
+    public int getCheckedClassCount()
+    {
+        return checkedClassCount.get();
+    }
+
+
+    /**
+     * @return the number of classes the last check has skipped as unchanged.
+     */
+    public int getSkippedClassCount()
+    {
+        return skippedClassCount.get();
+    }
+
+
+    /**
+     * @return the number of members of changed classes the last check has skipped as unchanged.
+     */
+    public int getSkippedMemberCount()
+    {
+        return skippedMemberCount.get();
+    }
+
+
+    /**
+     * Defines a number of errors after which the check stops, e.g. when only knowing if the artifact
+     * is compatible matters. The class being checked when the limit is reached is checked completely,
+     * so there can be a few more errors; the remaining classes are not checked, and a warning tells so.
+     * The reports are the first ones a complete check would make, whatever the rule parallelism is.
+     *
+     * @param maxErrors the number of errors, 0 or less to check everything (the default).
+     */
+    public void setMaxErrors(int maxErrors)
+    {
+        this.maxErrors = maxErrors;
+    }
+
+
+    /**
+     * @return the number of errors after which the check stops, 0 or less if there is no limit.
+     */
+    public int getMaxErrors()
+    {
+        return maxErrors;
+    }
+
+
+    /**
+     * @return true if the last check stopped before checking all the classes, as it reached the maximum
+     *         number of errors.
+     */
+    public boolean isStopped()
+    {
+        return stopped;
+    }
+
+
+    /**
+     * Defines if archives should be read by mapping them in memory. This avoids most of the
+     * copies made while extracting class files, and mostly pays off on large archives.
+     *
+     * @param memoryMapped
+     */
+    public void setMemoryMapped(boolean memoryMapped)
+    {
+        this.classDataLoaderFactory.setMemoryMapped(memoryMapped);
+    }
+
+
+    /**
+     * @return true if archives are read by mapping them in memory.
+     */
+    public boolean isMemoryMapped()
+    {
+        return this.classDataLoaderFactory.isMemoryMapped();
+    }
+
+
+    /**
+     * Defines how much of the class files of the reference and new artifact is parsed.
+     * The default is {@link ParseMode#FULL}, {@link ParseMode#SIGNATURES} skips the method
+     * bodies and only recovers the line numbers of the classes which are reported.
+     *
+     * @param parseMode
+     */
+    public void setParseMode(ParseMode parseMode)
+    {
+        this.classDataLoaderFactory.setParseMode(parseMode);
+    }
+
+
+    /**
+     * @return how much of the class files of the reference and new artifact is parsed.
+     */
+    public ParseMode getParseMode()
+    {
+        return this.classDataLoaderFactory.getParseMode();
+    }
+
+
+    /**
+     * Defines how much of the class files of the dependencies is parsed. The default is
+     * {@link ParseMode#SIGNATURES_WITHOUT_DEBUG} as the dependencies are only used to resolve
+     * the class hierarchy.
+     *
+     * @param dependencyParseMode
+     */
+    public void setDependencyParseMode(ParseMode dependencyParseMode)
+    {
+        this.classDataLoaderFactory.setDependencyParseMode(dependencyParseMode);
+    }
+
+
+    /**
+     * @return how much of the class files of the dependencies is parsed.
+     */
+    public ParseMode getDependencyParseMode()
+    {
+        return this.classDataLoaderFactory.getDependencyParseMode();
+    }
+
+
+    /**
+     * Defines if the dependencies should only be indexed, their classes then get parsed the
+     * first time they are needed to resolve the class hierarchy. This mostly pays off on large
+     * classpaths. Errors while parsing a dependency class are then logged instead of reported.
+     *
+     * @param lazyDependencies
+     */
+    public void setLazyDependencies(boolean lazyDependencies)
+    {
+        this.classDataLoaderFactory.setLazyDependencies(lazyDependencies);
+    }
+
+
+    /**
+     * @return true if the dependency classes are only parsed when they are needed.
+     */
+    public boolean isLazyDependencies()
+    {
+        return this.classDataLoaderFactory.isLazyDependencies();
+    }
+
+
+    /**
+     * Bound the memory used by the dependency classes of each of the reference and new artifact
+     * sides. The dependencies are then parsed lazily, see {@link #setLazyDependencies(boolean)}, and
+     * the least recently used classes are dropped once their estimated size, the size of their class
+     * files, exceeds the bound. A dropped class is parsed again from its archive when it is needed.
+     * The classes of the reference and of the new artifact are always kept.
+     *
+     * @param dependencyCacheSize the estimated size in bytes, or 0 to keep all the dependency classes.
+     */
+    public void setDependencyCacheSize(long dependencyCacheSize)
+    {
+        this.classDataLoaderFactory.setDependencyCacheSize(dependencyCacheSize);
+    }
+
+
+    /**
+     * @return the bound on the estimated size in bytes of the dependency classes of each side, 0 if unbounded.
+     */
+    public long getDependencyCacheSize()
+    {
+        return this.classDataLoaderFactory.getDependencyCacheSize();
+    }
+
+
+    /**
+     * Defines a directory where the parsed model of the archives is cached, keyed by the
+     * content of each archive. Released artifacts and dependencies are then only parsed once.
+     * The directory can be shared by concurrent builds.
+     *
+     * @param cacheDirectory the cache directory, or null to disable the cache (the default).
+     */
+    public void setCacheDirectory(File cacheDirectory)
+    {
+        setCacheDirectory(cacheDirectory, DEFAULT_CACHE_SIZE);
+    }
+
+
+    /**
+     * Same as {@link #setCacheDirectory(File)}, with a custom size limit.
+     *
+     * @param cacheDirectory the cache directory, or null to disable the cache.
+     * @param maxCacheSize the maximum size of the cache in bytes, the least recently used
+     *            entries are evicted beyond it.
+     */
+    public void setCacheDirectory(File cacheDirectory, long maxCacheSize)
+    {
+        this.classDataLoaderFactory.setModelCache(cacheDirectory == null ? null : new ModelCache(cacheDirectory,
+                                                                                                 maxCacheSize));
+    }
+
+
+    /**
+     * @return the cache directory, or null if the cache is disabled.
+     */
+    public File getCacheDirectory()
+    {
+        ModelCache cache = this.classDataLoaderFactory.getModelCache();
+        return cache == null ? null : cache.getDirectory();
+    }
+
+
     public void setExcludedPackages(String excludedPackages)
     {
         this.excludedPackages = excludedPackages;
@@ -144,6 +495,7 @@ public class BCChecker
 
     /**
      * Run the check between the reference and the newArtifact.
+     * The reference can also be an API snapshot written by the {@link ApiSnapshotWriter}.
      *
      * @param reference
      * @param newArtifact
@@ -160,10 +512,10 @@ public class BCChecker
         {
             throw new IllegalArgumentException("The newArtifact parameter cannot be null.");
         }
-        if (!reference.isDirectory() && !Utils.isArchive(reference))
+        if (!reference.isDirectory() && !Utils.isArchive(reference) && !Utils.isApiSnapshot(reference))
         {
-            throw new IllegalArgumentException("reference must be either a directory"
-                                               + " or a jar (or a zip kind of archive) file");
+            throw new IllegalArgumentException("reference must be either a directory,"
+                                               + " a jar (or a zip kind of archive) file or an API snapshot");
         }
         if (!newArtifact.isDirectory() && !Utils.isArchive(newArtifact))
         {
@@ -182,55 +534,51 @@ public class BCChecker
             };
         }
 
-        prepareCheckMinorVersionIncreaseRule();
+        ErrorBudget budget = null;
+        if (maxErrors > 0)
+        {
+            budget = new ErrorBudget(reporter, maxErrors);
+            reporter = budget;
+        }
+        stopped = false;
+        ruleSet = new RuleSet(rules);
+        RuleContext context = new RuleContext(isNewMinorVersion);
+        ruleSet.begin(context);
+        checkedClassCount.set(0);
+        skippedClassCount.set(0);
+        skippedMemberCount.set(0);
 
-        ClassDataLoader referenceDataLoader = classDataLoaderFactory.createClassDataLoader();
-        reporter.report(new Report(Severity.INFO, "Reading reference artifact: " + reference));
-        referenceDataLoader.read(reference.toURI());
+        DefaultClassDataLoader referenceDataLoader = classDataLoaderFactory.createClassDataLoader();
+        DefaultClassDataLoader newArtifactDataLoader = classDataLoaderFactory.createClassDataLoader();
+        // both sides mostly hold the same names, share them so they also compare by identity.
+        newArtifactDataLoader.setSymbolTable(referenceDataLoader.getSymbolTable());
+        AnnotationPolicy annotationPolicy = getAnnotationPolicy();
+        referenceDataLoader.setAnnotationPolicy(annotationPolicy);
+        newArtifactDataLoader.setAnnotationPolicy(annotationPolicy);
+        ClasspathLoader classpath = new ClasspathLoader(reporter, this.shouldWarnOnDependencyLoadingError(),
+                                                        getParallelism());
+        classpath.addArtifact(referenceDataLoader, reference, "Reading reference artifact: ");
         for (File file : this.referenceClasspath)
         {
-            try
-            {
-                reporter.report(new Report(Severity.INFO, "Reading reference dependency: " + file));
-                referenceDataLoader.read(file.toURI());
-            }
-            catch (ReadClassException e)
-            {
-                if (this.shouldWarnOnDependencyLoadingError())
-                {
-                    reporter.report(new Report(Severity.WARNING, e.getMessage()));
-                }
-                else
-                {
-                    throw e;
-                }
-            }
+            classpath.addDependency(referenceDataLoader, file, "Reading reference dependency: ");
+        }
+        ClassStream stream = null;
+        if (streaming)
+        {
+            stream = classpath.addStreamedArtifact(newArtifactDataLoader, newArtifact, "Reading artifact: ");
+        }
+        else
+        {
+            classpath.addArtifact(newArtifactDataLoader, newArtifact, "Reading artifact: ");
         }
-        Map<String, ClassData> referenceData = referenceDataLoader.getClasses(reference.toURI(),
-                                                                              includes,
-                                                                              excludes);
-        ClassDataLoader newArtifactDataLoader = classDataLoaderFactory.createClassDataLoader();
-        reporter.report(new Report(Severity.INFO, "Reading artifact: " + newArtifact));
-        newArtifactDataLoader.read(newArtifact.toURI());
         for (File file : this.newArtifactClasspath)
         {
-            try
-            {
-                reporter.report(new Report(Severity.INFO, "Reading dependency: " + file));
-                newArtifactDataLoader.read(file.toURI());
-            }
-            catch (ReadClassException e)
-            {
-                if (this.shouldWarnOnDependencyLoadingError())
-                {
-                    reporter.report(new Report(Severity.WARNING, e.getMessage()));
-                }
-                else
-                {
-                    throw e;
-                }
-            }
+            classpath.addDependency(newArtifactDataLoader, file, "Reading dependency: ");
         }
+        classpath.read();
+        Map<String, ClassData> referenceData = referenceDataLoader.getClasses(reference.toURI(),
+                                                                              includes,
+                                                                              excludes);
 
         PackageTreeNode rootNode = new PackageTreeNode("root", false);
         if (excludedPackages != null)
@@ -250,41 +598,59 @@ public class BCChecker
             }
         }
 
-        Map<String, ClassData> newData = newArtifactDataLoader.getClasses(newArtifact.toURI(),
-                                                                          includes,
-                                                                          excludes);
-        for (ClassData clazz : referenceData.values())
+        // checked in name order, so the reports are the same whatever the rule parallelism is.
+        List<ClassData> referenceClasses = new ArrayList<ClassData>(referenceData.values());
+        Collections.sort(referenceClasses, new Comparator<ClassData>()
         {
-            if (clazz.getVisibility() != Scope.PUBLIC)
-            {
-                continue;
-            } // we care only about public classes.
-
-            boolean isExcluded = rootNode.shouldExclude(clazz.getPackage());
-            if (isExcluded)
+            @Override
+            public int compare(ClassData c1, ClassData c2)
             {
-                continue;
+                return c1.getName().compareTo(c2.getName());
             }
-
-            ClassData newClazz = newData.get(clazz.getName());
-            if (newClazz == null)
+        });
+        Map<String, ClassData> newData;
+        if (stream != null)
+        {
+            newData = checkClassesStreaming(reporter, context, budget, referenceClasses, stream, rootNode);
+        }
+        else
+        {
+            newData = newArtifactDataLoader.getClasses(newArtifact.toURI(), includes, excludes);
+            if (ruleParallelism <= 1 || referenceClasses.size() <= 1)
             {
-                reporter.report(new Report(Severity.ERROR, "Public class " + clazz.getName()
-                                                           + " has been removed.", clazz, null));
-                continue;
+                for (ClassData clazz : referenceClasses)
+                {
+                    if (budget != null && budget.isExhausted())
+                    {
+                        stopped = true;
+                        break;
+                    }
+                    checkClass(reporter, context, clazz, newData.get(clazz.getName()), rootNode);
+                }
             }
-
-            for (Rule rule : rules)
+            else
             {
-                rule.checkBackwardCompatibility(reporter, clazz, newClazz);
+                checkClassesConcurrently(reporter, context, budget, referenceClasses, newData, rootNode);
             }
-
-            newClazz.checkBackwardCompatibility(reporter, clazz, rules);
+        }
+        if (skipUnchanged)
+        {
+            reporter.report(new Report(Severity.INFO, "Skipped " + skippedClassCount + " unchanged classes out of "
+                                                      + checkedClassCount + ", and " + skippedMemberCount
+                                                      + " unchanged members of the changed ones."));
+        }
+        if (stopped)
+        {
+            // the checks on the whole artifact would be wrong on part of it.
+            reporter.report(new Report(Severity.WARNING, "Stopped after " + maxErrors
+                                                         + " errors, the remaining classes have not been checked."));
+            return;
         }
 
-        if (cmvinRule != null)
+        CheckMinorVersionIncreaseNeeded.Result versionIncrease = context.findAccumulator(CheckMinorVersionIncreaseNeeded.Result.class);
+        if (versionIncrease != null)
         {
-            if (!cmvinRule.isVersionIncreaseNecessary() && isNewMinorVersion)
+            if (!versionIncrease.isVersionIncreaseNecessary() && isNewMinorVersion)
             {
                 Set<String> newDataClasses = newData.keySet();
                 Set<String> oldDataClasses = referenceData.keySet();
@@ -339,6 +705,202 @@ public class BCChecker
     }
 
 
+    private void checkClass(Reporter reporter, RuleContext context, ClassData clazz, ClassData newClazz,
+                            PackageTreeNode rootNode)
+    {
+        if (clazz.getVisibility() != Scope.PUBLIC)
+        {
+            return;
+        } // we care only about public classes.
+
+        boolean isExcluded = rootNode.shouldExclude(clazz.getPackage());
+        if (isExcluded)
+        {
+            return;
+        }
+
+        if (newClazz == null)
+        {
+            reporter.report(new Report(Severity.ERROR, "Public class " + clazz.getName()
+                                                       + " has been removed.", clazz, null));
+            return;
+        }
+
+        checkedClassCount.incrementAndGet();
+        if (skipUnchanged
+            && clazz.getClassDataLoader().getTypeHierarchy().hasSameApi(clazz.getName(),
+                                                                        newClazz.getClassDataLoader().getTypeHierarchy()))
+        {
+            skippedClassCount.incrementAndGet();
+            return;
+        }
+
+        ruleSet.checkBackwardCompatibility(reporter, context, clazz, newClazz);
+        skippedMemberCount.addAndGet(newClazz.checkBackwardCompatibility(reporter, clazz, ruleSet, context,
+                                                                         skipUnchanged));
+    }
+
+
+    /**
+     * @return the annotations needed by the rules of the current check and those captured in addition.
+     */
+    private AnnotationPolicy getAnnotationPolicy()
+    {
+        Set<String> descriptors = ruleSet.getAnnotationDescriptors();
+        if (descriptors == null)
+        {
+            return AnnotationPolicy.ALL;
+        }
+        Set<String> captured = new HashSet<String>(descriptors);
+        captured.addAll(capturedAnnotations);
+        return AnnotationPolicy.of(captured);
+    }
+
+
+    /**
+     * Check the classes while the new artifact is being read.
+     *
+     * @return the classes of the new artifact, or null if the check has been stopped.
+     */
+    private Map<String, ClassData> checkClassesStreaming(Reporter reporter, final RuleContext context,
+                                                         final ErrorBudget budget,
+                                                         List<ClassData> classes, ClassStream stream,
+                                                         final PackageTreeNode rootNode)
+        throws IOException
+    {
+        StreamingCheck check = new StreamingCheck(reporter, stream, classes, includes, excludes)
+        {
+            @Override
+            protected void check(Reporter buffer, ClassData clazz, ClassData newClazz)
+            {
+                checkClass(buffer, context, clazz, newClazz, rootNode);
+            }
+
+
+            @Override
+            protected boolean shouldStop()
+            {
+                return budget != null && budget.isExhausted();
+            }
+        };
+        if (!check.run())
+        {
+            stopped = true;
+            return null;
+        }
+        return check.getNewClasses();
+    }
+
+
+    /**
+     * Check contiguous partitions of the classes on a pool of threads. The reports of each
+     * partition are buffered, and then passed to the reporter in the order of the classes.
+     * The errors of each partition are counted as they are reported, and a partition stops once
+     * it and the partitions before it have reported as many errors as the budget allows. The
+     * buffered reports are then passed in order up to where the sequential check would have stopped.
+     * Each partition accumulates the results of the rules into its own context, merged afterwards.
+     */
+    private void checkClassesConcurrently(Reporter reporter, final RuleContext context, ErrorBudget budget,
+                                          final List<ClassData> classes,
+                                          final Map<String, ClassData> newData, final PackageTreeNode rootNode)
+        throws IOException
+    {
+        // more partitions than threads, so a partition of large classes does not hold everything up.
+        int partitions = Math.min(classes.size(), ruleParallelism * 4);
+        ExecutorService executor = Executors.newFixedThreadPool(ruleParallelism,
+                                                                new DaemonThreadFactory("japi-checker-rules"));
+        // one counter per partition, the errors of the later partitions must not stop the earlier ones.
+        final AtomicIntegerArray errors = budget != null ? new AtomicIntegerArray(partitions) : null;
+        try
+        {
+            List<Future<ReportBuffer>> results = new ArrayList<Future<ReportBuffer>>(partitions);
+            for (int i = 0; i < partitions; i++)
+            {
+                final List<ClassData> partition = classes.subList(i * classes.size() / partitions,
+                                                                  (i + 1) * classes.size() / partitions);
+                final int index = i;
+                results.add(executor.submit(new Callable<ReportBuffer>()
+                {
+                    @Override
+                    public ReportBuffer call()
+                    {
+                        ReportBuffer buffer = new ReportBuffer();
+                        buffer.context = context.fork();
+                        if (errors != null)
+                        {
+                            buffer.countErrors(errors, index, maxErrors);
+                        }
+                        for (ClassData clazz : partition)
+                        {
+                            if (stopped || buffer.isExhausted())
+                            {
+                                break;
+                            }
+                            checkClass(buffer, buffer.context, clazz, newData.get(clazz.getName()), rootNode);
+                            buffer.endClass();
+                        }
+                        return buffer;
+                    }
+                }));
+            }
+            for (int i = 0; i < partitions; i++)
+            {
+                ReportBuffer buffer = results.get(i).get();
+                int start = 0;
+                for (int end : buffer.classEnds)
+                {
+                    // stops where the sequential check would.
+                    if (budget != null && budget.isExhausted())
+                    {
+                        stop(results);
+                        return;
+                    }
+                    for (Report report : buffer.reports.subList(start, end))
+                    {
+                        reporter.report(report);
+                    }
+                    start = end;
+                }
+                int size = (i + 1) * classes.size() / partitions - i * classes.size() / partitions;
+                if (buffer.classEnds.size() < size)
+                {
+                    // the partition stopped on the budget, which its reports have now exhausted.
+                    stop(results);
+                    return;
+                }
+                context.merge(buffer.context);
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while checking the classes.");
+        }
+        catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof RuntimeException)
+            {
+                throw (RuntimeException)e.getCause();
+            }
+            throw (Error)e.getCause();
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+
+    private void stop(List<Future<ReportBuffer>> results)
+    {
+        stopped = true;
+        for (Future<ReportBuffer> pending : results)
+        {
+            pending.cancel(true);
+        }
+    }
+
+
     /**
      * Defines if the checker should just warn on dependency loading error via the reporter, or simply fails.
      *
@@ -365,28 +927,102 @@ public class BCChecker
     }
 
 
-    private void prepareCheckMinorVersionIncreaseRule()
+    /**
+     * Keeps the reports of a partition of the classes, or of a single class.
+     */
+    static class ReportBuffer
+        implements Reporter
     {
-        for (Rule r : rules)
+        final List<Report> reports = new ArrayList<Report>();
+        // where the reports of each class end.
+        private final List<Integer> classEnds = new ArrayList<Integer>();
+        // the results accumulated by the rules for a partition.
+        private RuleContext context;
+        // the errors reported by each partition, when they are counted.
+        private AtomicIntegerArray errors;
+        private int partition;
+        private int maxErrors;
+
+
+        @Override
+        public void report(Report report)
         {
-            if (r instanceof AllRules)
+            reports.add(report);
+            if (errors != null && report.getSeverity() == Severity.ERROR)
             {
-                for (Rule rr : ((AllRules)r).getRules())
-                {
-                    if (rr instanceof CheckMinorVersionIncreaseNeeded)
-                    {
-                        ((CheckMinorVersionIncreaseNeeded)rr).setMinorVersionIncreased(isNewMinorVersion);
-                        cmvinRule = (CheckMinorVersionIncreaseNeeded)rr;
-                        break;
-                    }
-                }
+                errors.incrementAndGet(partition);
+            }
+        }
+
+
+        /**
+         * Counts the errors of this buffer as those of the given partition.
+         */
+        void countErrors(AtomicIntegerArray errors, int partition, int maxErrors)
+        {
+            this.errors = errors;
+            this.partition = partition;
+            this.maxErrors = maxErrors;
+        }
+
+
+        /**
+         * @return true if this partition and the ones before it have reported the maximum number of errors.
+         */
+        boolean isExhausted()
+        {
+            if (errors == null)
+            {
+                return false;
+            }
+            int count = 0;
+            for (int i = 0; i <= partition; i++)
+            {
+                count += errors.get(i);
             }
-            else if (r instanceof CheckMinorVersionIncreaseNeeded)
+            return count >= maxErrors;
+        }
+
+
+        public void endClass()
+        {
+            classEnds.add(reports.size());
+        }
+    }
+
+
+    /**
+     * Counts the errors passed to the reporter, the reports must be passed in order by a single thread.
+     */
+    private static class ErrorBudget
+        implements Reporter
+    {
+        private final Reporter reporter;
+        private final int maxErrors;
+        private int errors;
+
+
+        public ErrorBudget(Reporter reporter, int maxErrors)
+        {
+            this.reporter = reporter;
+            this.maxErrors = maxErrors;
+        }
+
+
+        @Override
+        public void report(Report report)
+        {
+            if (report.getSeverity() == Severity.ERROR)
             {
-                ((CheckMinorVersionIncreaseNeeded)r).setMinorVersionIncreased(isNewMinorVersion);
-                cmvinRule = (CheckMinorVersionIncreaseNeeded)r;
-                break;
+                errors++;
             }
+            reporter.report(report);
+        }
+
+
+        public boolean isExhausted()
+        {
+            return errors >= maxErrors;
         }
     }
 }
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2012 William Bernardet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.japi.checker;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Per-thread buffer used to hold the class file being parsed. The backing arrays are
+ * picked from power of two size classes (4KB to 1MB) which are kept for the lifetime
+ * of the thread, so reading a class file does not allocate anything in the common case.
+ * Larger class files get a dedicated array which is not retained.
+ * 
+ * The content is only valid until the next load on the same thread, it must not be
+ * referenced once the class has been parsed. The bytes following the content are always
+ * zero, as the class parser does not check the length and would otherwise read the
+ * leftovers of a previous class when parsing a truncated class file.
+ */
+final class ClassBuffer {
+    private static final int MIN_SHIFT = 12;
+    private static final int MAX_SHIFT = 20;
+    private static final ThreadLocal<ClassBuffer> BUFFERS = new ThreadLocal<ClassBuffer>() {
+        @Override
+        protected ClassBuffer initialValue() {
+            return new ClassBuffer();
+        }
+    };
+
+    private final byte[][] sizeClasses = new byte[MAX_SHIFT - MIN_SHIFT + 1][];
+    // how many bytes of each size class array may hold leftovers.
+    private final int[] used = new int[MAX_SHIFT - MIN_SHIFT + 1];
+    private int sizeClass = -1;
+    private byte[] data;
+    private int length;
+    private byte[] input = new byte[1 << MIN_SHIFT];
+
+    private ClassBuffer() {
+    }
+
+    /**
+     * @return the buffer of the current thread.
+     */
+    static ClassBuffer get() {
+        return BUFFERS.get();
+    }
+
+    /**
+     * Get an array of at least the given size, the previous content is discarded.
+     * @param size the minimum size.
+     * @return the array to write the class file into.
+     */
+    byte[] reserve(int size) {
+        data = array(size);
+        length = 0;
+        markUsed(size);
+        return data;
+    }
+
+    /**
+     * Get a scratch array of at least the given size, e.g. to hold compressed data,
+     * it is distinct from the array returned by {@link #reserve(int)}.
+     * @param size the minimum size.
+     * @return the scratch array.
+     */
+    byte[] input(int size) {
+        if (input.length < size) {
+            input = new byte[Integer.highestOneBit(size - 1) << 1];
+        }
+        return input;
+    }
+
+    /**
+     * Read the whole content of a stream into the buffer.
+     * @param is the stream to read, it is not closed by this method.
+     * @param expectedSize the expected size, or a negative value if unknown.
+     * @throws IOException is thrown in case of reading error.
+     */
+    void load(InputStream is, long expectedSize) throws IOException {
+        reserve(expectedSize >= 0 && expectedSize < Integer.MAX_VALUE ? (int) expectedSize + 1 : 1 << MIN_SHIFT);
+        int count = 0;
+        try {
+            while ((count = is.read(data, length, data.length - length)) != -1) {
+                length += count;
+                if (length == data.length) {
+                    markUsed(length);
+                    byte[] bigger = array(data.length * 2);
+                    System.arraycopy(data, 0, bigger, 0, length);
+                    data = bigger;
+                }
+            }
+        } finally {
+            markUsed(length);
+        }
+        clearLeftovers();
+    }
+
+    /**
+     * Defines how many bytes of the array are used.
+     * @param length
+     */
+    void setLength(int length) {
+        this.length = length;
+        clearLeftovers();
+    }
+
+    private void markUsed(int size) {
+        if (sizeClass >= 0) {
+            used[sizeClass] = Math.max(used[sizeClass], Math.min(size, data.length));
+        }
+    }
+
+    private void clearLeftovers() {
+        if (sizeClass >= 0) {
+            if (used[sizeClass] > length) {
+                Arrays.fill(data, length, used[sizeClass], (byte) 0);
+            }
+            used[sizeClass] = length;
+        }
+    }
+
+    byte[] getData() {
+        return data;
+    }
+
+    int getLength() {
+        return length;
+    }
+
+    private byte[] array(int size) {
+        int shift = MIN_SHIFT;
+        while (shift <= MAX_SHIFT && (1 << shift) < size) {
+            shift++;
+        }
+        if (shift > MAX_SHIFT) {
+            sizeClass = -1;
+            return new byte[size];
+        }
+        sizeClass = shift - MIN_SHIFT;
+        byte[] array = sizeClasses[sizeClass];
+        if (array == null) {
+            array = new byte[1 << shift];
+            sizeClasses[sizeClass] = array;
+        }
+        return array;
+    }
+}
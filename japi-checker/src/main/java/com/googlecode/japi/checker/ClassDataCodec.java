@@ -0,0 +1,430 @@
+/*
+ * Copyright 2012 William Bernardet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.japi.checker;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map.Entry;
+
+import org.objectweb.asm.Type;
+
+import com.googlecode.japi.checker.model.AnnotationData;
+import com.googlecode.japi.checker.model.AttributeData;
+import com.googlecode.japi.checker.model.ClassData;
+import com.googlecode.japi.checker.model.FieldData;
+import com.googlecode.japi.checker.model.InnerClassData;
+import com.googlecode.japi.checker.model.JavaItem;
+import com.googlecode.japi.checker.model.MethodData;
+
+/**
+ * Binary encoding of the ClassData model, so a parsed class can be stored and
+ * restored without going through the class file again.
+ * The access flags are rebuilt out of the model, so the encoding only keeps what
+ * the model itself keeps.
+ */
+class ClassDataCodec {
+    private static final int NULL = 0;
+    private static final int STRING = 1;
+    private static final int INTEGER = 2;
+    private static final int LONG = 3;
+    private static final int FLOAT = 4;
+    private static final int DOUBLE = 5;
+    private static final int BYTE = 6;
+    private static final int BOOLEAN = 7;
+    private static final int CHARACTER = 8;
+    private static final int SHORT = 9;
+    private static final int TYPE = 10;
+    private static final int BYTE_ARRAY = 11;
+    private static final int BOOLEAN_ARRAY = 12;
+    private static final int CHAR_ARRAY = 13;
+    private static final int SHORT_ARRAY = 14;
+    private static final int INT_ARRAY = 15;
+    private static final int LONG_ARRAY = 16;
+    private static final int FLOAT_ARRAY = 17;
+    private static final int DOUBLE_ARRAY = 18;
+
+    /**
+     * Write a class and its members.
+     * @param out the output to write to.
+     * @param clazz the class to write.
+     * @throws IOException in case of writing error, or if the class holds a value which cannot be encoded.
+     */
+    public void write(DataOutput out, ClassData clazz) throws IOException {
+        out.writeInt(clazz.getAccess());
+        writeString(out, clazz.getName());
+        writeString(out, clazz.getSignature());
+        writeString(out, clazz.getSuperName());
+        writeStrings(out, clazz.getInterfaces());
+        out.writeInt(clazz.getVersion());
+        writeString(out, clazz.getSource());
+        writeAnnotations(out, clazz);
+        out.writeInt(clazz.getFields().size());
+        for (FieldData field : clazz.getFields()) {
+            out.writeInt(field.getAccess());
+            writeString(out, field.getName());
+            writeString(out, field.getDescriptor());
+            writeString(out, field.getSignature());
+            writeValue(out, field.getValue());
+            writeAnnotations(out, field);
+        }
+        // do not trigger the recovery of the line numbers which have not been parsed.
+        boolean hasLineNumbers = !clazz.hasLineNumberResolver();
+        out.writeInt(clazz.getMethods().size());
+        for (MethodData method : clazz.getMethods()) {
+            out.writeInt(method.getAccess());
+            writeString(out, method.getName());
+            writeString(out, method.getDescriptor());
+            writeString(out, method.getSignature());
+            writeStrings(out, method.getExceptions());
+            out.writeInt(hasLineNumbers ? method.getLineNumber() : 0);
+            writeAnnotations(out, method);
+        }
+        out.writeInt(clazz.getInnerClasses().size());
+        for (InnerClassData innerClass : clazz.getInnerClasses()) {
+            out.writeInt(innerClass.getAccess());
+            writeString(out, innerClass.getName());
+            writeString(out, innerClass.getOuterName());
+            writeString(out, innerClass.getInnerName());
+        }
+        out.writeInt(clazz.getAttributes().size());
+        for (AttributeData attribute : clazz.getAttributes()) {
+            out.writeInt(attribute.getAccess());
+            writeString(out, attribute.getName());
+        }
+    }
+
+    /**
+     * Read a class written by {@link #write(DataOutput, ClassData)}.
+     * @param in the input to read from.
+     * @param loader the loader the model gets associated with.
+     * @return the class.
+     * @throws IOException in case of reading error or invalid content.
+     */
+    public ClassData read(DataInput in, ClassDataLoader loader) throws IOException {
+        return read(in, loader, null);
+    }
+
+    /**
+     * Read a class written by {@link #write(DataOutput, ClassData)}, the names, descriptors
+     * and signatures are taken from a symbol table.
+     * @param in the input to read from.
+     * @param loader the loader the model gets associated with.
+     * @param symbols the symbol table, or null to keep the strings read.
+     * @return the class.
+     * @throws IOException in case of reading error or invalid content.
+     */
+    public ClassData read(DataInput in, ClassDataLoader loader, SymbolTable symbols) throws IOException {
+        return read(in, loader, symbols, AnnotationPolicy.ALL);
+    }
+
+    /**
+     * Same as {@link #read(DataInput, ClassDataLoader, SymbolTable)}, only keeping some of the annotations.
+     * @param in the input to read from.
+     * @param loader the loader the model gets associated with.
+     * @param symbols the symbol table, or null to keep the strings read.
+     * @param annotations the annotations added to the model, the others are skipped.
+     * @return the class.
+     * @throws IOException in case of reading error or invalid content.
+     */
+    public ClassData read(DataInput in, ClassDataLoader loader, SymbolTable symbols, AnnotationPolicy annotations)
+            throws IOException {
+        int access = in.readInt();
+        String name = readSymbol(in, symbols);
+        String signature = readSymbol(in, symbols);
+        String superName = readSymbol(in, symbols);
+        String[] interfaces = readSymbols(in, symbols);
+        int version = in.readInt();
+        ClassData clazz = new ClassData(loader, null, access, name, signature, superName, interfaces, version);
+        clazz.setSource(readString(in));
+        readAnnotations(in, clazz, symbols, annotations);
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            FieldData field = new FieldData(loader, clazz, in.readInt(), readSymbol(in, symbols),
+                    readSymbol(in, symbols), readSymbol(in, symbols), readValue(in));
+            readAnnotations(in, field, symbols, annotations);
+            clazz.add(field);
+        }
+        count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            MethodData method = new MethodData(loader, clazz, in.readInt(), readSymbol(in, symbols),
+                    readSymbol(in, symbols), readSymbol(in, symbols), readSymbols(in, symbols));
+            method.setLineNumber(in.readInt());
+            readAnnotations(in, method, symbols, annotations);
+            clazz.add(method);
+        }
+        count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            clazz.add(new InnerClassData(loader, clazz, in.readInt(), readSymbol(in, symbols),
+                    readSymbol(in, symbols), readSymbol(in, symbols)));
+        }
+        count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            clazz.add(new AttributeData(loader, clazz, in.readInt(), readString(in)));
+        }
+        return clazz;
+    }
+
+    protected void writeString(DataOutput out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = value.getBytes("UTF-8");
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    protected String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    private void writeStrings(DataOutput out, List<String> values) throws IOException {
+        out.writeInt(values.size());
+        for (String value : values) {
+            writeString(out, value);
+        }
+    }
+
+    private String readSymbol(DataInput in, SymbolTable symbols) throws IOException {
+        String value = readString(in);
+        return symbols == null ? value : symbols.get(value);
+    }
+
+    private String[] readSymbols(DataInput in, SymbolTable symbols) throws IOException {
+        String[] values = new String[in.readInt()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = readSymbol(in, symbols);
+        }
+        return values;
+    }
+
+    private void writeAnnotations(DataOutput out, JavaItem item) throws IOException {
+        out.writeInt(item.getAnnotations().size());
+        for (AnnotationData annotation : item.getAnnotations()) {
+            writeString(out, annotation.getDesc());
+            out.writeBoolean(annotation.isVisible());
+            out.writeInt(annotation.size());
+            for (Entry<String, Object> entry : annotation.entrySet()) {
+                writeString(out, entry.getKey());
+                writeValue(out, entry.getValue());
+            }
+        }
+    }
+
+    private void readAnnotations(DataInput in, JavaItem item, SymbolTable symbols, AnnotationPolicy annotations)
+            throws IOException {
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            String desc = readString(in);
+            // the values of a skipped annotation are still read, to get past them.
+            AnnotationData annotation = new AnnotationData(symbols == null ? desc : symbols.get(desc), in.readBoolean());
+            int size = in.readInt();
+            for (int j = 0; j < size; j++) {
+                annotation.put(readString(in), readValue(in));
+            }
+            if (annotations.isCaptured(desc)) {
+                item.add(annotation);
+            }
+        }
+    }
+
+    /**
+     * Write a constant value, as found on fields or annotations.
+     */
+    private void writeValue(DataOutput out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof String) {
+            out.writeByte(STRING);
+            writeString(out, (String) value);
+        } else if (value instanceof Integer) {
+            out.writeByte(INTEGER);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Float) {
+            out.writeByte(FLOAT);
+            out.writeFloat((Float) value);
+        } else if (value instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (value instanceof Byte) {
+            out.writeByte(BYTE);
+            out.writeByte((Byte) value);
+        } else if (value instanceof Boolean) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof Character) {
+            out.writeByte(CHARACTER);
+            out.writeChar((Character) value);
+        } else if (value instanceof Short) {
+            out.writeByte(SHORT);
+            out.writeShort((Short) value);
+        } else if (value instanceof Type) {
+            out.writeByte(TYPE);
+            writeString(out, ((Type) value).getDescriptor());
+        } else if (value instanceof byte[]) {
+            byte[] array = (byte[]) value;
+            out.writeByte(BYTE_ARRAY);
+            out.writeInt(array.length);
+            out.write(array);
+        } else if (value instanceof boolean[]) {
+            boolean[] array = (boolean[]) value;
+            out.writeByte(BOOLEAN_ARRAY);
+            out.writeInt(array.length);
+            for (boolean item : array) {
+                out.writeBoolean(item);
+            }
+        } else if (value instanceof char[]) {
+            char[] array = (char[]) value;
+            out.writeByte(CHAR_ARRAY);
+            out.writeInt(array.length);
+            for (char item : array) {
+                out.writeChar(item);
+            }
+        } else if (value instanceof short[]) {
+            short[] array = (short[]) value;
+            out.writeByte(SHORT_ARRAY);
+            out.writeInt(array.length);
+            for (short item : array) {
+                out.writeShort(item);
+            }
+        } else if (value instanceof int[]) {
+            int[] array = (int[]) value;
+            out.writeByte(INT_ARRAY);
+            out.writeInt(array.length);
+            for (int item : array) {
+                out.writeInt(item);
+            }
+        } else if (value instanceof long[]) {
+            long[] array = (long[]) value;
+            out.writeByte(LONG_ARRAY);
+            out.writeInt(array.length);
+            for (long item : array) {
+                out.writeLong(item);
+            }
+        } else if (value instanceof float[]) {
+            float[] array = (float[]) value;
+            out.writeByte(FLOAT_ARRAY);
+            out.writeInt(array.length);
+            for (float item : array) {
+                out.writeFloat(item);
+            }
+        } else if (value instanceof double[]) {
+            double[] array = (double[]) value;
+            out.writeByte(DOUBLE_ARRAY);
+            out.writeInt(array.length);
+            for (double item : array) {
+                out.writeDouble(item);
+            }
+        } else {
+            throw new IOException("Unsupported value type: " + value.getClass().getName());
+        }
+    }
+
+    private Object readValue(DataInput in) throws IOException {
+        int tag = in.readByte();
+        switch (tag) {
+        case NULL:
+            return null;
+        case STRING:
+            return readString(in);
+        case INTEGER:
+            return in.readInt();
+        case LONG:
+            return in.readLong();
+        case FLOAT:
+            return in.readFloat();
+        case DOUBLE:
+            return in.readDouble();
+        case BYTE:
+            return in.readByte();
+        case BOOLEAN:
+            return in.readBoolean();
+        case CHARACTER:
+            return in.readChar();
+        case SHORT:
+            return in.readShort();
+        case TYPE:
+            return Type.getType(readString(in));
+        case BYTE_ARRAY: {
+            byte[] array = new byte[in.readInt()];
+            in.readFully(array);
+            return array;
+        }
+        case BOOLEAN_ARRAY: {
+            boolean[] array = new boolean[in.readInt()];
+            for (int i = 0; i < array.length; i++) {
+                array[i] = in.readBoolean();
+            }
+            return array;
+        }
+        case CHAR_ARRAY: {
+            char[] array = new char[in.readInt()];
+            for (int i = 0; i < array.length; i++) {
+                array[i] = in.readChar();
+            }
+            return array;
+        }
+        case SHORT_ARRAY: {
+            short[] array = new short[in.readInt()];
+            for (int i = 0; i < array.length; i++) {
+                array[i] = in.readShort();
+            }
+            return array;
+        }
+        case INT_ARRAY: {
+            int[] array = new int[in.readInt()];
+            for (int i = 0; i < array.length; i++) {
+                array[i] = in.readInt();
+            }
+            return array;
+        }
+        case LONG_ARRAY: {
+            long[] array = new long[in.readInt()];
+            for (int i = 0; i < array.length; i++) {
+                array[i] = in.readLong();
+            }
+            return array;
+        }
+        case FLOAT_ARRAY: {
+            float[] array = new float[in.readInt()];
+            for (int i = 0; i < array.length; i++) {
+                array[i] = in.readFloat();
+            }
+            return array;
+        }
+        case DOUBLE_ARRAY: {
+            double[] array = new double[in.readInt()];
+            for (int i = 0; i < array.length; i++) {
+                array[i] = in.readDouble();
+            }
+            return array;
+        }
+        default:
+            throw new IOException("Invalid value tag: " + tag);
+        }
+    }
+}
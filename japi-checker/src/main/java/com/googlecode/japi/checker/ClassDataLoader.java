@@ -40,8 +40,17 @@ public interface ClassDataLoader {
      */
     void read(URI uri) throws IOException;
 
+    /**
+     * Read class file out of the provided URI, those classes are only used to resolve
+     * the classes read via {@link #read(URI)}, so the loader might parse them partially.
+     * @param uri the URI where to load class file from.
+     * @throws IOException Thrown in case of error.
+     */
+    void readDependency(URI uri) throws IOException;
+
     /**
      * Get ClassData out of a class name e.g: com.mycompany.mypackage.Class
+     * Once the classes have been read, this might be called from several threads at the same time.
      * @param name the class name
      * @return a ClassData instance or null if Not found.
      */
@@ -73,4 +82,9 @@ public interface ClassDataLoader {
     @Nonnull
     Map<String, ClassData> getClasses(@Nonnull URI uri, @Nonnull List<AntPatternMatcher> includes, @Nonnull List<AntPatternMatcher> excludes);
 
+    /**
+     * Get the hierarchy of the types known by this loader, it is built once and shared by the rules.
+     * @return the type hierarchy.
+     */
+    TypeHierarchy getTypeHierarchy();
 }
@@ -15,11 +15,7 @@
  */
 package com.googlecode.japi.checker;
 
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
 import java.util.logging.Logger;
 
 import org.objectweb.asm.AnnotationVisitor;
@@ -36,17 +32,23 @@ import com.googlecode.japi.checker.model.MethodData;
 
 class ClassDumper extends ClassVisitor {
     private ClassDataLoader loader;
+    private SymbolTable symbols;
+    private AnnotationPolicy annotations;
     private Logger logger = Logger.getLogger(ClassDumper.class.getName());
     private ClassData clazz; // current main class being parsed.
-    private Map<String, ClassData> classes = new HashMap<String, ClassData>();
+    private ClassData result; // the class defined by the class file.
 
     /**
      * Create a new visitor instance.
      * @param loader the ClassDataLoader to which the model are associated.
+     * @param symbols the table holding the names, descriptors and signatures of the model.
+     * @param annotations the annotations added to the model.
      */
-    public ClassDumper(ClassDataLoader loader) {
+    public ClassDumper(ClassDataLoader loader, SymbolTable symbols, AnnotationPolicy annotations) {
         super(Opcodes.ASM4);
         this.loader = loader;
+        this.symbols = symbols;
+        this.annotations = annotations;
     }
 
     /**
@@ -55,15 +57,19 @@ class ClassDumper extends ClassVisitor {
     public void visit(int version, int access, String name, String signature,
             String superName, String[] interfaces) {
         logger.fine("class " + name + " extends " + superName + " {");
-        clazz = new ClassData(loader, null, access, name, signature, superName, interfaces, version);
-        classes.put(name, clazz);
+        clazz = new ClassData(loader, null, access, symbols.get(name), symbols.get(signature),
+                symbols.get(superName), symbols.get(interfaces), version);
+        result = clazz;
     }
 
     /**
      * {@inheritDoc}
      */
     public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
-        return new AnnotationDumper(clazz, desc, visible);
+        if (!annotations.isCaptured(desc)) {
+            return null;
+        }
+        return new AnnotationDumper(clazz, symbols.get(desc), visible);
     }
 
     public void visitAttribute(Attribute attribute) {
@@ -77,22 +83,25 @@ class ClassDumper extends ClassVisitor {
     public FieldVisitor visitField(int access, String name, String desc,
             String signature, Object value) {
         logger.fine("    -(field) " + name + " " + signature + " " + desc);
-        clazz.add(new FieldData(loader, clazz, access, name, desc, signature, value));
+        clazz.add(new FieldData(loader, clazz, access, symbols.get(name), symbols.get(desc),
+                symbols.get(signature), value));
         return null;
     }
 
     public void visitInnerClass(String name, String outerName, String innerName, int access) {
         logger.fine("    +(ic) " + name + " " + outerName + " " + innerName + " " + access);
         //clazz = new ClassData(access, name, innerName);
-        clazz.add(new InnerClassData(loader, clazz, access, name, outerName, innerName));
+        clazz.add(new InnerClassData(loader, clazz, access, symbols.get(name), symbols.get(outerName),
+                symbols.get(innerName)));
     }
 
     public MethodVisitor visitMethod(int access, String name, String descriptor,
             String signature, String[] exceptions) {
         logger.fine("    +(m) " + name + " " + descriptor + " " + signature + " " + Arrays.toString(exceptions));
-        MethodData method = new MethodData(loader, clazz, access, name, descriptor, signature, exceptions);
+        MethodData method = new MethodData(loader, clazz, access, symbols.get(name), symbols.get(descriptor),
+                symbols.get(signature), symbols.get(exceptions));
         clazz.add(method);
-        return new MethodDumper(method);
+        return new MethodDumper(method, symbols, annotations);
     }
 
     public void visitOuterClass(String owner, String name, String desc) {
@@ -105,7 +114,10 @@ class ClassDumper extends ClassVisitor {
         clazz.setSource(source);
     }
 
-    public List<ClassData> getClasses() {
-        return new ArrayList<ClassData>(classes.values());
+    /**
+     * @return the class defined by the visited class file, or null if nothing has been visited.
+     */
+    public ClassData getClassData() {
+        return result;
     }
 }
@@ -0,0 +1,318 @@
+/*
+ * Copyright 2012 William Bernardet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.japi.checker;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.googlecode.japi.checker.DefaultClassDataLoader.ClassStream;
+import com.googlecode.japi.checker.DefaultClassDataLoader.PendingRead;
+import com.googlecode.japi.checker.Reporter.Report;
+
+
+/**
+ * Reads the artifacts and the classpath entries of the reference and new artifact sides.
+ * When the parallelism is greater than one all the entries are read concurrently on a bounded
+ * executor, they are still registered into their loader and reported in classpath order, so the
+ * outcome is the same as a sequential read.
+ * A failure to read a dependency class is either reported as a warning or fatal, any other
+ * error is fatal and aborts the reading of the remaining entries.
+ */
+class ClasspathLoader
+{
+    private final Reporter reporter;
+    private final boolean warnOnDependencyLoadingError;
+    private final int parallelism;
+    private final List<Entry> entries = new ArrayList<Entry>();
+
+
+    /**
+     * @param reporter the reporter receiving the progress reports and the warnings.
+     * @param warnOnDependencyLoadingError true if dependency loading errors are only reported as warnings.
+     * @param parallelism the maximum number of entries read at the same time.
+     */
+    ClasspathLoader(Reporter reporter, boolean warnOnDependencyLoadingError, int parallelism)
+    {
+        this.reporter = reporter;
+        this.warnOnDependencyLoadingError = warnOnDependencyLoadingError;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+
+    /**
+     * Add an artifact to read.
+     *
+     * @param loader the loader the artifact is read into.
+     * @param file the archive file or directory.
+     * @param description the progress message, the file gets appended to it.
+     */
+    void addArtifact(DefaultClassDataLoader loader, File file, String description)
+    {
+        entries.add(new Entry(loader, file, false, description, null));
+    }
+
+
+    /**
+     * Add an artifact which is only registered by {@link #read()}, so it takes its place in the classpath,
+     * its classes are read afterwards through the returned stream.
+     *
+     * @param loader the loader the artifact is read into.
+     * @param file the archive file or directory.
+     * @param description the progress message, the file gets appended to it.
+     * @return the stream reading the artifact.
+     * @throws IOException
+     */
+    ClassStream addStreamedArtifact(DefaultClassDataLoader loader, File file, String description)
+        throws IOException
+    {
+        ClassStream stream = loader.prepareStream(file.toURI());
+        entries.add(new Entry(loader, file, false, description, stream));
+        return stream;
+    }
+
+
+    /**
+     * Add a dependency to read.
+     *
+     * @param loader the loader the dependency is read into.
+     * @param file the archive file or directory.
+     * @param description the progress message, the file gets appended to it.
+     */
+    void addDependency(DefaultClassDataLoader loader, File file, String description)
+    {
+        entries.add(new Entry(loader, file, true, description, null));
+    }
+
+
+    /**
+     * Read all the entries added so far.
+     *
+     * @throws IOException thrown in case of fatal error while reading an entry.
+     */
+    void read()
+        throws IOException
+    {
+        if (parallelism <= 1 || entries.size() <= 1)
+        {
+            for (Entry entry : entries)
+            {
+                entry.report(reporter);
+                try
+                {
+                    entry.prepare().register();
+                }
+                catch (ReadClassException e)
+                {
+                    handle(entry, e);
+                }
+            }
+        }
+        else
+        {
+            readConcurrently();
+        }
+    }
+
+
+    private void readConcurrently()
+        throws IOException
+    {
+        Set<DefaultClassDataLoader> loaders = new LinkedHashSet<DefaultClassDataLoader>();
+        for (Entry entry : entries)
+        {
+            loaders.add(entry.loader);
+        }
+        // the readers share one pool to parse class files, separate from the one reading the entries,
+        // so at most twice the parallelism threads are busy, and an entry never waits on its own pool.
+        ExecutorService parsers = Executors.newFixedThreadPool(parallelism,
+                                                               new DaemonThreadFactory("japi-checker-reader"));
+        ExecutorService ingestion = Executors.newFixedThreadPool(Math.min(parallelism, entries.size()),
+                                                                 new DaemonThreadFactory("japi-checker-ingestion"));
+        for (DefaultClassDataLoader loader : loaders)
+        {
+            loader.setExecutor(parsers);
+        }
+        try
+        {
+            CompletionService<PendingRead> completion = new ExecutorCompletionService<PendingRead>(ingestion);
+            List<Future<PendingRead>> results = new ArrayList<Future<PendingRead>>(entries.size());
+            Map<Future<PendingRead>, Entry> pending = new IdentityHashMap<Future<PendingRead>, Entry>();
+            for (final Entry entry : entries)
+            {
+                Future<PendingRead> result = completion.submit(new Callable<PendingRead>()
+                {
+                    @Override
+                    public PendingRead call()
+                        throws IOException
+                    {
+                        return entry.prepare();
+                    }
+                });
+                results.add(result);
+                pending.put(result, entry);
+            }
+            int next = 0;
+            for (int i = 0; i < results.size(); i++)
+            {
+                Future<PendingRead> done = completion.take();
+                // fail fast, without waiting for the entries preceding the failing one.
+                get(done, pending.get(done), false);
+                while (next < results.size() && results.get(next).isDone())
+                {
+                    Entry entry = entries.get(next);
+                    entry.report(reporter);
+                    PendingRead read = get(results.get(next), entry, true);
+                    if (read != null)
+                    {
+                        read.register();
+                    }
+                    next++;
+                }
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading the classpath.");
+        }
+        finally
+        {
+            ingestion.shutdownNow();
+            parsers.shutdownNow();
+            for (DefaultClassDataLoader loader : loaders)
+            {
+                loader.setExecutor(null);
+            }
+        }
+    }
+
+
+    /**
+     * Get the result of an entry.
+     *
+     * @param result the completed read of the entry.
+     * @param entry the entry.
+     * @param report true to report the warnings, false to only rethrow the fatal errors.
+     * @return the classes read, or null if the entry failed with an error reported as a warning.
+     */
+    private PendingRead get(Future<PendingRead> result, Entry entry, boolean report)
+        throws IOException, InterruptedException
+    {
+        try
+        {
+            return result.get();
+        }
+        catch (ExecutionException e)
+        {
+            Throwable cause = e.getCause();
+            if (cause instanceof ReadClassException)
+            {
+                if (report || !isWarning(entry))
+                {
+                    handle(entry, (ReadClassException)cause);
+                }
+                return null;
+            }
+            else if (cause instanceof IOException)
+            {
+                throw (IOException)cause;
+            }
+            else if (cause instanceof RuntimeException)
+            {
+                throw (RuntimeException)cause;
+            }
+            else
+            {
+                throw (Error)cause;
+            }
+        }
+    }
+
+
+    private boolean isWarning(Entry entry)
+    {
+        return entry.dependency && warnOnDependencyLoadingError;
+    }
+
+
+    private void handle(Entry entry, ReadClassException e)
+        throws ReadClassException
+    {
+        if (isWarning(entry))
+        {
+            reporter.report(new Report(Severity.WARNING, e.getMessage()));
+        }
+        else
+        {
+            throw e;
+        }
+    }
+
+
+    /**
+     * An archive or a directory to read into a loader.
+     */
+    private static class Entry
+    {
+        private final DefaultClassDataLoader loader;
+        private final File file;
+        private final boolean dependency;
+        private final String description;
+        private final PendingRead prepared;
+
+
+        Entry(DefaultClassDataLoader loader, File file, boolean dependency, String description, PendingRead prepared)
+        {
+            this.loader = loader;
+            this.file = file;
+            this.dependency = dependency;
+            this.description = description;
+            this.prepared = prepared;
+        }
+
+
+        void report(Reporter reporter)
+        {
+            reporter.report(new Report(Severity.INFO, description + file));
+        }
+
+
+        PendingRead prepare()
+            throws IOException
+        {
+            if (prepared != null)
+            {
+                return prepared;
+            }
+            return dependency ? loader.prepareReadDependency(file.toURI()) : loader.prepareRead(file.toURI());
+        }
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2012 William Bernardet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.japi.checker;
+
+import com.googlecode.japi.checker.model.JavaItem;
+
+/**
+ * A rule keeping results across the items of a check. The rule itself keeps no state, its
+ * results are kept by accumulators of the {@link RuleContext} of the check, so the same instance
+ * can be used by several threads and for several checks.
+ */
+public interface ContextualRule extends Rule {
+
+    /**
+     * Called once at the start of each check, before any item is checked, e.g. to create the
+     * accumulators of the rule so its results are available even if it is never called.
+     * @param context the context of the check.
+     */
+    void begin(RuleContext context);
+
+    /**
+     * Same as {@link Rule#checkBackwardCompatibility(Reporter, JavaItem, JavaItem)}, accumulating
+     * the results into the context.
+     * @param reporter the reporter where to report issues to, never null.
+     * @param context the context of the current thread.
+     * @param reference the reference item, never null.
+     * @param newItem the new item, never null.
+     */
+    void checkBackwardCompatibility(Reporter reporter, RuleContext context, JavaItem reference, JavaItem newItem);
+}
@@ -19,22 +19,44 @@ package com.googlecode.japi.checker;
 import java.io.File;
 import java.io.IOException;
 import java.net.URI;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.Hashtable;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
 
+import com.googlecode.japi.checker.AbstractClassReader.ClassListener;
 import com.googlecode.japi.checker.model.ClassData;
 import com.googlecode.japi.checker.utils.AntPatternMatcher;
 
 
 /**
  * Basic implementation of the ClassDataLoader. It populates itself thanks to the read method.
+ * Classes are looked up by name through an index which follows the classpath order: when
+ * several readers define the same class, the first one read wins.
  */
 class DefaultClassDataLoader
     implements ClassDataLoader
 {
-    private Map<URI, AbstractClassReader> readers = new Hashtable<URI, AbstractClassReader>();
+    private Map<URI, AbstractClassReader> readers = Collections.synchronizedMap(new LinkedHashMap<URI, AbstractClassReader>());
+    private volatile ConcurrentMap<String, ClassData> index = new ConcurrentHashMap<String, ClassData>();
+    // snapshots are not indexed, their own class index is searched instead.
+    private volatile List<ApiSnapshotReader> snapshots = new CopyOnWriteArrayList<ApiSnapshotReader>();
+    private int parallelism = 1;
+    private boolean memoryMapped;
+    private ParseMode parseMode = ParseMode.FULL;
+    private ParseMode dependencyParseMode = ParseMode.SIGNATURES_WITHOUT_DEBUG;
+    private ModelCache modelCache;
+    private SymbolTable symbolTable = new SymbolTable();
+    private AnnotationPolicy annotationPolicy = AnnotationPolicy.ALL;
+    private volatile ExecutorService executor;
+    private volatile TypeHierarchy typeHierarchy;
 
 
     /**
@@ -46,18 +68,333 @@ class DefaultClassDataLoader
      */
     protected void read(File filename)
         throws IOException
+    {
+        read(filename, parseMode);
+    }
+
+
+    /**
+     * Read a set of classes via this ClassDataLoader using a specific parse mode.
+     *
+     * @param filename the archive file or directory to read class file from.
+     * @param mode defines how much of the class files is parsed.
+     * @throws IOException thrown in case of error while extracting the class data.
+     */
+    protected void read(File filename, ParseMode mode)
+        throws IOException
+    {
+        prepare(filename, mode, false).register();
+    }
+
+
+    /**
+     * Read a set of classes without making them visible through this loader yet, so several
+     * archives can be read concurrently and still be registered in classpath order.
+     *
+     * @param filename the archive file or directory to read class file from.
+     * @param mode defines how much of the class files is parsed.
+     * @param dependency true to pack the members of the classes, see {@link ClassData#pack()}.
+     * @return the classes read, to be registered from the thread owning the loader.
+     * @throws IOException thrown in case of error while extracting the class data.
+     */
+    PendingRead prepare(final File filename, ParseMode mode, boolean dependency)
+        throws IOException
+    {
+        final AbstractClassReader reader = createReader(filename, mode);
+        read(filename, reader, mode);
+        // snapshots only decode the classes looked up, they stay as they are.
+        if (dependency && !(reader instanceof ApiSnapshotReader))
+        {
+            for (ClassData clazz : reader.getClasses())
+            {
+                clazz.pack();
+            }
+        }
+        return new PendingRead()
+        {
+            @Override
+            public void register()
+            {
+                DefaultClassDataLoader.this.register(filename.toURI(), reader);
+            }
+        };
+    }
+
+
+    private void read(File filename, AbstractClassReader reader, ParseMode mode)
+        throws IOException
+    {
+        if (modelCache != null && filename.isFile() && !(reader instanceof ApiSnapshotReader))
+        {
+            String key = modelCache.getKey(filename, mode, annotationPolicy);
+            if (!modelCache.load(key, reader, this))
+            {
+                reader.read();
+                modelCache.store(key, reader);
+            }
+        }
+        else
+        {
+            reader.read();
+        }
+    }
+
+
+    /**
+     * Prepare the read of an artifact whose classes become visible through this loader one by one,
+     * while it is being read, see {@link ClassStream}. Nothing is read yet.
+     *
+     * @param uri
+     * @return the stream, to be registered in classpath order before being read.
+     * @throws IOException
+     */
+    ClassStream prepareStream(URI uri)
+        throws IOException
+    {
+        File filename = toFile(uri);
+        return new ClassStream(filename, createReader(filename, parseMode));
+    }
+
+
+    /**
+     * Same as {@link #read(URI)}, the classes are registered by {@link PendingRead#register()}.
+     *
+     * @param uri
+     * @return the classes read.
+     * @throws IOException
+     */
+    PendingRead prepareRead(URI uri)
+        throws IOException
+    {
+        return prepare(toFile(uri), parseMode, false);
+    }
+
+
+    /**
+     * Same as {@link #readDependency(URI)}, the classes are registered by {@link PendingRead#register()}.
+     *
+     * @param uri
+     * @return the classes read.
+     * @throws IOException
+     */
+    PendingRead prepareReadDependency(URI uri)
+        throws IOException
+    {
+        return prepare(toFile(uri), dependencyParseMode, true);
+    }
+
+
+    private void register(URI uri, AbstractClassReader reader)
+    {
+        resetTypeHierarchy();
+        if (readers.put(uri, reader) == null)
+        {
+            addToIndex(index, snapshots, reader);
+        }
+        else
+        {
+            // a reader has been replaced, its classes might be shadowed by the following ones.
+            rebuildIndex();
+        }
+    }
+
+
+    /**
+     * Create a configured reader suitable for the given archive file or directory.
+     *
+     * @param filename the archive file or directory to read class file from.
+     * @param mode defines how much of the class files is parsed.
+     * @return a new reader, nothing is read yet.
+     */
+    AbstractClassReader createReader(File filename, ParseMode mode)
     {
         AbstractClassReader reader;
         if (filename.isDirectory())
         {
             reader = new DirectoryReader(filename, this);
         }
+        else if (Utils.isApiSnapshot(filename))
+        {
+            reader = new ApiSnapshotReader(filename, this);
+        }
+        else if (memoryMapped)
+        {
+            reader = new MappedJarReader(filename, this);
+        }
         else
         {
             reader = new JarReader(filename, this);
         }
-        reader.read();
-        readers.put(filename.toURI(), reader);
+        reader.setParallelism(parallelism);
+        reader.setExecutor(executor);
+        reader.setParseMode(mode);
+        reader.setSymbolTable(symbolTable);
+        reader.setAnnotationPolicy(annotationPolicy);
+        return reader;
+    }
+
+
+    private void rebuildIndex()
+    {
+        ConcurrentMap<String, ClassData> newIndex = new ConcurrentHashMap<String, ClassData>();
+        List<ApiSnapshotReader> newSnapshots = new CopyOnWriteArrayList<ApiSnapshotReader>();
+        synchronized (readers)
+        {
+            for (AbstractClassReader reader : readers.values())
+            {
+                addToIndex(newIndex, newSnapshots, reader);
+            }
+        }
+        index = newIndex;
+        snapshots = newSnapshots;
+    }
+
+
+    private static void addToIndex(ConcurrentMap<String, ClassData> index, List<ApiSnapshotReader> snapshots,
+                                   AbstractClassReader reader)
+    {
+        if (reader instanceof ApiSnapshotReader)
+        {
+            snapshots.add((ApiSnapshotReader)reader);
+            return;
+        }
+        for (ClassData clazz : reader.getClasses())
+        {
+            if (!isInSnapshots(snapshots, clazz.getName()))
+            {
+                index.putIfAbsent(clazz.getName(), clazz);
+            }
+        }
+    }
+
+
+    private static boolean isInSnapshots(List<ApiSnapshotReader> snapshots, String name)
+    {
+        for (ApiSnapshotReader snapshot : snapshots)
+        {
+            if (snapshot.contains(name))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * Defines how many threads each reader uses to inflate and parse class files.
+     *
+     * @param parallelism the number of threads.
+     */
+    public void setParallelism(int parallelism)
+    {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+
+    /**
+     * Defines a pool of worker threads shared by the readers created from now on.
+     *
+     * @param executor the shared executor, or null to let each reader create its own pool.
+     */
+    void setExecutor(ExecutorService executor)
+    {
+        this.executor = executor;
+    }
+
+
+    /**
+     * Defines if archives should be read by mapping them in memory rather than through ZipFile.
+     *
+     * @param memoryMapped
+     */
+    public void setMemoryMapped(boolean memoryMapped)
+    {
+        this.memoryMapped = memoryMapped;
+    }
+
+
+    /**
+     * Defines how much of the class files read via {@link #read(URI)} is parsed.
+     *
+     * @param parseMode
+     */
+    public void setParseMode(ParseMode parseMode)
+    {
+        this.parseMode = parseMode;
+    }
+
+
+    /**
+     * Defines how much of the class files read via {@link #readDependency(URI)} is parsed.
+     *
+     * @param dependencyParseMode
+     */
+    public void setDependencyParseMode(ParseMode dependencyParseMode)
+    {
+        this.dependencyParseMode = dependencyParseMode;
+    }
+
+
+    /**
+     * Defines the table holding the names, descriptors and signatures of the classes read
+     * afterwards. Sharing a table between loaders shares these values between their models.
+     *
+     * @param symbolTable the table.
+     */
+    void setSymbolTable(SymbolTable symbolTable)
+    {
+        this.symbolTable = symbolTable;
+    }
+
+
+    /**
+     * @return the table holding the names, descriptors and signatures of the classes read.
+     */
+    SymbolTable getSymbolTable()
+    {
+        return symbolTable;
+    }
+
+
+    /**
+     * Defines which annotations are read from the class files, the model cache and the API snapshots
+     * read afterwards, the others do not appear in the model.
+     *
+     * @param annotationPolicy the policy, all the annotations are read by default.
+     */
+    void setAnnotationPolicy(AnnotationPolicy annotationPolicy)
+    {
+        this.annotationPolicy = annotationPolicy;
+    }
+
+
+    /**
+     * @return the policy telling which annotations are read from the class files.
+     */
+    AnnotationPolicy getAnnotationPolicy()
+    {
+        return annotationPolicy;
+    }
+
+
+    /**
+     * Defines the cache used to store the parsed model of archives, so they are only parsed once.
+     *
+     * @param modelCache the cache, or null to always parse the archives.
+     */
+    void setModelCache(ModelCache modelCache)
+    {
+        this.modelCache = modelCache;
+    }
+
+
+    /**
+     * @return how much of the class files read via {@link #readDependency(URI)} is parsed.
+     */
+    public ParseMode getDependencyParseMode()
+    {
+        return dependencyParseMode;
     }
 
 
@@ -67,17 +404,23 @@ class DefaultClassDataLoader
     @Override
     public ClassData fromName(String name)
     {
-        for (AbstractClassReader reader : readers.values())
+        if (name == null)
         {
-            for (ClassData clazz : reader.getClasses())
+            return null;
+        }
+        ClassData clazz = index.get(name);
+        if (clazz == null)
+        {
+            for (ApiSnapshotReader snapshot : snapshots)
             {
-                if (clazz.getName().equals(name))
+                clazz = snapshot.fromName(name);
+                if (clazz != null)
                 {
-                    return clazz;
+                    break;
                 }
             }
         }
-        return null;
+        return clazz;
     }
 
 
@@ -100,18 +443,22 @@ class DefaultClassDataLoader
 
     /**
      * {@inheritDoc}
+     * The map is a copy, the archives read afterwards do not change it.
      */
     @Override
     public Map<String, ClassData> getClasses()
     {
-        Map<String, ClassData> result = new HashMap<String, ClassData>();
-        for (AbstractClassReader reader : readers.values())
+        Map<String, ClassData> result = new HashMap<String, ClassData>(index);
+        // the index never contains classes defined by a previous snapshot.
+        for (ApiSnapshotReader snapshot : snapshots)
         {
-            for (ClassData cd : reader.getClasses())
+            for (ClassData clazz : snapshot.getClasses())
             {
-                result.put(cd.getName(), cd);
+                if (!result.containsKey(clazz.getName()))
+                {
+                    result.put(clazz.getName(), clazz);
+                }
             }
-
         }
         return result;
     }
@@ -142,14 +489,192 @@ class DefaultClassDataLoader
     @Override
     public void read(URI uri)
         throws IOException
+    {
+        prepareRead(uri).register();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void readDependency(URI uri)
+        throws IOException
+    {
+        prepareReadDependency(uri).register();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public TypeHierarchy getTypeHierarchy()
+    {
+        TypeHierarchy hierarchy = typeHierarchy;
+        if (hierarchy == null)
+        {
+            synchronized (this)
+            {
+                hierarchy = typeHierarchy;
+                if (hierarchy == null)
+                {
+                    hierarchy = createTypeHierarchy();
+                    typeHierarchy = hierarchy;
+                }
+            }
+        }
+        return hierarchy;
+    }
+
+
+    /**
+     * @return a new hierarchy of the classes of this loader.
+     */
+    TypeHierarchy createTypeHierarchy()
+    {
+        return new TypeHierarchy(this);
+    }
+
+
+    /**
+     * Drop the type hierarchy, as the classes it is based on are about to change.
+     */
+    void resetTypeHierarchy()
+    {
+        typeHierarchy = null;
+    }
+
+
+    static File toFile(URI uri)
+        throws IOException
     {
         if ("file".equals(uri.getScheme()))
         {
-            read(new File(uri.getPath()));
+            return new File(uri.getPath());
         }
-        else
+        throw new IOException("Unsupported scheme: " + uri.getScheme());
+    }
+
+
+    /**
+     * Classes which have been read but are not visible through the loader yet.
+     */
+    interface PendingRead
+    {
+        /**
+         * Make the classes visible through the loader, following the classpath order
+         * in which the reads are registered.
+         */
+        void register();
+    }
+
+
+    /**
+     * An artifact read while its classes are being used. Its reader is registered empty, in classpath
+     * order, then the classes read are published one by one by the thread consuming them. A published
+     * class hides the classes of the same name defined by the following readers, so once all the classes
+     * are published the loader is the same as if the artifact had been read at once.
+     * The type hierarchy is not reset by a publication, the types which have been looked up so far
+     * must not be affected by the classes published next.
+     */
+    class ClassStream
+        implements PendingRead
+    {
+        private final File file;
+        private final AbstractClassReader reader;
+        private final Set<String> published = new HashSet<String>();
+
+
+        ClassStream(File file, AbstractClassReader reader)
+        {
+            this.file = file;
+            this.reader = reader;
+        }
+
+
+        @Override
+        public void register()
+        {
+            DefaultClassDataLoader.this.register(file.toURI(), reader);
+        }
+
+
+        /**
+         * @return the paths of the class files of the artifact, without reading them.
+         * @throws IOException
+         */
+        List<String> list()
+            throws IOException
+        {
+            return reader.list();
+        }
+
+
+        /**
+         * Read the artifact, the classes are passed to the listener as they are parsed, except the ones
+         * restored from the model cache.
+         *
+         * @param listener
+         * @throws IOException
+         */
+        void read(ClassListener listener)
+            throws IOException
+        {
+            reader.setListener(listener);
+            try
+            {
+                DefaultClassDataLoader.this.read(file, reader, reader.getParseMode());
+            }
+            finally
+            {
+                reader.setListener(null);
+            }
+        }
+
+
+        /**
+         * Make a class read from the artifact visible through the loader, the first class published
+         * for a name wins.
+         *
+         * @param clazz
+         */
+        void publish(ClassData clazz)
+        {
+            if (published.add(clazz.getName()))
+            {
+                index.put(clazz.getName(), clazz);
+            }
+        }
+
+
+        /**
+         * @param path the path of a class file of the artifact.
+         * @param includes
+         * @param excludes
+         * @return true if the class file is part of the classes returned by {@link #getClasses(List, List)}.
+         */
+        boolean isIncluded(String path, List<AntPatternMatcher> includes, List<AntPatternMatcher> excludes)
+        {
+            return reader.shouldInclude(path, includes, excludes);
+        }
+
+
+        /**
+         * @return the class file paths mapped to the classes read so far, in the order of the artifact.
+         */
+        Map<String, ClassData> getClassFiles()
+        {
+            return reader.getClassFiles();
+        }
+
+
+        /**
+         * Same as {@link DefaultClassDataLoader#getClasses(URI, List, List)} for the artifact.
+         */
+        Map<String, ClassData> getClasses(List<AntPatternMatcher> includes, List<AntPatternMatcher> excludes)
         {
-            throw new IOException("Unsupported scheme: " + uri.getScheme());
+            return DefaultClassDataLoader.this.getClasses(file.toURI(), includes, excludes);
         }
     }
 }
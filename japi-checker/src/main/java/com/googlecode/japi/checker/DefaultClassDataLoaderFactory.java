@@ -2,10 +2,136 @@ package com.googlecode.japi.checker;
 
 
 class DefaultClassDataLoaderFactory implements ClassDataLoaderFactory {
+    private int parallelism = 1;
+    private boolean memoryMapped;
+    private ParseMode parseMode = ParseMode.FULL;
+    private ParseMode dependencyParseMode = ParseMode.SIGNATURES_WITHOUT_DEBUG;
+    private boolean lazyDependencies;
+    private long dependencyCacheSize;
+    private ModelCache modelCache;
 
     @Override
-    public ClassDataLoader createClassDataLoader() {
-        return new DefaultClassDataLoader();
+    public DefaultClassDataLoader createClassDataLoader() {
+        DefaultClassDataLoader loader;
+        if (lazyDependencies || dependencyCacheSize > 0) {
+            LazyClassDataLoader lazyLoader = new LazyClassDataLoader();
+            lazyLoader.setMaxCacheSize(dependencyCacheSize);
+            loader = lazyLoader;
+        } else {
+            loader = new DefaultClassDataLoader();
+        }
+        loader.setParallelism(parallelism);
+        loader.setMemoryMapped(memoryMapped);
+        loader.setParseMode(parseMode);
+        loader.setDependencyParseMode(dependencyParseMode);
+        loader.setModelCache(modelCache);
+        return loader;
+    }
+
+    /**
+     * Defines how many threads the created loaders use to read an archive or a directory.
+     * @param parallelism the number of threads.
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * @return the number of threads the created loaders use to read an archive or a directory.
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Defines if the created loaders map archives in memory to read them.
+     * @param memoryMapped
+     */
+    public void setMemoryMapped(boolean memoryMapped) {
+        this.memoryMapped = memoryMapped;
+    }
+
+    /**
+     * @return true if the created loaders map archives in memory to read them.
+     */
+    public boolean isMemoryMapped() {
+        return memoryMapped;
+    }
+
+    /**
+     * Defines how much of the class files of the artifacts is parsed.
+     * @param parseMode
+     */
+    public void setParseMode(ParseMode parseMode) {
+        this.parseMode = parseMode;
+    }
+
+    /**
+     * @return how much of the class files of the artifacts is parsed.
+     */
+    public ParseMode getParseMode() {
+        return parseMode;
+    }
+
+    /**
+     * Defines how much of the class files of the dependencies is parsed.
+     * @param dependencyParseMode
+     */
+    public void setDependencyParseMode(ParseMode dependencyParseMode) {
+        this.dependencyParseMode = dependencyParseMode;
+    }
+
+    /**
+     * @return how much of the class files of the dependencies is parsed.
+     */
+    public ParseMode getDependencyParseMode() {
+        return dependencyParseMode;
+    }
+
+    /**
+     * Defines if the created loaders only parse the dependency classes which are looked up.
+     * @param lazyDependencies
+     */
+    public void setLazyDependencies(boolean lazyDependencies) {
+        this.lazyDependencies = lazyDependencies;
+    }
+
+    /**
+     * @return true if the created loaders only parse the dependency classes which are looked up.
+     */
+    public boolean isLazyDependencies() {
+        return lazyDependencies;
+    }
+
+    /**
+     * Bound the estimated size of the dependency classes each created loader holds, the least
+     * recently used ones are parsed again when needed. The loaders then parse the dependencies lazily.
+     * @param dependencyCacheSize the estimated size in bytes, or 0 to keep all the dependency classes.
+     */
+    public void setDependencyCacheSize(long dependencyCacheSize) {
+        this.dependencyCacheSize = Math.max(0, dependencyCacheSize);
+    }
+
+    /**
+     * @return the estimated size in bytes of the dependency classes each created loader holds, 0 if unbounded.
+     */
+    public long getDependencyCacheSize() {
+        return dependencyCacheSize;
+    }
+
+    /**
+     * Defines the cache used by the created loaders to store the parsed model of archives.
+     * @param modelCache the cache, or null to disable caching.
+     */
+    void setModelCache(ModelCache modelCache) {
+        this.modelCache = modelCache;
+    }
+
+    /**
+     * @return the cache used by the created loaders, or null if caching is disabled.
+     */
+    ModelCache getModelCache() {
+        return modelCache;
     }
 
 }
@@ -15,13 +15,19 @@
  */
 package com.googlecode.japi.checker;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
-
+/**
+ * Reads the classes of an exploded class tree e.g: target/classes.
+ * The tree is listed first, in a stable order, then the class files are read
+ * using their exact size and parsed, concurrently depending on the parallelism.
+ */
 public class DirectoryReader extends AbstractClassReader {
 
     private File path;
@@ -35,43 +41,67 @@ public class DirectoryReader extends AbstractClassReader {
     @Override
     public void read() throws IOException {
         clear();
-        ReadClassesException errors = new ReadClassesException(); 
-        scanDir(this.path, null, errors);
-        errors.throwIfNeeded();
+        List<ClassFile> files = new ArrayList<ClassFile>();
+        scanDir(this.path, "", files);
+        readClasses(files, loader);
     }
 
-    private void scanDir(File dir, String path, ReadClassesException errors) throws IOException {
-        byte buffer[] = new byte[2048]; 
-        if (path == null) {
-            path = "";
+    private void scanDir(File dir, String path, List<ClassFile> files) throws IOException {
+        File[] content = dir.listFiles();
+        if (content == null) {
+            throw new IOException("Could not list the content of " + dir);
         }
-        for (File file : dir.listFiles()) {
+        Arrays.sort(content);
+        for (File file : content) {
             if (file.isDirectory()) {
-                scanDir(file, path + file.getName() + "/", errors);
+                scanDir(file, path + file.getName() + "/", files);
             } else if (file.getName().endsWith(".class")) {
-                ClassDumper dumper = new ClassDumper(loader); 
-                ByteArrayOutputStream os =  new ByteArrayOutputStream();
-                InputStream is = null;
-                try {
-                    is = new FileInputStream(file);
-                    int count = 0;
-                    while ((count = is.read(buffer)) != -1) {
-                        os.write(buffer, 0, count);
-                    }
-                    try {
-                        this.readClass(dumper, path + file.getName(), os.toByteArray());
-                    } catch (ReadClassException exc) {
-                        errors.add(exc);
-                    } finally {
-                        os.close();
-                    }
-                } finally {
-                    if (is != null) {
-                        is.close();
-                    }
-                }
+                files.add(new FileClassFile(file, path + file.getName()));
             }
         }
     }
 
+    @Override
+    List<String> list() throws IOException {
+        List<ClassFile> files = new ArrayList<ClassFile>();
+        scanDir(this.path, "", files);
+        List<String> names = new ArrayList<String>(files.size());
+        for (ClassFile file : files) {
+            names.add(file.getName());
+        }
+        return names;
+    }
+
+    @Override
+    void reload(String name, ClassBuffer buffer) throws IOException {
+        new FileClassFile(new File(this.path, name), name).load(buffer);
+    }
+
+    /**
+     * A class file of the tree.
+     */
+    private static class FileClassFile implements ClassFile {
+        private final File file;
+        private final String name;
+
+        FileClassFile(File file, String name) {
+            this.file = file;
+            this.name = name;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public void load(ClassBuffer buffer) throws IOException {
+            InputStream is = new FileInputStream(file);
+            try {
+                buffer.load(is, file.length());
+            } finally {
+                is.close();
+            }
+        }
+    }
 }
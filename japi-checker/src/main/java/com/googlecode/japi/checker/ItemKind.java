@@ -0,0 +1,43 @@
+/*
+ * Copyright 2012 William Bernardet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.japi.checker;
+
+import com.googlecode.japi.checker.model.ClassData;
+import com.googlecode.japi.checker.model.FieldData;
+import com.googlecode.japi.checker.model.JavaItem;
+import com.googlecode.japi.checker.model.MethodData;
+
+/**
+ * The kinds of items the checker compares in pairs, see {@link TypedRule}.
+ */
+public enum ItemKind {
+    CLASS, FIELD, METHOD;
+
+    /**
+     * @param item the item.
+     * @return the kind of the item, or null if items of its kind are not compared in pairs.
+     */
+    public static ItemKind of(JavaItem item) {
+        if (item instanceof MethodData) {
+            return METHOD;
+        } else if (item instanceof FieldData) {
+            return FIELD;
+        } else if (item instanceof ClassData) {
+            return CLASS;
+        }
+        return null;
+    }
+}
@@ -15,14 +15,20 @@
  */
 package com.googlecode.japi.checker;
 
-import java.io.BufferedInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
+import java.util.zip.ZipFile;
 
+/**
+ * Reads the classes of a jar (or any zip kind of archive). The archive is opened
+ * through its central directory, so only the class file entries are inflated, and
+ * this can happen concurrently depending on the parallelism.
+ */
 public class JarReader extends AbstractClassReader {
     private File filename;
     private ClassDataLoader loader;
@@ -35,41 +41,79 @@ public class JarReader extends AbstractClassReader {
     @Override
     public void read() throws IOException {
         this.clear();
-        FileInputStream fis = null;
-        ZipInputStream zis = null;
+        ZipFile zip = new ZipFile(this.filename);
         try {
-            ReadClassesException errors = new ReadClassesException(); 
-            fis = new FileInputStream(this.filename);
-            zis = new ZipInputStream(new BufferedInputStream(fis));
-            ZipEntry entry = null;
-            byte buffer[] = new byte[2048];
-            int count = 0;
-            while((entry = zis.getNextEntry()) != null) {
-                if (entry.getName().endsWith(".class")) {
-                    ClassDumper dumper = new ClassDumper(loader); 
-
-                    ByteArrayOutputStream os =  new ByteArrayOutputStream();
-                    while ((count = zis.read(buffer)) != -1) {
-                        os.write(buffer, 0, count);
-                    }
-                    try {
-                        this.readClass(dumper, entry.getName(), os.toByteArray());
-                    } catch (ReadClassException exc) {
-                        errors.add(exc);
-                    } finally {
-                        os.close();
-                    }
+            List<ClassFile> files = new ArrayList<ClassFile>();
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (!entry.isDirectory() && entry.getName().endsWith(".class")) {
+                    files.add(new ZipClassFile(zip, entry));
                 }
             }
-            errors.throwIfNeeded();
+            readClasses(files, loader);
         } finally {
-            if (fis != null) {
-                fis.close();
+            zip.close();
+        }
+    }
+
+    @Override
+    List<String> list() throws IOException {
+        ZipFile zip = new ZipFile(this.filename);
+        try {
+            List<String> names = new ArrayList<String>();
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (!entry.isDirectory() && entry.getName().endsWith(".class")) {
+                    names.add(entry.getName());
+                }
             }
-            if (zis != null) {
-                zis.close();
+            return names;
+        } finally {
+            zip.close();
+        }
+    }
+
+    @Override
+    void reload(String name, ClassBuffer buffer) throws IOException {
+        ZipFile zip = new ZipFile(this.filename);
+        try {
+            ZipEntry entry = zip.getEntry(name);
+            if (entry == null) {
+                throw new IOException("Could not find " + name + " in " + filename);
             }
+            new ZipClassFile(zip, entry).load(buffer);
+        } finally {
+            zip.close();
         }
     }
 
+    /**
+     * A class file entry of the archive, ZipFile supports concurrent reading of its entries.
+     */
+    private static class ZipClassFile implements ClassFile {
+        private final ZipFile zip;
+        private final ZipEntry entry;
+
+        ZipClassFile(ZipFile zip, ZipEntry entry) {
+            this.zip = zip;
+            this.entry = entry;
+        }
+
+        @Override
+        public String getName() {
+            return entry.getName();
+        }
+
+        @Override
+        public void load(ClassBuffer buffer) throws IOException {
+            InputStream is = zip.getInputStream(entry);
+            try {
+                buffer.load(is, entry.getSize());
+            } finally {
+                is.close();
+            }
+        }
+    }
 }
@@ -0,0 +1,293 @@
+/*
+ * Copyright 2012 William Bernardet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.japi.checker;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.googlecode.japi.checker.model.ClassData;
+
+
+/**
+ * ClassDataLoader which only indexes the class file names of the dependencies, a dependency
+ * class is parsed the first time it is requested via {@link #fromName(String)}.
+ * Classes read via {@link #read(URI)} are still parsed eagerly and take precedence over the
+ * dependencies, which are looked up in classpath order.
+ * The parsed dependency classes can be held in a cache bounded by their estimated size, the
+ * least recently used ones are then dropped and parsed again from their archive when requested.
+ */
+class LazyClassDataLoader
+    extends DefaultClassDataLoader
+{
+    private static final String CLASS_SUFFIX = ".class";
+    private Logger logger = Logger.getLogger(LazyClassDataLoader.class.getName());
+    private ConcurrentMap<String, LazyClass> dependencies = new ConcurrentHashMap<String, LazyClass>();
+    private long maxCacheSize;
+    // the parsed classes in access order, only maintained when the cache is bounded.
+    private final LinkedHashMap<LazyClass, LazyClass> cache = new LinkedHashMap<LazyClass, LazyClass>(16, 0.75f, true);
+    private long cacheSize;
+
+
+    /**
+     * Bound the size of the parsed dependency classes, the size of a class is estimated
+     * by the size of its class file. The classes read via {@link #read(URI)} are not counted,
+     * and a dependency class is never dropped while it is the only one held.
+     *
+     * @param maxCacheSize the estimated size in bytes, or 0 to keep all the parsed classes.
+     */
+    void setMaxCacheSize(long maxCacheSize)
+    {
+        this.maxCacheSize = Math.max(0, maxCacheSize);
+        resetTypeHierarchy();
+    }
+
+
+    /**
+     * @return the bound on the estimated size in bytes of the parsed dependency classes, or 0 if unbounded.
+     */
+    long getMaxCacheSize()
+    {
+        return maxCacheSize;
+    }
+
+
+    /**
+     * @return the estimated size in bytes of the parsed dependency classes held, only maintained when bounded.
+     */
+    long getCacheSize()
+    {
+        synchronized (cache)
+        {
+            return cacheSize;
+        }
+    }
+
+
+    /**
+     * Index the class files of the dependency, nothing gets parsed.
+     * {@inheritDoc}
+     */
+    @Override
+    PendingRead prepareReadDependency(URI uri)
+        throws IOException
+    {
+        final AbstractClassReader reader = createReader(toFile(uri), getDependencyParseMode());
+        final List<String> paths = reader.list();
+        return new PendingRead()
+        {
+            @Override
+            public void register()
+            {
+                resetTypeHierarchy();
+                for (String path : paths)
+                {
+                    // versioned or misplaced entries cannot be found from the class name.
+                    if (!path.startsWith("META-INF/"))
+                    {
+                        String name = path.substring(0, path.length() - CLASS_SUFFIX.length());
+                        dependencies.putIfAbsent(name, new LazyClass(reader, path));
+                    }
+                }
+            }
+        };
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ClassData fromName(String name)
+    {
+        ClassData clazz = super.fromName(name);
+        if (clazz == null && name != null)
+        {
+            LazyClass lazyClass = dependencies.get(name);
+            if (lazyClass != null)
+            {
+                clazz = lazyClass.get(name);
+            }
+        }
+        return clazz;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * The dependency classes which have not been requested yet are parsed, and all of them are
+     * held by the returned map whatever the bound of the cache.
+     */
+    @Override
+    public Map<String, ClassData> getClasses()
+    {
+        Map<String, ClassData> result = super.getClasses();
+        for (Map.Entry<String, LazyClass> dependency : dependencies.entrySet())
+        {
+            String name = dependency.getKey();
+            if (!result.containsKey(name))
+            {
+                ClassData clazz = dependency.getValue().get(name);
+                if (clazz != null)
+                {
+                    result.put(name, clazz);
+                }
+            }
+        }
+        return result;
+    }
+
+
+    /**
+     * The member tables are not kept when the classes can be dropped, as they would keep them.
+     * {@inheritDoc}
+     */
+    @Override
+    TypeHierarchy createTypeHierarchy()
+    {
+        return new TypeHierarchy(this, maxCacheSize == 0);
+    }
+
+
+    private void loaded(LazyClass lazyClass)
+    {
+        synchronized (cache)
+        {
+            cache.put(lazyClass, lazyClass);
+            cacheSize += lazyClass.size;
+            Iterator<LazyClass> eldest = cache.keySet().iterator();
+            while (cacheSize > maxCacheSize && cache.size() > 1)
+            {
+                LazyClass evicted = eldest.next();
+                eldest.remove();
+                cacheSize -= evicted.size;
+                evicted.clazz = null;
+            }
+        }
+    }
+
+
+    private void used(LazyClass lazyClass)
+    {
+        synchronized (cache)
+        {
+            // only reorders the class if it has not been dropped meanwhile.
+            cache.get(lazyClass);
+        }
+    }
+
+
+    /**
+     * A dependency class which is parsed on first access, and again after it has been dropped
+     * from the cache.
+     */
+    private class LazyClass
+    {
+        private final AbstractClassReader reader;
+        private final String path;
+        // set to null when dropped from the cache, which never locks the instance.
+        private volatile ClassData clazz;
+        private volatile boolean missing;
+        private int size;
+
+
+        LazyClass(AbstractClassReader reader, String path)
+        {
+            this.reader = reader;
+            this.path = path;
+        }
+
+
+        ClassData get(String name)
+        {
+            ClassData result = clazz;
+            if (result != null)
+            {
+                if (maxCacheSize > 0)
+                {
+                    used(this);
+                }
+                return result;
+            }
+            synchronized (this)
+            {
+                result = clazz;
+                if (result == null && !missing)
+                {
+                    try
+                    {
+                        result = load(name);
+                    }
+                    catch (ReadClassException e)
+                    {
+                        logger.log(Level.WARNING, "Could not parse the dependency class " + name + ": " + e.getMessage(), e);
+                    }
+                    catch (IOException e)
+                    {
+                        // the class is read again on the next request.
+                        logger.log(Level.WARNING, "Could not read the dependency class " + name + ": " + e.getMessage(), e);
+                        return null;
+                    }
+                    if (result == null)
+                    {
+                        missing = true;
+                    }
+                    else
+                    {
+                        clazz = result;
+                        if (maxCacheSize > 0)
+                        {
+                            loaded(this);
+                        }
+                    }
+                }
+            }
+            return result;
+        }
+
+
+        /**
+         * @return the class, or null if the class file does not define it.
+         * @throws ReadClassException if the class file cannot be parsed.
+         * @throws IOException if the class file cannot be read.
+         */
+        private ClassData load(String name)
+            throws IOException
+        {
+            ClassBuffer buffer = ClassBuffer.get();
+            reader.reload(path, buffer);
+            size = buffer.getLength();
+            // the table would keep the values of the dropped classes, it is only used when nothing is dropped.
+            SymbolTable symbols = maxCacheSize > 0 ? SymbolTable.NONE : reader.getSymbolTable();
+            ClassDumper dumper = new ClassDumper(LazyClassDataLoader.this, symbols, reader.getAnnotationPolicy());
+            ClassData result = reader.parseClass(dumper, path, buffer.getData(), buffer.getLength());
+            if (result == null || !name.equals(result.getName()))
+            {
+                logger.warning(path + " does not define the class " + name);
+                return null;
+            }
+            result.pack();
+            return result;
+        }
+    }
+}
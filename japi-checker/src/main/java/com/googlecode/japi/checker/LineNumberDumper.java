@@ -0,0 +1,60 @@
+/*
+ * Copyright 2012 William Bernardet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.japi.checker;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import com.googlecode.japi.checker.model.ClassData;
+import com.googlecode.japi.checker.model.MethodData;
+
+/**
+ * Visitor which only collects the line numbers of the methods of an already
+ * parsed class, the rest of the model is left untouched.
+ */
+class LineNumberDumper extends ClassVisitor {
+    private Map<String, MethodData> methods = new HashMap<String, MethodData>();
+
+    /**
+     * @param clazz the class to set the line numbers on.
+     */
+    public LineNumberDumper(ClassData clazz) {
+        super(Opcodes.ASM4);
+        for (MethodData method : clazz.getMethods()) {
+            methods.put(method.getName() + method.getDescriptor(), method);
+        }
+    }
+
+    @Override
+    public MethodVisitor visitMethod(int access, String name, String desc,
+            String signature, String[] exceptions) {
+        final MethodData method = methods.get(name + desc);
+        if (method == null) {
+            return null;
+        }
+        return new MethodVisitor(Opcodes.ASM4) {
+            @Override
+            public void visitLineNumber(int line, Label start) {
+                method.setLineNumber(line);
+            }
+        };
+    }
+}
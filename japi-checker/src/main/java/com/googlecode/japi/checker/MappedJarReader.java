@@ -0,0 +1,233 @@
+/*
+ * Copyright 2012 William Bernardet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.japi.checker;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads the classes of a jar by mapping the archive in memory. The central directory is
+ * decoded directly from the mapped region, stored entries are copied once into the class
+ * buffer. The compressed data of deflated entries is copied into a per-thread input buffer,
+ * the Inflater only accepting arrays, and inflated into a buffer of the exact uncompressed size.
+ * 
+ * Archives which cannot be handled this way (zip64, larger than 2GB, encrypted entries or
+ * unsupported compression methods) are read using the regular {@link JarReader} behavior.
+ */
+public class MappedJarReader extends JarReader {
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+    private static final int MAX_COMMENT_SIZE = 0xffff;
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private File filename;
+    private ClassDataLoader loader;
+
+    public MappedJarReader(File filename, ClassDataLoader loader) {
+        super(filename, loader);
+        this.filename = filename;
+        this.loader = loader;
+    }
+
+    @Override
+    public void read() throws IOException {
+        List<ClassFile> files = getMappedClassFiles();
+        if (files == null) {
+            super.read();
+        } else {
+            this.clear();
+            readClasses(files, loader);
+        }
+    }
+
+    /**
+     * Map the archive and locate its class entries, without loading them.
+     * @return the list of class entries, or null if the archive cannot be read from a mapping.
+     * @throws IOException if the archive is corrupted.
+     */
+    List<ClassFile> getMappedClassFiles() throws IOException {
+        ByteBuffer archive = map();
+        return archive == null ? null : readCentralDirectory(archive);
+    }
+
+    private ByteBuffer map() throws IOException {
+        RandomAccessFile file = new RandomAccessFile(filename, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            if (channel.size() > Integer.MAX_VALUE || channel.size() < END_OF_CENTRAL_DIRECTORY_SIZE) {
+                return null;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            return buffer;
+        } finally {
+            // the mapping stays valid after the channel is closed.
+            file.close();
+        }
+    }
+
+    /**
+     * Locate all the class entries using the central directory.
+     * @param archive the mapped archive.
+     * @return the list of class entries, or null if the archive is not supported.
+     * @throws IOException if the archive is corrupted.
+     */
+    private List<ClassFile> readCentralDirectory(ByteBuffer archive) throws IOException {
+        int end = findEndOfCentralDirectory(archive);
+        if (end < 0) {
+            throw new IOException("Invalid archive, could not find the central directory: " + filename);
+        }
+        int entries = archive.getShort(end + 10) & 0xffff;
+        long offset = archive.getInt(end + 16) & 0xffffffffL;
+        if (entries == 0xffff || offset == 0xffffffffL) {
+            return null; // zip64
+        }
+        List<ClassFile> files = new ArrayList<ClassFile>(entries);
+        int position = (int) offset;
+        for (int i = 0; i < entries; i++) {
+            if (position + 46 > archive.limit() || archive.getInt(position) != CENTRAL_HEADER_SIGNATURE) {
+                throw new IOException("Invalid central directory entry at offset " + position + ": " + filename);
+            }
+            int flags = archive.getShort(position + 8) & 0xffff;
+            int method = archive.getShort(position + 10) & 0xffff;
+            long compressedSize = archive.getInt(position + 20) & 0xffffffffL;
+            long size = archive.getInt(position + 24) & 0xffffffffL;
+            int nameLength = archive.getShort(position + 28) & 0xffff;
+            int extraLength = archive.getShort(position + 30) & 0xffff;
+            int commentLength = archive.getShort(position + 32) & 0xffff;
+            long localHeader = archive.getInt(position + 42) & 0xffffffffL;
+            String name = decodeName(archive, position + 46, nameLength);
+            position += 46 + nameLength + extraLength + commentLength;
+
+            if (!name.endsWith(".class") || name.endsWith("/")) {
+                continue;
+            }
+            if ((flags & 1) != 0 || (method != STORED && method != DEFLATED)
+                    || compressedSize == 0xffffffffL || size == 0xffffffffL || localHeader == 0xffffffffL) {
+                return null; // encrypted, exotic compression or zip64 entry.
+            }
+            files.add(new MappedClassFile(archive, name, method, (int) localHeader, (int) compressedSize, (int) size));
+        }
+        return files;
+    }
+
+    private static int findEndOfCentralDirectory(ByteBuffer archive) {
+        int last = archive.limit() - END_OF_CENTRAL_DIRECTORY_SIZE;
+        int first = Math.max(0, last - MAX_COMMENT_SIZE);
+        for (int position = last; position >= first; position--) {
+            if (archive.getInt(position) == END_OF_CENTRAL_DIRECTORY_SIGNATURE) {
+                return position;
+            }
+        }
+        return -1;
+    }
+
+    private static String decodeName(ByteBuffer archive, int position, int length) {
+        byte[] name = new byte[length];
+        ByteBuffer view = archive.duplicate();
+        view.position(position);
+        view.get(name);
+        return new String(name, UTF8);
+    }
+
+    /**
+     * A class entry located in the mapped archive, each read works on its own
+     * view of the mapping so entries can be loaded concurrently.
+     */
+    private class MappedClassFile implements ClassFile {
+        private final ByteBuffer archive;
+        private final String name;
+        private final int method;
+        private final int localHeader;
+        private final int compressedSize;
+        private final int size;
+
+        MappedClassFile(ByteBuffer archive, String name, int method, int localHeader, int compressedSize, int size) {
+            this.archive = archive;
+            this.name = name;
+            this.method = method;
+            this.localHeader = localHeader;
+            this.compressedSize = compressedSize;
+            this.size = size;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public void load(ClassBuffer buffer) throws IOException {
+            if (localHeader + 30 > archive.limit() || archive.getInt(localHeader) != LOCAL_HEADER_SIGNATURE) {
+                throw new IOException("Invalid local header for entry " + name + ": " + filename);
+            }
+            int data = localHeader + 30 + (archive.getShort(localHeader + 26) & 0xffff)
+                    + (archive.getShort(localHeader + 28) & 0xffff);
+            if (data + compressedSize > archive.limit()) {
+                throw new IOException("Truncated entry " + name + ": " + filename);
+            }
+            if (method == STORED && size != compressedSize) {
+                throw new IOException("Invalid size for stored entry " + name + ": " + filename);
+            }
+            ByteBuffer view = archive.duplicate();
+            view.position(data);
+            byte[] result = buffer.reserve(size);
+            if (method == STORED) {
+                view.get(result, 0, size);
+                buffer.setLength(size);
+                return;
+            }
+            // the inflater may need one extra byte in nowrap mode.
+            byte[] compressed = buffer.input(compressedSize + 1);
+            view.get(compressed, 0, compressedSize);
+            compressed[compressedSize] = 0;
+            Inflater inflater = new Inflater(true);
+            try {
+                inflater.setInput(compressed, 0, compressedSize + 1);
+                int count = 0;
+                while (count < size && !inflater.finished()) {
+                    int inflated = inflater.inflate(result, count, size - count);
+                    if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        break;
+                    }
+                    count += inflated;
+                }
+                if (count != size) {
+                    throw new IOException("Invalid compressed data for entry " + name + ": " + filename);
+                }
+                buffer.setLength(size);
+            } catch (DataFormatException e) {
+                throw new IOException("Invalid compressed data for entry " + name + ": " + filename + " (" + e.getMessage() + ")");
+            } finally {
+                inflater.end();
+            }
+        }
+    }
+}
@@ -28,15 +28,26 @@ import com.googlecode.japi.checker.model.MethodData;
 public class MethodDumper extends MethodVisitor {
     private Logger logger = Logger.getLogger(MethodDumper.class.getName());
     private final MethodData method;
+    private final SymbolTable symbols;
+    private final AnnotationPolicy annotations;
     
     public MethodDumper(MethodData method) {
+        this(method, new SymbolTable(), AnnotationPolicy.ALL);
+    }
+
+    MethodDumper(MethodData method, SymbolTable symbols, AnnotationPolicy annotations) {
         super(Opcodes.ASM4);
         this.method = method;
+        this.symbols = symbols;
+        this.annotations = annotations;
     }
     
     @Override
     public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
-        return new AnnotationDumper(method, desc, visible);
+        if (!annotations.isCaptured(desc)) {
+            return null;
+        }
+        return new AnnotationDumper(method, symbols.get(desc), visible);
     }
 
     @Override
@@ -0,0 +1,260 @@
+/*
+ * Copyright 2012 William Bernardet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.japi.checker;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.googlecode.japi.checker.model.ClassData;
+
+/**
+ * On-disk cache of the parsed model of archives. Entries are keyed by the SHA-256 of the
+ * archive content, the parse mode and the annotations captured, so a released artifact is only parsed once per machine.
+ * 
+ * Entries are written to a temporary file and renamed once complete, so concurrent builds
+ * sharing the directory never see a partial entry. The least recently used entries are
+ * evicted once the cache grows over its maximum size.
+ */
+class ModelCache {
+    private static final String SUFFIX = ".model";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final int MAGIC = 0x4a415049; // JAPI
+    private static final int FORMAT_VERSION = 1;
+    // temporary files older than this are leftovers of a crashed build.
+    private static final long STALE_TEMP_AGE = 24L * 60 * 60 * 1000;
+    private Logger logger = Logger.getLogger(ModelCache.class.getName());
+    private final File directory;
+    private final long maxSize;
+    private final ClassDataCodec codec = new ClassDataCodec();
+
+    /**
+     * @param directory the directory holding the cache entries.
+     * @param maxSize the maximum size of the cache in bytes.
+     */
+    public ModelCache(File directory, long maxSize) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @return the directory holding the cache entries.
+     */
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @return the maximum size of the cache in bytes.
+     */
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Compute the key of an archive.
+     * @param archive the archive.
+     * @param mode the parse mode used to read it.
+     * @param annotations the annotations captured while reading it.
+     * @return the key identifying the entry.
+     * @throws IOException is thrown in case of reading error.
+     */
+    public String getKey(File archive, ParseMode mode, AnnotationPolicy annotations) throws IOException {
+        MessageDigest digest = newDigest();
+        InputStream is = new FileInputStream(archive);
+        try {
+            byte[] buffer = new byte[64 * 1024];
+            int count = 0;
+            while ((count = is.read(buffer)) != -1) {
+                digest.update(buffer, 0, count);
+            }
+        } finally {
+            is.close();
+        }
+        StringBuilder key = new StringBuilder();
+        appendHex(key, digest.digest(), 32);
+        key.append('-').append(mode.name().toLowerCase());
+        // the entries capturing all the annotations keep the keys they had before the policy existed.
+        if (annotations.getDescriptors() != null) {
+            digest = newDigest();
+            for (String desc : annotations.getDescriptors()) {
+                digest.update(desc.getBytes("UTF-8"));
+                digest.update((byte) 0);
+            }
+            appendHex(key.append("-a"), digest.digest(), 8);
+        }
+        return key.toString();
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void appendHex(StringBuilder key, byte[] bytes, int length) {
+        for (int i = 0; i < length; i++) {
+            byte b = bytes[i];
+            key.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+    }
+
+    /**
+     * Restore the classes of an entry into the reader.
+     * @param key the key of the entry.
+     * @param reader the reader to populate.
+     * @param loader the loader the model gets associated with.
+     * @return false if the entry is missing or unusable, nothing has been restored then.
+     */
+    public boolean load(String key, AbstractClassReader reader, ClassDataLoader loader) {
+        File entry = new File(directory, key + SUFFIX);
+        if (!entry.isFile()) {
+            return false;
+        }
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(entry)));
+            try {
+                if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                    throw new IOException("Invalid cache entry header");
+                }
+                int count = in.readInt();
+                String[] names = new String[count];
+                ClassData[] classes = new ClassData[count];
+                for (int i = 0; i < count; i++) {
+                    names[i] = codec.readString(in);
+                    classes[i] = codec.read(in, loader, reader.getSymbolTable(), reader.getAnnotationPolicy());
+                }
+                for (int i = 0; i < count; i++) {
+                    reader.restore(names[i], classes[i]);
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Discarding the invalid cache entry " + entry + ": " + e.getMessage(), e);
+            entry.delete();
+            return false;
+        }
+        // used as access time for the eviction.
+        entry.setLastModified(System.currentTimeMillis());
+        return true;
+    }
+
+    /**
+     * Store the classes of a reader, failures are only logged as the cache is optional.
+     * @param key the key of the entry.
+     * @param reader the reader holding the classes.
+     */
+    public void store(String key, AbstractClassReader reader) {
+        File temp = null;
+        try {
+            if (!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory()) {
+                throw new IOException("Could not create the directory " + directory);
+            }
+            temp = File.createTempFile(key + "-", TEMP_SUFFIX, directory);
+            Map<String, ClassData> classes = reader.getClassFiles();
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+            try {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeInt(classes.size());
+                for (Entry<String, ClassData> entry : classes.entrySet()) {
+                    codec.writeString(out, entry.getKey());
+                    codec.write(out, entry.getValue());
+                }
+            } finally {
+                out.close();
+            }
+            // another build might have stored the same entry meanwhile, both are equivalent.
+            File entry = new File(directory, key + SUFFIX);
+            if (!temp.renameTo(entry)) {
+                temp.delete();
+            }
+            temp = null;
+            evict(entry);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not store the cache entry " + key + ": " + e.getMessage(), e);
+        } finally {
+            if (temp != null) {
+                temp.delete();
+            }
+        }
+    }
+
+    /**
+     * Delete the least recently used entries until the cache fits in its maximum size.
+     * @param keep an entry which must not be evicted, e.g. the one just stored.
+     */
+    void evict(File keep) {
+        final long now = System.currentTimeMillis();
+        File[] entries = directory.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                if (file.getName().endsWith(TEMP_SUFFIX) && now - file.lastModified() > STALE_TEMP_AGE) {
+                    file.delete();
+                }
+                return file.getName().endsWith(SUFFIX) && file.isFile();
+            }
+        });
+        if (entries == null) {
+            return;
+        }
+        final long[] lastModified = new long[entries.length];
+        long size = 0;
+        for (int i = 0; i < entries.length; i++) {
+            size += entries[i].length();
+        }
+        if (size <= maxSize) {
+            return;
+        }
+        // snapshot the times, they might be updated concurrently while sorting.
+        Integer[] order = new Integer[entries.length];
+        for (int i = 0; i < entries.length; i++) {
+            lastModified[i] = entries[i].lastModified();
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return lastModified[a] < lastModified[b] ? -1 : (lastModified[a] == lastModified[b] ? 0 : 1);
+            }
+        });
+        for (int i = 0; i < order.length && size > maxSize; i++) {
+            File entry = entries[order[i]];
+            long length = entry.length();
+            if (!entry.equals(keep) && entry.delete()) {
+                size -= length;
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2012 William Bernardet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.japi.checker;
+
+import org.objectweb.asm.ClassReader;
+
+/**
+ * Defines how much of a class file is parsed when building the model.
+ * Method bodies are only needed for the line numbers displayed in the reports,
+ * so they can be skipped and the line numbers recovered on demand.
+ */
+public enum ParseMode {
+    /**
+     * Parse the whole class file, including the method bodies.
+     */
+    FULL(0),
+    /**
+     * Skip the method bodies, the line numbers are recovered by parsing the
+     * class file again when they are requested.
+     */
+    SIGNATURES(ClassReader.SKIP_CODE | ClassReader.SKIP_FRAMES),
+    /**
+     * Skip the method bodies and the debug information such as the source file,
+     * this is enough for dependencies which are only used to resolve the class hierarchy.
+     */
+    SIGNATURES_WITHOUT_DEBUG(ClassReader.SKIP_CODE | ClassReader.SKIP_FRAMES | ClassReader.SKIP_DEBUG);
+
+    private final int flags;
+
+    private ParseMode(int flags) {
+        this.flags = flags;
+    }
+
+    /**
+     * @return the flags to pass to {@link ClassReader#accept(org.objectweb.asm.ClassVisitor, int)}.
+     */
+    public int getFlags() {
+        return flags;
+    }
+
+    /**
+     * @return true if the method bodies, and so the line numbers, are not parsed.
+     */
+    public boolean isSkippingCode() {
+        return (flags & ClassReader.SKIP_CODE) != 0;
+    }
+}
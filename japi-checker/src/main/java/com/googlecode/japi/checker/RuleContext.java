@@ -0,0 +1,120 @@
+/*
+ * Copyright 2012 William Bernardet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.japi.checker;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The state of a check shared by the {@link ContextualRule}s: the options of the check, and the
+ * results the rules accumulate. A context is only used by one thread at a time, the checker gives
+ * each of its threads its own context and merges them afterwards.
+ */
+public final class RuleContext {
+    private final boolean newMinorVersion;
+    private Map<Class<?>, Accumulator<?>> accumulators;
+
+    /**
+     * @param newMinorVersion true if the new artifact is a new minor version of the reference.
+     */
+    public RuleContext(boolean newMinorVersion) {
+        this.newMinorVersion = newMinorVersion;
+    }
+
+    /**
+     * @return a new empty context with the same options, e.g. for another thread.
+     */
+    public RuleContext fork() {
+        return new RuleContext(newMinorVersion);
+    }
+
+    /**
+     * @return true if the new artifact is a new minor version of the reference.
+     */
+    public boolean isNewMinorVersion() {
+        return newMinorVersion;
+    }
+
+    /**
+     * Get the accumulator of the given type, it is created on first use through its public
+     * constructor without arguments.
+     * @param type the type of the accumulator.
+     * @return the accumulator of this context.
+     */
+    public <A extends Accumulator<A>> A getAccumulator(Class<A> type) {
+        A accumulator = findAccumulator(type);
+        if (accumulator == null) {
+            try {
+                accumulator = type.getDeclaredConstructor().newInstance();
+            } catch (InvocationTargetException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new IllegalStateException("Cannot create the accumulator " + type.getName(), cause);
+            } catch (NoSuchMethodException e) {
+                throw new IllegalArgumentException("Cannot create the accumulator " + type.getName(), e);
+            } catch (InstantiationException e) {
+                throw new IllegalArgumentException("Cannot create the accumulator " + type.getName(), e);
+            } catch (IllegalAccessException e) {
+                throw new IllegalArgumentException("Cannot create the accumulator " + type.getName(), e);
+            }
+            if (accumulators == null) {
+                accumulators = new LinkedHashMap<Class<?>, Accumulator<?>>();
+            }
+            accumulators.put(type, accumulator);
+        }
+        return accumulator;
+    }
+
+    /**
+     * @param type the type of the accumulator.
+     * @return the accumulator of the given type, or null if it has never been used.
+     */
+    public <A extends Accumulator<A>> A findAccumulator(Class<A> type) {
+        return accumulators == null ? null : type.cast(accumulators.get(type));
+    }
+
+    /**
+     * Merge the accumulators of another context of the same check into this one.
+     * @param other the other context, it is not used afterwards.
+     */
+    public void merge(RuleContext other) {
+        if (other.accumulators == null) {
+            return;
+        }
+        for (Accumulator<?> accumulator : other.accumulators.values()) {
+            merge(accumulator);
+        }
+    }
+
+    private <A extends Accumulator<A>> void merge(Accumulator<?> other) {
+        @SuppressWarnings("unchecked")
+        Class<A> type = (Class<A>) other.getClass();
+        A accumulator = findAccumulator(type);
+        if (accumulator == null) {
+            if (accumulators == null) {
+                accumulators = new LinkedHashMap<Class<?>, Accumulator<?>>();
+            }
+            accumulators.put(type, other);
+        } else {
+            accumulator.merge(type.cast(other));
+        }
+    }
+}
@@ -15,8 +15,6 @@
  */
 package com.googlecode.japi.checker;
 
-import com.googlecode.japi.checker.model.ClassData;
-
 /**
  * Some common functions which ease the writing of rules. 
  *
@@ -43,16 +41,7 @@ public final class RuleHelpers {
      *           inheritance tree (or equal to it), false otherwise.
      */
     public static boolean isClassPartOfClassTree(ClassDataLoader loader, String classname, String topLevelClassname) {
-        if (topLevelClassname != null) {
-            if (classname.equals(topLevelClassname)) {
-                return true;
-            }
-            ClassData superClass = loader.fromName(topLevelClassname);
-            if (superClass != null) {
-                return isClassPartOfClassTree(loader, classname, superClass.getSuperName());
-            }
-        }
-        return false;
+        return loader.getTypeHierarchy().isSubclass(topLevelClassname, classname);
     }
 
 }
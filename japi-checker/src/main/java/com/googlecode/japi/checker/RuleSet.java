@@ -0,0 +1,157 @@
+/*
+ * Copyright 2012 William Bernardet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.japi.checker;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.googlecode.japi.checker.model.JavaItem;
+
+/**
+ * A list of rules grouped by the kinds of items they check, so each pair of items is only
+ * passed to the rules concerned. {@link TypedRule} instances are grouped by their declared
+ * kinds, any other rule gets every kind. The order of the rules is kept within each kind.
+ * {@link ContextualRule} instances get the context of the check. The annotations needed are
+ * those declared by the {@link AnnotationAwareRule} instances, any other rule needs all of them.
+ */
+public final class RuleSet {
+    private static final Rule[] NO_RULES = new Rule[0];
+    private final List<Rule> rules;
+    private final Map<ItemKind, Rule[]> rulesByKind = new EnumMap<ItemKind, Rule[]>(ItemKind.class);
+    private final Rule[] untypedRules;
+    private final ContextualRule[] contextualRules;
+    private final Set<String> annotationDescriptors;
+
+    /**
+     * @param rules the rules, the list is copied.
+     */
+    public RuleSet(List<? extends Rule> rules) {
+        this.rules = Collections.unmodifiableList(new ArrayList<Rule>(rules));
+        for (ItemKind kind : ItemKind.values()) {
+            List<Rule> selected = new ArrayList<Rule>();
+            for (Rule rule : rules) {
+                if (!(rule instanceof TypedRule) || ((TypedRule) rule).getItemKinds().contains(kind)) {
+                    selected.add(rule);
+                }
+            }
+            rulesByKind.put(kind, selected.toArray(NO_RULES));
+        }
+        List<Rule> untyped = new ArrayList<Rule>();
+        for (Rule rule : rules) {
+            if (!(rule instanceof TypedRule)) {
+                untyped.add(rule);
+            }
+        }
+        this.untypedRules = untyped.toArray(NO_RULES);
+        List<ContextualRule> contextual = new ArrayList<ContextualRule>();
+        for (Rule rule : rules) {
+            if (rule instanceof ContextualRule) {
+                contextual.add((ContextualRule) rule);
+            }
+        }
+        this.contextualRules = contextual.toArray(new ContextualRule[contextual.size()]);
+        Set<String> descriptors = new HashSet<String>();
+        for (Rule rule : rules) {
+            Set<String> declared = rule instanceof AnnotationAwareRule
+                    ? ((AnnotationAwareRule) rule).getAnnotationDescriptors() : null;
+            if (declared == null) {
+                descriptors = null;
+                break;
+            }
+            descriptors.addAll(declared);
+        }
+        this.annotationDescriptors = descriptors == null ? null : Collections.unmodifiableSet(descriptors);
+    }
+
+    /**
+     * @return all the rules, in their original order.
+     */
+    public List<Rule> getRules() {
+        return rules;
+    }
+
+    /**
+     * @param kind the kind of items.
+     * @return the rules checking that kind of items, in their original order.
+     */
+    public List<Rule> getRules(ItemKind kind) {
+        return Collections.unmodifiableList(Arrays.asList(rulesByKind.get(kind)));
+    }
+
+    /**
+     * @param kind the kind of items.
+     * @return true if no rule checks that kind of items.
+     */
+    public boolean isEmpty(ItemKind kind) {
+        return rulesByKind.get(kind).length == 0;
+    }
+
+    /**
+     * @return the descriptors of the annotations read by the rules, or null if they need all of them.
+     */
+    public Set<String> getAnnotationDescriptors() {
+        return annotationDescriptors;
+    }
+
+    /**
+     * Start a check, see {@link ContextualRule#begin(RuleContext)}.
+     * @param context the context of the check.
+     */
+    public void begin(RuleContext context) {
+        for (ContextualRule rule : contextualRules) {
+            rule.begin(context);
+        }
+    }
+
+    /**
+     * Same as {@link #checkBackwardCompatibility(Reporter, RuleContext, JavaItem, JavaItem)}, the
+     * results accumulated by the rules are dropped.
+     * @param reporter the reporter.
+     * @param reference the reference item.
+     * @param newItem the new item.
+     */
+    public void checkBackwardCompatibility(Reporter reporter, JavaItem reference, JavaItem newItem) {
+        RuleContext context = new RuleContext(false);
+        begin(context);
+        checkBackwardCompatibility(reporter, context, reference, newItem);
+    }
+
+    /**
+     * Pass a pair of items to the rules checking their kind. Items of other kinds are only
+     * passed to the rules which do not declare their kinds.
+     * @param reporter the reporter.
+     * @param context the context of the current thread.
+     * @param reference the reference item.
+     * @param newItem the new item.
+     */
+    public void checkBackwardCompatibility(Reporter reporter, RuleContext context, JavaItem reference,
+            JavaItem newItem) {
+        ItemKind kind = ItemKind.of(reference);
+        for (Rule rule : kind == null ? untypedRules : rulesByKind.get(kind)) {
+            if (rule instanceof ContextualRule) {
+                ((ContextualRule) rule).checkBackwardCompatibility(reporter, context, reference, newItem);
+            } else {
+                rule.checkBackwardCompatibility(reporter, reference, newItem);
+            }
+        }
+    }
+}
@@ -0,0 +1,418 @@
+/*
+ * Copyright 2012 William Bernardet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.japi.checker;
+
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.googlecode.japi.checker.AbstractClassReader.ClassListener;
+import com.googlecode.japi.checker.DefaultClassDataLoader.ClassStream;
+import com.googlecode.japi.checker.Reporter.Report;
+import com.googlecode.japi.checker.model.ClassData;
+import com.googlecode.japi.checker.model.MethodData;
+import com.googlecode.japi.checker.utils.AntPatternMatcher;
+
+
+/**
+ * Checks the reference classes while the new artifact is being read. The reference side and the
+ * dependencies are read beforehand, the classes of the new artifact are then passed by the reading
+ * thread through a bounded queue, and each reference class is checked as soon as its counterpart and
+ * the types the rules look up are available: the super types of the counterpart and the exceptions
+ * of its methods, transitively.
+ * The classes the artifact defines are predicted from the paths of its class files; once a class file
+ * does not define the class its path tells, the remaining checks wait for the end of the read.
+ * The reports are passed to the reporter in the order of the reference classes, so they are the same
+ * as the ones of a check of the fully read artifact.
+ */
+abstract class StreamingCheck
+{
+    private static final int QUEUE_SIZE = 256;
+    // marks the end of the read.
+    private static final Arrival END = new Arrival(null, null);
+
+    private final Reporter reporter;
+    private final ClassStream stream;
+    private final List<ClassData> classes;
+    private final List<AntPatternMatcher> includes;
+    private final List<AntPatternMatcher> excludes;
+    // the reports of the checked classes which are not passed to the reporter yet.
+    private final List<List<Report>> reports;
+    private final BitSet checked = new BitSet();
+    private final Set<String> expected = new HashSet<String>();
+    private final Set<String> received = new HashSet<String>();
+    private final Set<String> parsed = new HashSet<String>();
+    // the types whose super types are all available.
+    private final Set<String> resolved = new HashSet<String>();
+    private final Map<String, ClassData> newClasses = new HashMap<String, ClassData>();
+    // the reference classes waiting for a class of the artifact.
+    private final Map<String, List<Integer>> waiting = new HashMap<String, List<Integer>>();
+    private boolean predictable = true;
+    private int next;
+
+
+    /**
+     * @param reporter the reporter receiving the reports, from the calling thread only.
+     * @param stream the new artifact.
+     * @param classes the reference classes, in the order their reports are expected.
+     * @param includes the patterns of the class files of the artifact to check against.
+     * @param excludes the patterns of the class files of the artifact not to check against.
+     */
+    StreamingCheck(Reporter reporter, ClassStream stream, List<ClassData> classes,
+                   List<AntPatternMatcher> includes, List<AntPatternMatcher> excludes)
+    {
+        this.reporter = reporter;
+        this.stream = stream;
+        this.classes = classes;
+        this.includes = includes;
+        this.excludes = excludes;
+        this.reports = new ArrayList<List<Report>>(classes.size());
+        for (int i = 0; i < classes.size(); i++)
+        {
+            reports.add(null);
+        }
+    }
+
+
+    /**
+     * Check a reference class against its counterpart.
+     *
+     * @param reporter the reporter buffering the reports of the class.
+     * @param clazz the reference class.
+     * @param newClazz the class of the new artifact, or null if there is none.
+     */
+    protected abstract void check(Reporter reporter, ClassData clazz, ClassData newClazz);
+
+
+    /**
+     * Called before passing the reports of each class to the reporter.
+     *
+     * @return true to stop the check.
+     */
+    protected abstract boolean shouldStop();
+
+
+    /**
+     * Read the artifact and check the classes.
+     *
+     * @return false if the check has been stopped before checking all the classes.
+     * @throws IOException thrown in case of error while reading the artifact.
+     */
+    boolean run()
+        throws IOException
+    {
+        expected.addAll(stream.list());
+        for (int i = 0; i < classes.size(); i++)
+        {
+            evaluate(i);
+        }
+        if (!flush())
+        {
+            return false;
+        }
+        final BlockingQueue<Arrival> queue = new ArrayBlockingQueue<Arrival>(QUEUE_SIZE);
+        ExecutorService executor = Executors.newSingleThreadExecutor(new DaemonThreadFactory("japi-checker-stream"));
+        try
+        {
+            Future<Void> read = executor.submit(new Callable<Void>()
+            {
+                @Override
+                public Void call()
+                    throws IOException
+                {
+                    try
+                    {
+                        stream.read(new ClassListener()
+                        {
+                            @Override
+                            public void classRead(String name, ClassData clazz)
+                                throws InterruptedIOException
+                            {
+                                try
+                                {
+                                    queue.put(new Arrival(name, clazz));
+                                }
+                                catch (InterruptedException e)
+                                {
+                                    Thread.currentThread().interrupt();
+                                    throw new InterruptedIOException("Interrupted while reading " + name);
+                                }
+                            }
+                        });
+                    }
+                    finally
+                    {
+                        try
+                        {
+                            queue.put(END);
+                        }
+                        catch (InterruptedException e)
+                        {
+                            // nobody is waiting for it then.
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                    return null;
+                }
+            });
+            // the classes passed meanwhile are handled at once, the reading thread runs ahead.
+            List<Arrival> arrivals = new ArrayList<Arrival>();
+            boolean end = false;
+            while (!end)
+            {
+                arrivals.add(queue.take());
+                queue.drainTo(arrivals);
+                for (Arrival arrival : arrivals)
+                {
+                    end = arrival == END;
+                    if (!end)
+                    {
+                        arrive(arrival.name, arrival.clazz);
+                    }
+                }
+                arrivals.clear();
+                if (!flush())
+                {
+                    return false;
+                }
+            }
+            get(read);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while checking the classes.");
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        // the classes restored from the model cache have not been passed.
+        for (Map.Entry<String, ClassData> entry : stream.getClassFiles().entrySet())
+        {
+            if (!received.contains(entry.getKey()))
+            {
+                arrive(entry.getKey(), entry.getValue());
+            }
+        }
+        // everything is read, the classes still waiting can be checked.
+        newClasses.clear();
+        newClasses.putAll(stream.getClasses(includes, excludes));
+        for (int i = checked.nextClearBit(0); i < classes.size(); i = checked.nextClearBit(i + 1))
+        {
+            check(i, newClasses.get(classes.get(i).getName()));
+        }
+        return flush();
+    }
+
+
+    /**
+     * @return the classes of the new artifact, as returned by {@link ClassStream#getClasses(List, List)},
+     *         once the check has completed.
+     */
+    Map<String, ClassData> getNewClasses()
+    {
+        return newClasses;
+    }
+
+
+    private void arrive(String path, ClassData clazz)
+    {
+        received.add(path);
+        String name = clazz.getName();
+        if (!parsed.add(name) || !path.equals(name + ".class"))
+        {
+            predictable = false;
+        }
+        stream.publish(clazz);
+        if (stream.isIncluded(path, includes, excludes))
+        {
+            newClasses.put(name, clazz);
+        }
+        List<Integer> waiters = waiting.remove(name);
+        if (waiters != null)
+        {
+            for (int index : waiters)
+            {
+                evaluate(index);
+            }
+        }
+    }
+
+
+    /**
+     * Check a reference class if everything it needs is available, or wait for the missing class.
+     */
+    private void evaluate(int index)
+    {
+        if (!predictable)
+        {
+            return;
+        }
+        ClassData clazz = classes.get(index);
+        String path = clazz.getName() + ".class";
+        ClassData newClazz = null;
+        if (expected.contains(path) && stream.isIncluded(path, includes, excludes))
+        {
+            newClazz = newClasses.get(clazz.getName());
+            String missing = newClazz == null ? clazz.getName() : findMissing(newClazz);
+            if (missing != null)
+            {
+                List<Integer> waiters = waiting.get(missing);
+                if (waiters == null)
+                {
+                    waiters = new ArrayList<Integer>();
+                    waiting.put(missing, waiters);
+                }
+                waiters.add(index);
+                return;
+            }
+        }
+        check(index, newClazz);
+    }
+
+
+    /**
+     * @return the first type looked up by the checks of the class which is still to be read, or null.
+     */
+    private String findMissing(ClassData clazz)
+    {
+        List<String> names = new ArrayList<String>();
+        Set<String> visited = new HashSet<String>();
+        addSuperTypes(names, clazz);
+        for (MethodData method : clazz.getMethods())
+        {
+            names.addAll(method.getExceptions());
+        }
+        while (!names.isEmpty())
+        {
+            String name = names.remove(names.size() - 1);
+            if (name == null || resolved.contains(name) || !visited.add(name))
+            {
+                continue;
+            }
+            if (!parsed.contains(name) && expected.contains(name + ".class"))
+            {
+                return name;
+            }
+            ClassData type = clazz.getClassDataLoader().fromName(name);
+            if (type != null)
+            {
+                addSuperTypes(names, type);
+            }
+        }
+        resolved.addAll(visited);
+        return null;
+    }
+
+
+    private static void addSuperTypes(List<String> names, ClassData clazz)
+    {
+        names.add(clazz.getSuperName());
+        names.addAll(clazz.getInterfaces());
+    }
+
+
+    private void check(int index, ClassData newClazz)
+    {
+        BCChecker.ReportBuffer buffer = new BCChecker.ReportBuffer();
+        check(buffer, classes.get(index), newClazz);
+        reports.set(index, buffer.reports);
+        checked.set(index);
+    }
+
+
+    /**
+     * Pass the reports of the classes checked so far, in order.
+     *
+     * @return false if the check has to stop.
+     */
+    private boolean flush()
+    {
+        while (next < classes.size() && checked.get(next))
+        {
+            if (shouldStop())
+            {
+                return false;
+            }
+            for (Report report : reports.get(next))
+            {
+                reporter.report(report);
+            }
+            reports.set(next, null);
+            next++;
+        }
+        return true;
+    }
+
+
+    private static void get(Future<Void> read)
+        throws IOException, InterruptedException
+    {
+        try
+        {
+            read.get();
+        }
+        catch (ExecutionException e)
+        {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+            {
+                throw (IOException)cause;
+            }
+            else if (cause instanceof RuntimeException)
+            {
+                throw (RuntimeException)cause;
+            }
+            else
+            {
+                throw (Error)cause;
+            }
+        }
+    }
+
+
+    /**
+     * A class passed by the reading thread.
+     */
+    private static class Arrival
+    {
+        private final String name;
+        private final ClassData clazz;
+
+
+        Arrival(String name, ClassData clazz)
+        {
+            this.name = name;
+            this.clazz = clazz;
+        }
+    }
+}
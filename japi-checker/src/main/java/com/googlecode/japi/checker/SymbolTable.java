@@ -0,0 +1,81 @@
+/*
+ * Copyright 2012 William Bernardet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.japi.checker;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Canonical instances of the names, descriptors and signatures read from the class files,
+ * so each distinct value is only held once by the model however many classes use it.
+ * The loaders of both sides of a check share a table, equal names of the reference and of
+ * the new artifact are then the same instance and compare by identity.
+ * The table may be used concurrently by the threads parsing the class files.
+ */
+final class SymbolTable {
+    /**
+     * A table keeping the values as they are, for models which are not kept for the whole check.
+     */
+    static final SymbolTable NONE = new SymbolTable(null);
+    private final ConcurrentMap<String, String> symbols;
+
+    SymbolTable() {
+        this(new ConcurrentHashMap<String, String>(1024));
+    }
+
+    private SymbolTable(ConcurrentMap<String, String> symbols) {
+        this.symbols = symbols;
+    }
+
+    /**
+     * @param value a name, a descriptor or a signature, may be null.
+     * @return the canonical instance equal to value.
+     */
+    public String get(String value) {
+        if (value == null || symbols == null) {
+            return value;
+        }
+        String symbol = symbols.get(value);
+        if (symbol == null) {
+            symbol = symbols.putIfAbsent(value, value);
+            if (symbol == null) {
+                symbol = value;
+            }
+        }
+        return symbol;
+    }
+
+    /**
+     * Replace the values of an array by their canonical instances.
+     * @param values the values, may be null.
+     * @return values.
+     */
+    public String[] get(String[] values) {
+        if (values != null && symbols != null) {
+            for (int i = 0; i < values.length; i++) {
+                values[i] = get(values[i]);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * @return the number of distinct values held.
+     */
+    public int size() {
+        return symbols == null ? 0 : symbols.size();
+    }
+}
@@ -0,0 +1,291 @@
+/*
+ * Copyright 2012 William Bernardet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.japi.checker;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.googlecode.japi.checker.model.ClassData;
+import com.googlecode.japi.checker.model.MemberTable;
+
+/**
+ * Answers subtyping questions on the classes of a {@link ClassDataLoader}. Each type
+ * gets an int id the first time it is seen, and the ids of all its supertypes are
+ * computed once, so that each query afterwards is a bit lookup.
+ * The members reachable on each type are resolved once as well, see {@link #getMembers(String)},
+ * unless the classes of the loader may be dropped: the tables would then keep them.
+ * Types which cannot be loaded are known by name only, their own supertypes are unknown.
+ * 
+ * Queries can be made concurrently.
+ */
+public final class TypeHierarchy {
+    private final ClassDataLoader loader;
+    private final boolean memoizeMembers;
+    private final ConcurrentMap<String, Type> types = new ConcurrentHashMap<String, Type>();
+    private final AtomicInteger ids = new AtomicInteger();
+
+    /**
+     * @param loader the loader used to get the classes.
+     */
+    public TypeHierarchy(ClassDataLoader loader) {
+        this(loader, true);
+    }
+
+    /**
+     * @param loader the loader used to get the classes.
+     * @param memoizeMembers false to build the member tables each time they are requested, so they
+     *            do not keep the classes they refer to, e.g. when the loader drops classes.
+     */
+    TypeHierarchy(ClassDataLoader loader, boolean memoizeMembers) {
+        this.loader = loader;
+        this.memoizeMembers = memoizeMembers;
+    }
+
+    /**
+     * Check if a class is the given class or inherits from it, only following the super classes.
+     * @param className the name of the class, e.g. java/util/ArrayList.
+     * @param superClassName the name of the super class to look for.
+     * @return true if superClassName is className or one of its super classes.
+     */
+    public boolean isSubclass(String className, String superClassName) {
+        if (className == null || superClassName == null) {
+            return false;
+        }
+        if (className.equals(superClassName)) {
+            return true;
+        }
+        BitSet superClasses = getType(className).getSuperClasses();
+        Type superClass = types.get(superClassName);
+        return superClass != null && superClasses.get(superClass.id);
+    }
+
+    /**
+     * Check if a type is the given type or one of its subtypes, following the super classes
+     * and the implemented or extended interfaces.
+     * @param typeName the name of the type, e.g. java/util/ArrayList.
+     * @param superTypeName the name of the super type to look for, e.g. java/util/Collection.
+     * @return true if superTypeName is typeName or one of its super types.
+     */
+    public boolean isSubtype(String typeName, String superTypeName) {
+        if (typeName == null || superTypeName == null) {
+            return false;
+        }
+        if (typeName.equals(superTypeName)) {
+            return true;
+        }
+        BitSet superTypes = getType(typeName).getSuperTypes();
+        Type superType = types.get(superTypeName);
+        return superType != null && superTypes.get(superType.id);
+    }
+
+    /**
+     * Get the members which can be reached on a class, including the inherited ones.
+     * The table is built the first time it is requested, or each time when not memoized.
+     * @param className the name of the class.
+     * @return the members of the class, or null if the class cannot be loaded.
+     */
+    public MemberTable getMembers(String className) {
+        if (className == null) {
+            return null;
+        }
+        Type type = getType(className);
+        return type.membersResolved ? type.members : type.getMembers(new HashSet<String>());
+    }
+
+    /**
+     * Compare the API of a type and of all its supertypes to the ones of the same types in
+     * another hierarchy, see {@link ClassData#hasSameApi(com.googlecode.japi.checker.model.JavaItem)}.
+     * The result is kept, so each type is only compared once to a given hierarchy.
+     * Types which cannot be loaded on both sides are compared by name only.
+     * @param typeName the name of the type.
+     * @param other the hierarchy of the other version.
+     * @return true if the type and its supertypes have the same API in both hierarchies.
+     */
+    public boolean hasSameApi(String typeName, TypeHierarchy other) {
+        return getType(typeName).hasSameApi(other, new HashSet<String>());
+    }
+
+    private Type getType(String name) {
+        Type type = types.get(name);
+        if (type == null) {
+            Type newType = new Type(ids.getAndIncrement(), name);
+            type = types.putIfAbsent(name, newType);
+            if (type == null) {
+                type = newType;
+            }
+        }
+        return type;
+    }
+
+    /**
+     * A type and the ids of its supertypes, including itself.
+     */
+    private final class Type {
+        private final int id;
+        private final String name;
+        // both published together once computed, and never modified afterwards.
+        private volatile BitSet superClasses;
+        private BitSet superTypes;
+        private volatile boolean membersResolved;
+        private volatile Comparison comparison;
+        private MemberTable members;
+
+        Type(int id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+
+        BitSet getSuperClasses() {
+            BitSet result = superClasses;
+            if (result == null) {
+                compute(new HashSet<String>());
+                result = superClasses;
+            }
+            return result;
+        }
+
+        BitSet getSuperTypes() {
+            if (superClasses == null) {
+                compute(new HashSet<String>());
+            }
+            return superTypes;
+        }
+
+        /**
+         * Compute the supertypes of this type, the computing set protects against
+         * invalid cyclic hierarchies.
+         */
+        private void compute(Set<String> computing) {
+            if (superClasses != null || !computing.add(name)) {
+                return;
+            }
+            BitSet classes = new BitSet();
+            BitSet all = new BitSet();
+            classes.set(id);
+            all.set(id);
+            ClassData clazz = loader.fromName(name);
+            if (clazz != null) {
+                if (clazz.getSuperName() != null) {
+                    Type superClass = getType(clazz.getSuperName());
+                    superClass.compute(computing);
+                    classes.or(superClass.classes());
+                    all.or(superClass.all());
+                }
+                for (String iface : clazz.getInterfaces()) {
+                    Type superType = getType(iface);
+                    superType.compute(computing);
+                    all.or(superType.all());
+                }
+            }
+            computing.remove(name);
+            superTypes = all;
+            superClasses = classes;
+        }
+
+        /**
+         * Get the member table of this type, the computing set protects against
+         * invalid cyclic hierarchies.
+         */
+        private MemberTable getMembers(Set<String> computing) {
+            if ((memoizeMembers && membersResolved) || !computing.add(name)) {
+                return members;
+            }
+            MemberTable table = null;
+            ClassData clazz = loader.fromName(name);
+            if (clazz != null) {
+                MemberTable superClass = null;
+                if (clazz.getSuperName() != null) {
+                    superClass = getType(clazz.getSuperName()).getMembers(computing);
+                }
+                List<MemberTable> interfaces = new ArrayList<MemberTable>();
+                for (String iface : clazz.getInterfaces()) {
+                    MemberTable ifaceTable = getType(iface).getMembers(computing);
+                    if (ifaceTable != null) {
+                        interfaces.add(ifaceTable);
+                    }
+                }
+                table = new MemberTable(clazz, superClass, interfaces);
+            }
+            computing.remove(name);
+            if (memoizeMembers) {
+                members = table;
+                membersResolved = true;
+            }
+            return table;
+        }
+
+        private boolean hasSameApi(TypeHierarchy other, Set<String> computing) {
+            Comparison result = comparison;
+            if (result != null && result.other == other) {
+                return result.same;
+            }
+            if (!computing.add(name)) {
+                // part of a cycle, only the name is known.
+                return true;
+            }
+            ClassData clazz = loader.fromName(name);
+            ClassData otherClazz = other.loader.fromName(name);
+            boolean same;
+            if (clazz == null || otherClazz == null) {
+                same = clazz == otherClazz;
+            } else {
+                same = clazz.hasSameApi(otherClazz);
+                if (same && clazz.getSuperName() != null) {
+                    same = getType(clazz.getSuperName()).hasSameApi(other, computing);
+                }
+                for (int i = 0; same && i < clazz.getInterfaces().size(); i++) {
+                    same = getType(clazz.getInterfaces().get(i)).hasSameApi(other, computing);
+                }
+            }
+            computing.remove(name);
+            comparison = new Comparison(other, same);
+            return same;
+        }
+
+        private BitSet classes() {
+            BitSet result = superClasses;
+            if (result == null) {
+                // part of a cycle, only the type itself is known.
+                result = new BitSet();
+                result.set(id);
+            }
+            return result;
+        }
+
+        private BitSet all() {
+            return superClasses == null ? classes() : superTypes;
+        }
+    }
+
+    /**
+     * The result of the comparison of a type to the same type in another hierarchy.
+     */
+    private static final class Comparison {
+        private final TypeHierarchy other;
+        private final boolean same;
+
+        Comparison(TypeHierarchy other, boolean same) {
+            this.other = other;
+            this.same = same;
+        }
+    }
+}
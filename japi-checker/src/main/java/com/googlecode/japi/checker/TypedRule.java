@@ -0,0 +1,31 @@
+/*
+ * Copyright 2012 William Bernardet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.japi.checker;
+
+import java.util.Set;
+
+/**
+ * A rule declaring the kinds of items it checks, so it is only called for pairs of those
+ * and does not have to filter them itself. Rules only implementing {@link Rule} are
+ * called for every kind.
+ */
+public interface TypedRule extends Rule {
+
+    /**
+     * @return the kinds of items the rule checks, it must not change once the rule is in use.
+     */
+    Set<ItemKind> getItemKinds();
+}
@@ -15,7 +15,9 @@
  */
 package com.googlecode.japi.checker;
 
+import java.io.DataInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.zip.ZipFile;
 
@@ -61,4 +63,25 @@ public final class Utils {
         }
     }
 
+    /**
+     * Check if file denote an API snapshot written by the {@link ApiSnapshotWriter}.
+     * @param file
+     * @return
+     */
+    public static boolean isApiSnapshot(File file) {
+        if (!file.isFile()) {
+            return false;
+        }
+        try {
+            DataInputStream is = new DataInputStream(new FileInputStream(file));
+            try {
+                return is.readInt() == ApiSnapshotWriter.MAGIC;
+            } finally {
+                is.close();
+            }
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
 }
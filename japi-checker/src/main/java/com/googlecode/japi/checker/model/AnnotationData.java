@@ -15,15 +15,27 @@
  */
 package com.googlecode.japi.checker.model;
 
+import java.util.AbstractCollection;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.AbstractSet;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Hashtable;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
+/**
+ * An annotation and its values. The values are held in two arrays, annotations only have a few of them,
+ * they are only added while the annotation is read and cannot be changed through the views of the map.
+ */
 public class AnnotationData implements Map<String, Object> {
+    private static final String[] NO_NAMES = new String[0];
+    private static final Object[] NO_VALUES = new Object[0];
     private String desc;
     private boolean visible;
-    private Map<String, Object> parameters = new Hashtable<String, Object>();
+    private String[] names = NO_NAMES;
+    private Object[] values = NO_VALUES;
 
     public AnnotationData(String desc, boolean visible) {
         this.desc = desc;
@@ -44,9 +56,31 @@ public class AnnotationData implements Map<String, Object> {
         return visible;
     }
 
+    /**
+     * @param annotation the annotation to compare to.
+     * @return true if both annotations have the same type and values, in the same order.
+     */
+    boolean hasSameContent(AnnotationData annotation) {
+        return desc.equals(annotation.desc) && visible == annotation.visible
+                && Arrays.equals(names, annotation.names) && Arrays.deepEquals(values, annotation.values);
+    }
+
     @Override
     public Object put(String name, Object value) {
-        return parameters.put(name, value);
+        if (name == null || value == null) {
+            throw new NullPointerException();
+        }
+        int i = indexOf(name);
+        if (i >= 0) {
+            Object previous = values[i];
+            values[i] = value;
+            return previous;
+        }
+        names = Arrays.copyOf(names, names.length + 1);
+        values = Arrays.copyOf(values, values.length + 1);
+        names[names.length - 1] = name;
+        values[values.length - 1] = value;
+        return null;
     }
 
     @Override
@@ -56,32 +90,73 @@ public class AnnotationData implements Map<String, Object> {
 
     @Override
     public boolean containsKey(Object key) {
-        return this.parameters.containsKey(key);
+        return indexOf(key) >= 0;
     }
 
     @Override
     public boolean containsValue(Object value) {
-        return this.parameters.containsValue(value);
+        for (Object v : values) {
+            if (v.equals(value)) {
+                return true;
+            }
+        }
+        return false;
     }
 
     @Override
     public Set<java.util.Map.Entry<String, Object>> entrySet() {
-        return this.parameters.entrySet();
+        return new AbstractSet<Map.Entry<String, Object>>() {
+            @Override
+            public Iterator<Map.Entry<String, Object>> iterator() {
+                return new ArrayIterator<Map.Entry<String, Object>>(names.length) {
+                    @Override
+                    Map.Entry<String, Object> get(int i) {
+                        return new SimpleImmutableEntry<String, Object>(names[i], values[i]);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return names.length;
+            }
+        };
     }
 
     @Override
     public Object get(Object key) {
-        return this.parameters.get(key);
+        int i = indexOf(key);
+        return i < 0 ? null : values[i];
     }
 
     @Override
     public boolean isEmpty() {
-        return this.parameters.isEmpty();
+        return names.length == 0;
     }
 
     @Override
     public Set<String> keySet() {
-        return this.parameters.keySet();
+        return new AbstractSet<String>() {
+            @Override
+            public Iterator<String> iterator() {
+                return new ArrayIterator<String>(names.length) {
+                    @Override
+                    String get(int i) {
+                        return names[i];
+                    }
+                };
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return containsKey(o);
+            }
+
+            @Override
+            public int size() {
+                return names.length;
+            }
+        };
     }
 
     @Override
@@ -96,12 +171,68 @@ public class AnnotationData implements Map<String, Object> {
 
     @Override
     public int size() {
-        return this.parameters.size();
+        return names.length;
     }
 
     @Override
     public Collection<Object> values() {
-        return this.parameters.values();
+        return new AbstractCollection<Object>() {
+            @Override
+            public Iterator<Object> iterator() {
+                return new ArrayIterator<Object>(values.length) {
+                    @Override
+                    Object get(int i) {
+                        return values[i];
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return values.length;
+            }
+        };
+    }
+
+    private int indexOf(Object key) {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Iterates over the first elements of the arrays, the views do not support removal.
+     */
+    private abstract static class ArrayIterator<T> implements Iterator<T> {
+        private final int size;
+        private int next;
+
+        ArrayIterator(int size) {
+            this.size = size;
+        }
+
+        abstract T get(int i);
+
+        @Override
+        public boolean hasNext() {
+            return next < size;
+        }
+
+        @Override
+        public T next() {
+            if (next >= size) {
+                throw new NoSuchElementException();
+            }
+            return get(next++);
+        }
+
+        @Override
+        public void remove() {
+            throw new java.lang.UnsupportedOperationException();
+        }
     }
 
 }
@@ -0,0 +1,360 @@
+/*
+ * Copyright 2012 William Bernardet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.japi.checker.model;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Computes the digest of the API of model items, see {@link JavaItem#getApiDigest()}.
+ * The content is written in a canonical order, so the digest does not depend on the
+ * order of the members, interfaces, exceptions or annotation values in the class file.
+ */
+final class ApiDigest {
+    private static final String ALGORITHM = "SHA-1";
+    // cloning is much cheaper than looking the algorithm up for each item.
+    private static final MessageDigest PROTOTYPE = createPrototype();
+    private static final Comparator<byte[]> BYTES_ORDER = new Comparator<byte[]>() {
+        @Override
+        public int compare(byte[] b1, byte[] b2) {
+            for (int i = 0; i < Math.min(b1.length, b2.length); i++) {
+                if (b1[i] != b2[i]) {
+                    return (b1[i] & 0xff) - (b2[i] & 0xff);
+                }
+            }
+            return b1.length - b2.length;
+        }
+    };
+
+    private static final Comparator<JavaItem> ITEM_ORDER = new Comparator<JavaItem>() {
+        @Override
+        public int compare(JavaItem item1, JavaItem item2) {
+            int result = ApiDigest.compare(item1.getName(), item2.getName());
+            if (result == 0 && item1 instanceof MethodData && item2 instanceof MethodData) {
+                result = ApiDigest.compare(((MethodData) item1).getDescriptor(), ((MethodData) item2).getDescriptor());
+            } else if (result == 0 && item1 instanceof FieldData && item2 instanceof FieldData) {
+                result = ApiDigest.compare(((FieldData) item1).getDescriptor(), ((FieldData) item2).getDescriptor());
+            }
+            return result;
+        }
+    };
+
+    private ApiDigest() {
+    }
+
+    /**
+     * @param item the item to digest.
+     * @return the digest of the API of the item.
+     */
+    static byte[] compute(JavaItem item) {
+        // digests are nested, e.g. a class digests its members, so each item gets its own buffer.
+        Buffer buffer = new Buffer(256);
+        try {
+            item.writeApi(buffer);
+        } catch (IOException exc) {
+            // cannot happen, everything is written in memory.
+            throw new IllegalStateException(exc);
+        }
+        return digest(buffer);
+    }
+
+    private static byte[] digest(Buffer buffer) {
+        MessageDigest md;
+        try {
+            md = (MessageDigest) PROTOTYPE.clone();
+        } catch (CloneNotSupportedException exc) {
+            md = createPrototype();
+        }
+        md.update(buffer.bytes, 0, buffer.length);
+        return md.digest();
+    }
+
+    private static MessageDigest createPrototype() {
+        try {
+            return MessageDigest.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException exc) {
+            throw new IllegalStateException(ALGORITHM + " is not supported.", exc);
+        }
+    }
+
+    static void writeString(DataOutput out, String value) throws IOException {
+        if (value == null) {
+            out.writeBoolean(false);
+        } else {
+            out.writeBoolean(true);
+            out.writeUTF(value);
+        }
+    }
+
+    static void writeStrings(DataOutput out, Collection<String> values) throws IOException {
+        out.writeInt(values.size());
+        for (String value : sort(values)) {
+            out.writeUTF(value);
+        }
+    }
+
+    /**
+     * Write the API of the items inline, sorted by name and descriptor, which is much cheaper
+     * than digesting each of them. Items sharing a name and a descriptor are kept in their order,
+     * which may only make equal contents look different, never the other way around.
+     */
+    static void writeItems(DataOutput out, List<? extends JavaItem> items) throws IOException {
+        List<? extends JavaItem> sorted = items;
+        if (items.size() > 1) {
+            List<JavaItem> copy = new ArrayList<JavaItem>(items);
+            Collections.sort(copy, ITEM_ORDER);
+            sorted = copy;
+        }
+        out.writeInt(sorted.size());
+        for (JavaItem item : sorted) {
+            item.writeApi(out);
+        }
+    }
+
+    /**
+     * The order of {@link #writeItems(DataOutput, List)} for members stored column by column.
+     * @param names the names of the members.
+     * @param descriptors the descriptors of the members.
+     * @return the indexes of the members, sorted.
+     */
+    static Integer[] sortMembers(final String[] names, final String[] descriptors) {
+        Integer[] order = new Integer[names.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        if (order.length > 1) {
+            // a stable sort, as for the member objects.
+            Arrays.sort(order, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer i1, Integer i2) {
+                    int result = ApiDigest.compare(names[i1], names[i2]);
+                    return result == 0 ? ApiDigest.compare(descriptors[i1], descriptors[i2]) : result;
+                }
+            });
+        }
+        return order;
+    }
+
+    private static int compare(String s1, String s2) {
+        if (s1 == null || s2 == null) {
+            return s1 == null ? (s2 == null ? 0 : -1) : 1;
+        }
+        return s1.compareTo(s2);
+    }
+
+    static void writeAnnotations(DataOutput out, List<AnnotationData> annotations) throws IOException {
+        if (annotations.isEmpty()) {
+            out.writeInt(0);
+            return;
+        }
+        List<byte[]> digests = new ArrayList<byte[]>(annotations.size());
+        for (AnnotationData annotation : annotations) {
+            Buffer buffer = new Buffer(64);
+            writeString(buffer, annotation.getDesc());
+            buffer.writeBoolean(annotation.isVisible());
+            writeValue(buffer, new TreeMap<String, Object>(annotation));
+            digests.add(digest(buffer));
+        }
+        writeSorted(out, digests);
+    }
+
+    private static void writeSorted(DataOutput out, List<byte[]> digests) throws IOException {
+        if (digests.size() > 1) {
+            Collections.sort(digests, BYTES_ORDER);
+        }
+        out.writeInt(digests.size());
+        for (byte[] digest : digests) {
+            out.write(digest);
+        }
+    }
+
+    private static Collection<String> sort(Collection<String> values) {
+        if (values.size() < 2) {
+            return values;
+        }
+        List<String> sorted = new ArrayList<String>(values);
+        Collections.sort(sorted);
+        return sorted;
+    }
+
+    /**
+     * Write a constant or annotation value, the type is part of the content.
+     */
+    static void writeValue(DataOutput out, Object value) throws IOException {
+        if (value == null) {
+            out.writeUTF("null");
+        } else if (value.getClass().isArray()) {
+            out.writeUTF("array");
+            int length = Array.getLength(value);
+            out.writeInt(length);
+            for (int i = 0; i < length; i++) {
+                writeValue(out, Array.get(value, i));
+            }
+        } else if (value instanceof List) {
+            out.writeUTF("list");
+            List<?> list = (List<?>) value;
+            out.writeInt(list.size());
+            for (Object element : list) {
+                writeValue(out, element);
+            }
+        } else if (value instanceof Map) {
+            out.writeUTF("map");
+            Map<?, ?> map = (Map<?, ?>) value;
+            out.writeInt(map.size());
+            for (Map.Entry<?, ?> entry : new TreeMap<Object, Object>(map).entrySet()) {
+                writeValue(out, entry.getKey());
+                writeValue(out, entry.getValue());
+            }
+        } else {
+            out.writeUTF(value.getClass().getName());
+            out.writeUTF(String.valueOf(value));
+        }
+    }
+
+    /**
+     * The content to digest. Strings are written in a single pass over their characters,
+     * which DataOutputStream.writeUTF() is not, and nothing is synchronized.
+     */
+    private static final class Buffer implements DataOutput {
+        private byte[] bytes;
+        private int length;
+        private char[] chars = new char[64];
+
+        Buffer(int capacity) {
+            bytes = new byte[capacity];
+        }
+
+        private void ensureCapacity(int size) {
+            if (length + size > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(length * 2, length + size));
+            }
+        }
+
+        @Override
+        public void write(int b) {
+            ensureCapacity(1);
+            bytes[length++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b) {
+            write(b, 0, b.length);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            ensureCapacity(len);
+            System.arraycopy(b, off, bytes, length, len);
+            length += len;
+        }
+
+        @Override
+        public void writeBoolean(boolean v) {
+            write(v ? 1 : 0);
+        }
+
+        @Override
+        public void writeByte(int v) {
+            write(v);
+        }
+
+        @Override
+        public void writeShort(int v) {
+            ensureCapacity(2);
+            bytes[length++] = (byte) (v >>> 8);
+            bytes[length++] = (byte) v;
+        }
+
+        @Override
+        public void writeChar(int v) {
+            writeShort(v);
+        }
+
+        @Override
+        public void writeInt(int v) {
+            ensureCapacity(4);
+            bytes[length++] = (byte) (v >>> 24);
+            bytes[length++] = (byte) (v >>> 16);
+            bytes[length++] = (byte) (v >>> 8);
+            bytes[length++] = (byte) v;
+        }
+
+        @Override
+        public void writeLong(long v) {
+            writeInt((int) (v >>> 32));
+            writeInt((int) v);
+        }
+
+        @Override
+        public void writeFloat(float v) {
+            writeInt(Float.floatToIntBits(v));
+        }
+
+        @Override
+        public void writeDouble(double v) {
+            writeLong(Double.doubleToLongBits(v));
+        }
+
+        @Override
+        public void writeBytes(String s) {
+            writeUTF(s);
+        }
+
+        @Override
+        public void writeChars(String s) {
+            writeUTF(s);
+        }
+
+        /**
+         * Write the number of characters, then one byte per ASCII character and three for the others,
+         * so the encoding is unambiguous without being valid UTF-8.
+         */
+        @Override
+        public void writeUTF(String s) {
+            int count = s.length();
+            if (count > chars.length) {
+                chars = new char[Math.max(count, chars.length * 2)];
+            }
+            s.getChars(0, count, chars, 0);
+            writeInt(count);
+            ensureCapacity(count * 3);
+            byte[] b = bytes;
+            int n = length;
+            for (int i = 0; i < count; i++) {
+                char c = chars[i];
+                if (c < 0x80) {
+                    b[n++] = (byte) c;
+                } else {
+                    b[n++] = (byte) (0x80 | (c >>> 12));
+                    b[n++] = (byte) (c >>> 6);
+                    b[n++] = (byte) c;
+                }
+            }
+            length = n;
+        }
+    }
+}
@@ -15,68 +15,306 @@
  */
 package com.googlecode.japi.checker.model;
 
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import com.googlecode.japi.checker.ClassDataLoader;
+import com.googlecode.japi.checker.ItemKind;
 import com.googlecode.japi.checker.Reporter;
 import com.googlecode.japi.checker.Rule;
+import com.googlecode.japi.checker.RuleContext;
+import com.googlecode.japi.checker.RuleSet;
+import com.googlecode.japi.checker.Scope;
 
 public class ClassData extends JavaItem {
+    private ClassDataLoader classDataLoader;
     private List<MethodData> methods = new ArrayList<MethodData>();
     private List<FieldData> fields = new ArrayList<FieldData>();
     private List<AttributeData> attributes = new ArrayList<AttributeData>();
     private List<InnerClassData> innerClasses = new ArrayList<InnerClassData>();
     private String signature;
     private String superName;
-    private List<String> interfaces = new ArrayList<String>();
+    private List<String> interfaces;
     private int version;
     private String source;
+    private LineNumberResolver lineNumberResolver;
+    // built on first lookup, and dropped whenever a member is added.
+    private volatile Map<String, MethodData> methodIndex;
+    private volatile Map<String, FieldData> fieldIndex;
+    // the members, when packed by pack(), until they are looked at.
+    private volatile PackedMembers packedMembers;
 
     public ClassData(ClassDataLoader loader, ClassData owner, int access, String name, String signature, String superName, String[] interfaces, int version) {
         super(loader, owner, access, name);
+        this.classDataLoader = loader;
         this.setSignature(signature);
         this.superName = superName;
+        this.interfaces = new ArrayList<String>(interfaces.length);
         Collections.addAll(this.interfaces, interfaces);
         this.version = version;
     }
 
+    /**
+     * Get the ClassDataLoader associated with this instance. {@inheritDoc}
+     */
+    @Override
+    public ClassDataLoader getClassDataLoader() {
+        return classDataLoader;
+    }
+
+    /**
+     * Get the ClassDataLoader associated with this instance. {@inheritDoc}
+     */
+    protected void setClassDataLoader(ClassDataLoader loader) {
+        classDataLoader = loader;
+    }
+
+    /**
+     * Pack the methods and fields of this class into a few arrays, so they no longer cost an
+     * object each. They are rebuilt as new objects the first time they are looked at, this is
+     * meant for the classes of the dependencies, most of them are only read for their hierarchy.
+     * The class must be packed before it is shared with other threads.
+     */
+    public synchronized void pack() {
+        if (packedMembers == null && (!methods.isEmpty() || !fields.isEmpty())) {
+            packedMembers = new PackedMembers(methods, fields);
+            methods = null;
+            fields = null;
+            methodIndex = null;
+            fieldIndex = null;
+        }
+    }
+
+    /**
+     * @return true if the members are packed, see {@link #pack()}.
+     */
+    public boolean isPacked() {
+        return packedMembers != null;
+    }
+
+    private void unpack() {
+        if (packedMembers != null) {
+            synchronized (this) {
+                PackedMembers packed = packedMembers;
+                if (packed != null) {
+                    methods = packed.unpackMethods(this);
+                    fields = packed.unpackFields(this);
+                    packedMembers = null;
+                }
+            }
+        }
+    }
+
     public void add(MethodData method) {
+        unpack();
         methods.add(method);
+        methodIndex = null;
+        resetApiDigest();
     }
 
     public void add(AttributeData attribute) {
         attributes.add(attribute);
+        resetApiDigest();
     }
 
     public void add(FieldData field) {
+        unpack();
         fields.add(field);
+        fieldIndex = null;
+        resetApiDigest();
     }
 
     public void checkBackwardCompatibility(Reporter reporter, ClassData clazz, List<Rule> rules) {
-        for (FieldData oldField : clazz.fields) {
-            for (FieldData newField: this.fields) {
-                if (oldField.isSame(newField)) {
-                    newField.checkBackwardCompatibility(reporter, oldField, rules);
-                    for (Rule rule : rules) {
-                        rule.checkBackwardCompatibility(reporter, oldField, newField);
+        checkBackwardCompatibility(reporter, clazz, new RuleSet(rules), false);
+    }
+
+    /**
+     * Same as {@link #checkBackwardCompatibility(Reporter, ClassData, List)}, with rules grouped
+     * by kind once for all the classes, and optionally skipping the pairs of members which have
+     * the same API digest. Members of a kind no rule checks are not even paired.
+     * A visible member this class does not declare anymore is paired with the member it
+     * inherits instead, if any, e.g. once pulled up to a super class.
+     * @param reporter the reporter.
+     * @param clazz the reference version of this class.
+     * @param rules the rules to apply.
+     * @param skipUnchanged true to skip the members whose API did not change.
+     * @return the number of pairs of members which have been skipped.
+     */
+    public int checkBackwardCompatibility(Reporter reporter, ClassData clazz, RuleSet rules, boolean skipUnchanged) {
+        RuleContext context = new RuleContext(false);
+        rules.begin(context);
+        return checkBackwardCompatibility(reporter, clazz, rules, context, skipUnchanged);
+    }
+
+    /**
+     * Same as {@link #checkBackwardCompatibility(Reporter, ClassData, RuleSet, boolean)}, the
+     * results of the rules being accumulated into the context of the check.
+     * @param reporter the reporter.
+     * @param clazz the reference version of this class.
+     * @param rules the rules to apply.
+     * @param context the context of the current thread.
+     * @param skipUnchanged true to skip the members whose API did not change.
+     * @return the number of pairs of members which have been skipped.
+     */
+    public int checkBackwardCompatibility(Reporter reporter, ClassData clazz, RuleSet rules, RuleContext context,
+            boolean skipUnchanged) {
+        int skipped = 0;
+        List<Rule> allRules = rules.getRules();
+        if (!rules.isEmpty(ItemKind.FIELD)) {
+            for (FieldData oldField : clazz.getFields()) {
+                FieldData newField = this.getField(oldField.getName());
+                if (newField == null) {
+                    MemberTable members = getInheritedMembers(oldField);
+                    newField = members == null ? null : members.getField(oldField);
+                }
+                if (newField != null) {
+                    if (skipUnchanged && oldField.hasSameApi(newField)) {
+                        skipped++;
+                        continue;
                     }
-                    break;
+                    newField.checkBackwardCompatibility(reporter, oldField, allRules);
+                    rules.checkBackwardCompatibility(reporter, context, oldField, newField);
                 }
             }
         }
-        for (MethodData oldMethod : clazz.methods) {
-            for (MethodData newMethod: this.methods) {
-                if (oldMethod.isSame(newMethod)) {
-                    newMethod.checkBackwardCompatibility(reporter, oldMethod, rules);
-                    for (Rule rule : rules) {
-                        rule.checkBackwardCompatibility(reporter, oldMethod, newMethod);
+        if (!rules.isEmpty(ItemKind.METHOD)) {
+            for (MethodData oldMethod : clazz.getMethods()) {
+                MethodData newMethod = this.getMethod(oldMethod);
+                if (newMethod == null) {
+                    MemberTable members = getInheritedMembers(oldMethod);
+                    newMethod = members == null ? null : members.getMethod(oldMethod);
+                }
+                if (newMethod != null) {
+                    if (skipUnchanged && oldMethod.hasSameApi(newMethod)) {
+                        skipped++;
+                        continue;
                     }
-                    break;
+                    newMethod.checkBackwardCompatibility(reporter, oldMethod, allRules);
+                    rules.checkBackwardCompatibility(reporter, context, oldMethod, newMethod);
                 }
             }
         }
+        return skipped;
+    }
+
+    /**
+     * Get the members a member of another version of this class might have been pulled up
+     * to, the rules then check the member against the inherited one.
+     * @param member the member this class does not declare anymore.
+     * @return the members reachable on this class, or null if the member was not visible
+     *         to the clients or if the class cannot be looked up.
+     */
+    private MemberTable getInheritedMembers(JavaItem member) {
+        if (!member.getVisibility().isMoreVisibleThan(Scope.NO_SCOPE) || classDataLoader == null) {
+            return null;
+        }
+        return classDataLoader.getTypeHierarchy().getMembers(getName());
+    }
+
+    /**
+     * Look a method of this class up, this is the method {@link MethodData#isSame(MethodData)}
+     * would match. When several methods match, the first one declared is returned.
+     * @param name the name of the method.
+     * @param descriptor the descriptor of the method.
+     * @return the method, or null if the class does not declare it.
+     */
+    public MethodData getMethod(String name, String descriptor) {
+        return getMethodIndex().get(getMethodKey(name, descriptor));
+    }
+
+    /**
+     * Look the method with the same name and descriptor up in this class, e.g. the
+     * counterpart of a method of another version of the class.
+     * @param method the method to look up.
+     * @return the method, or null if the class does not declare it.
+     */
+    public MethodData getMethod(MethodData method) {
+        return getMethodIndex().get(method.getKey());
+    }
+
+    private Map<String, MethodData> getMethodIndex() {
+        Map<String, MethodData> index = methodIndex;
+        if (index == null) {
+            List<MethodData> methods = getMethods();
+            index = new HashMap<String, MethodData>(methods.size() * 2);
+            for (MethodData method : methods) {
+                if (!index.containsKey(method.getKey())) {
+                    index.put(method.getKey(), method);
+                }
+            }
+            methodIndex = index;
+        }
+        return index;
+    }
+
+    /**
+     * Look a field of this class up, this is the field {@link FieldData#isSame(FieldData)}
+     * would match. When several fields match, the first one declared is returned.
+     * @param name the name of the field.
+     * @return the field, or null if the class does not declare it.
+     */
+    public FieldData getField(String name) {
+        Map<String, FieldData> index = fieldIndex;
+        if (index == null) {
+            List<FieldData> fields = getFields();
+            index = new HashMap<String, FieldData>(fields.size() * 2);
+            for (FieldData field : fields) {
+                if (!index.containsKey(field.getName())) {
+                    index.put(field.getName(), field);
+                }
+            }
+            fieldIndex = index;
+        }
+        return index.get(name);
+    }
+
+    static String getMethodKey(String name, String descriptor) {
+        // descriptors start with '(', so the key cannot be ambiguous.
+        return name + descriptor;
+    }
+
+    @Override
+    public boolean hasSameApi(JavaItem item) {
+        if (!super.hasSameApi(item)) {
+            return false;
+        }
+        ClassData clazz = (ClassData) item;
+        if (!equals(signature, clazz.signature) || !equals(superName, clazz.superName)
+                || !interfaces.equals(clazz.interfaces) || version != clazz.version
+                || !hasSameApi(innerClasses, clazz.innerClasses) || !hasSameApi(attributes, clazz.attributes)) {
+            return false;
+        }
+        if (packedMembers != null || clazz.packedMembers != null) {
+            // comparing the members would unpack them.
+            return Arrays.equals(getApiDigest(), clazz.getApiDigest());
+        }
+        return hasSameApi(fields, clazz.fields) && hasSameApi(methods, clazz.methods);
+    }
+
+    @Override
+    protected void writeApi(DataOutput out) throws IOException {
+        super.writeApi(out);
+        ApiDigest.writeString(out, signature);
+        ApiDigest.writeString(out, superName);
+        ApiDigest.writeStrings(out, interfaces);
+        out.writeInt(version);
+        PackedMembers packed = packedMembers;
+        if (packed != null) {
+            // digesting the hierarchy of the checked classes must not unpack the dependency classes.
+            packed.writeFieldsApi(out);
+            packed.writeMethodsApi(out);
+        } else {
+            ApiDigest.writeItems(out, getFields());
+            ApiDigest.writeItems(out, getMethods());
+        }
+        ApiDigest.writeItems(out, innerClasses);
+        ApiDigest.writeItems(out, attributes);
     }
 
     public boolean isSame(ClassData newClazz) {
@@ -149,6 +387,7 @@ public class ClassData extends JavaItem {
      * @return the methods
      */
     public List<MethodData> getMethods() {
+        unpack();
         return methods;
     }
 
@@ -156,13 +395,17 @@ public class ClassData extends JavaItem {
      * @param methods the methods to set
      */
     protected void setMethods(List<MethodData> methods) {
+        unpack();
         this.methods = methods;
+        this.methodIndex = null;
+        resetApiDigest();
     }
 
     /**
      * @return the fields
      */
     public List<FieldData> getFields() {
+        unpack();
         return fields;
     }
 
@@ -170,7 +413,10 @@ public class ClassData extends JavaItem {
      * @param fields the fields to set
      */
     protected void setFields(List<FieldData> fields) {
+        unpack();
         this.fields = fields;
+        this.fieldIndex = null;
+        resetApiDigest();
     }
 
     /**
@@ -190,6 +436,14 @@ public class ClassData extends JavaItem {
 
     public void add(InnerClassData clazz) {
         innerClasses.add(clazz);
+        resetApiDigest();
+    }
+
+    /**
+     * @return the inner classes
+     */
+    public List<InnerClassData> getInnerClasses() {
+        return innerClasses;
     }
 
     /**
@@ -206,6 +460,34 @@ public class ClassData extends JavaItem {
         return source;
     }
 
+    /**
+     * Defines how the line numbers of the methods are recovered, when the class
+     * has been parsed without its method bodies.
+     * @param lineNumberResolver the resolver, or null if the line numbers are already known.
+     */
+    public synchronized void setLineNumberResolver(LineNumberResolver lineNumberResolver) {
+        this.lineNumberResolver = lineNumberResolver;
+    }
+
+    /**
+     * @return true if the line numbers of the methods still have to be recovered.
+     */
+    public synchronized boolean hasLineNumberResolver() {
+        return lineNumberResolver != null;
+    }
+
+    /**
+     * Recover the line numbers of the methods if they have not been parsed yet.
+     * The resolver is only invoked once.
+     */
+    public synchronized void resolveLineNumbers() {
+        if (lineNumberResolver != null) {
+            LineNumberResolver resolver = lineNumberResolver;
+            lineNumberResolver = null;
+            resolver.resolveLineNumbers(this);
+        }
+    }
+
     public String getFilename() {
         if (this.getName().lastIndexOf('/') != -1) {
             return this.getName().substring(0, this.getName().lastIndexOf('/') + 1) + getSource();
@@ -16,6 +16,8 @@
 package com.googlecode.japi.checker.model;
 
 
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.List;
 
 import com.googlecode.japi.checker.ClassDataLoader;
@@ -106,6 +108,40 @@ public class FieldData
     }
 
 
+    @Override
+    public boolean hasSameApi(JavaItem item)
+    {
+        if (!super.hasSameApi(item))
+        {
+            return false;
+        }
+        FieldData field = (FieldData)item;
+        return equals(descriptor, field.descriptor) && equals(signature, field.signature)
+               && equals(value, field.value);
+    }
+
+
+    @Override
+    protected void writeApi(DataOutput out)
+        throws IOException
+    {
+        super.writeApi(out);
+        writeApi(out, descriptor, signature, value);
+    }
+
+
+    /**
+     * Write the API specific to fields, also used for the fields of packed classes.
+     */
+    static void writeApi(DataOutput out, String descriptor, String signature, Object value)
+        throws IOException
+    {
+        ApiDigest.writeString(out, descriptor);
+        ApiDigest.writeString(out, signature);
+        ApiDigest.writeValue(out, value);
+    }
+
+
     public boolean hasSameType(FieldData reference)
     {
         return this.getDescriptor().equals(reference.getDescriptor());
@@ -15,6 +15,9 @@
  */
 package com.googlecode.japi.checker.model;
 
+import java.io.DataOutput;
+import java.io.IOException;
+
 import com.googlecode.japi.checker.ClassDataLoader;
 
 
@@ -35,6 +38,22 @@ public class InnerClassData extends JavaItem {
         return "class";
     }
 
+    @Override
+    public boolean hasSameApi(JavaItem item) {
+        if (!super.hasSameApi(item)) {
+            return false;
+        }
+        InnerClassData innerClass = (InnerClassData) item;
+        return equals(outerName, innerClass.outerName) && equals(innerName, innerClass.innerName);
+    }
+
+    @Override
+    protected void writeApi(DataOutput out) throws IOException {
+        super.writeApi(out);
+        ApiDigest.writeString(out, outerName);
+        ApiDigest.writeString(out, innerName);
+    }
+
     /**
      * @param outerName the outerName to set
      */
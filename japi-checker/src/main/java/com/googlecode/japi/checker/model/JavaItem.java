@@ -16,6 +16,8 @@
 package com.googlecode.japi.checker.model;
 
 
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -28,43 +30,78 @@ import com.googlecode.japi.checker.Scope;
 
 public abstract class JavaItem
 {
-    private Scope visibility = Scope.PROTECTED;
+    private static final int VISIBILITY = Opcodes.ACC_PUBLIC | Opcodes.ACC_PROTECTED | Opcodes.ACC_PRIVATE;
+    // the access flags written by writeApi().
+    private static final int API_ACCESS = VISIBILITY | Opcodes.ACC_ABSTRACT | Opcodes.ACC_INTERFACE
+                                          | Opcodes.ACC_FINAL | Opcodes.ACC_STATIC | Opcodes.ACC_TRANSIENT
+                                          | Opcodes.ACC_VARARGS;
+    // the items of a whole classpath are held in memory, so they only keep the raw access flags,
+    // get their loader from their owner and allocate the annotations when there are some.
+    private int access;
     private ClassData owner;
     private String name;
-    private boolean isAbstract;
-    private boolean isInterface;
-    private boolean isFinal;
-    private boolean isStatic;
-    private boolean isTransient;
-    private boolean isVariableArity;
-    private ClassDataLoader classDataLoader;
-    private List<AnnotationData> annotations = new ArrayList<AnnotationData>();
+    private List<AnnotationData> annotations;
+    private volatile byte[] apiDigest;
 
 
+    /**
+     * @param loader the loader of the item, members share the loader of their owner.
+     * @param owner the class declaring the item, or null.
+     * @param access the access flags as found in the class file.
+     * @param name the name of the item.
+     */
     protected JavaItem(ClassDataLoader loader, ClassData owner, int access, String name)
     {
         this.setOwner(owner);
         this.setName(name);
-        this.setVisibility(toScope(access));
-        this.setAbstract((access & Opcodes.ACC_ABSTRACT) == Opcodes.ACC_ABSTRACT);
-        this.setInterface((access & Opcodes.ACC_INTERFACE) == Opcodes.ACC_INTERFACE);
-        this.setFinal((access & Opcodes.ACC_FINAL) == Opcodes.ACC_FINAL);
-        this.setStatic((access & Opcodes.ACC_STATIC) == Opcodes.ACC_STATIC);
-        this.setTransient((access & Opcodes.ACC_TRANSIENT) == Opcodes.ACC_TRANSIENT);
-        this.setVariableArity((access & Opcodes.ACC_VARARGS) == Opcodes.ACC_VARARGS);
-        this.setClassDataLoader(loader);
+        this.access = access;
+    }
+
+
+    /**
+     * @return the access flags as found in the class file, see {@link Opcodes}.
+     */
+    public int getAccess()
+    {
+        return access;
+    }
+
+
+    private boolean is(int flag)
+    {
+        return (access & flag) != 0;
+    }
+
+
+    private void set(int flag, boolean value)
+    {
+        access = value ? access | flag : access & ~flag;
     }
 
 
     protected void setVisibility(Scope visibility)
     {
-        this.visibility = visibility;
+        access &= ~VISIBILITY;
+        switch (visibility)
+        {
+            case PUBLIC:
+                access |= Opcodes.ACC_PUBLIC;
+                break;
+            case PROTECTED:
+                access |= Opcodes.ACC_PROTECTED;
+                break;
+            case PRIVATE:
+                access |= Opcodes.ACC_PRIVATE;
+                break;
+            default:
+                break;
+        }
     }
 
 
     public Scope getVisibility()
     {
-        return visibility;
+        return toScope(access);
     }
 
 
@@ -94,7 +131,7 @@ public abstract class JavaItem
      */
     protected void setAbstract(boolean isAbstract)
     {
-        this.isAbstract = isAbstract;
+        set(Opcodes.ACC_ABSTRACT, isAbstract);
     }
 
 
@@ -103,7 +140,7 @@ public abstract class JavaItem
      */
     public boolean isAbstract()
     {
-        return isAbstract;
+        return is(Opcodes.ACC_ABSTRACT);
     }
 
 
@@ -112,7 +149,7 @@ public abstract class JavaItem
      */
     protected void setInterface(boolean isInterface)
     {
-        this.isInterface = isInterface;
+        set(Opcodes.ACC_INTERFACE, isInterface);
     }
 
 
@@ -121,7 +158,7 @@ public abstract class JavaItem
      */
     public boolean isInterface()
     {
-        return isInterface;
+        return is(Opcodes.ACC_INTERFACE);
     }
 
 
@@ -130,7 +167,7 @@ public abstract class JavaItem
      */
     protected void setFinal(boolean isFinal)
     {
-        this.isFinal = isFinal;
+        set(Opcodes.ACC_FINAL, isFinal);
     }
 
 
@@ -139,7 +176,7 @@ public abstract class JavaItem
      */
     public boolean isFinal()
     {
-        return isFinal;
+        return is(Opcodes.ACC_FINAL);
     }
 
 
@@ -148,7 +185,7 @@ public abstract class JavaItem
      */
     protected void setStatic(boolean isStatic)
     {
-        this.isStatic = isStatic;
+        set(Opcodes.ACC_STATIC, isStatic);
     }
 
 
@@ -157,7 +194,7 @@ public abstract class JavaItem
      */
     public boolean isStatic()
     {
-        return isStatic;
+        return is(Opcodes.ACC_STATIC);
     }
 
 
@@ -166,7 +203,7 @@ public abstract class JavaItem
      */
     protected void setTransient(boolean isTransient)
     {
-        this.isTransient = isTransient;
+        set(Opcodes.ACC_TRANSIENT, isTransient);
     }
 
 
@@ -175,7 +212,7 @@ public abstract class JavaItem
      */
     public boolean isTransient()
     {
-        return isTransient;
+        return is(Opcodes.ACC_TRANSIENT);
     }
 
 
@@ -199,13 +236,13 @@ public abstract class JavaItem
 
     public boolean isVariableArity()
     {
-        return isVariableArity;
+        return is(Opcodes.ACC_VARARGS);
     }
 
 
     protected void setVariableArity(boolean isVariableArity)
     {
-        this.isVariableArity = isVariableArity;
+        set(Opcodes.ACC_VARARGS, isVariableArity);
     }
 
 
@@ -240,20 +277,11 @@ public abstract class JavaItem
 
 
     /**
-     * Get the ClassDataLoader associated with this instance. {@inheritDoc}
+     * Get the ClassDataLoader associated with this instance, the one of its owner. {@inheritDoc}
      */
     public ClassDataLoader getClassDataLoader()
     {
-        return classDataLoader;
-    }
-
-
-    /**
-     * Get the ClassDataLoader associated with this instance. {@inheritDoc}
-     */
-    protected void setClassDataLoader(ClassDataLoader loader)
-    {
-        classDataLoader = loader;
+        return owner == null ? null : owner.getClassDataLoader();
     }
 
 
@@ -262,6 +290,10 @@ public abstract class JavaItem
      */
     public List<AnnotationData> getAnnotations()
     {
+        if (annotations == null)
+        {
+            return Collections.emptyList();
+        }
         return Collections.<AnnotationData> unmodifiableList(annotations);
     }
 
@@ -271,13 +303,138 @@ public abstract class JavaItem
      */
     public void add(AnnotationData annotation)
     {
+        if (annotations == null)
+        {
+            annotations = new ArrayList<AnnotationData>(1);
+        }
         this.annotations.add(annotation);
+        resetApiDigest();
+    }
+
+
+    /**
+     * Get a digest of everything a client compiled against this item can depend on: access flags,
+     * name, descriptor, signature, exceptions, annotations, supertypes and members. Two items with
+     * the same digest are the same in API terms, even if their code or line numbers differ.
+     * The digest is computed on first call, once the item is fully parsed.
+     *
+     * @return the digest, which must not be modified.
+     */
+    public byte[] getApiDigest()
+    {
+        byte[] digest = apiDigest;
+        if (digest == null)
+        {
+            digest = ApiDigest.compute(this);
+            apiDigest = digest;
+        }
+        return digest;
+    }
+
+
+    /**
+     * Compare the API of this item to the one of another item, the content {@link #getApiDigest()} covers.
+     * Unlike the digests, the members, interfaces, exceptions and annotations must be in the same order.
+     * The models of both versions usually share their names, so this mostly compares references, and
+     * is much cheaper than computing the digests.
+     *
+     * @param item the item to compare to.
+     * @return true if both items have the same API, false if they may differ.
+     */
+    public boolean hasSameApi(JavaItem item)
+    {
+        if (getClass() != item.getClass() || (access & API_ACCESS) != (item.access & API_ACCESS)
+            || !equals(name, item.name))
+        {
+            return false;
+        }
+        List<AnnotationData> others = item.getAnnotations();
+        List<AnnotationData> own = getAnnotations();
+        if (own.size() != others.size())
+        {
+            return false;
+        }
+        for (int i = 0; i < own.size(); i++)
+        {
+            if (!own.get(i).hasSameContent(others.get(i)))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    static boolean equals(Object value1, Object value2)
+    {
+        return value1 == null ? value2 == null : value1.equals(value2);
+    }
+
+
+    /**
+     * Compare the items of two lists, see {@link #hasSameApi(JavaItem)}.
+     */
+    static boolean hasSameApi(List<? extends JavaItem> items1, List<? extends JavaItem> items2)
+    {
+        if (items1.size() != items2.size())
+        {
+            return false;
+        }
+        for (int i = 0; i < items1.size(); i++)
+        {
+            if (!items1.get(i).hasSameApi(items2.get(i)))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * Write the API of this item, subclasses extend it with their own content.
+     *
+     * @param out where to write the content to digest.
+     * @throws IOException
+     */
+    protected void writeApi(DataOutput out)
+        throws IOException
+    {
+        writeApi(out, getClass().getSimpleName(), name, access, getAnnotations());
+    }
+
+
+    /**
+     * Write the API common to all the items, also used for the members of packed classes.
+     */
+    static void writeApi(DataOutput out, String kind, String name, int access, List<AnnotationData> annotations)
+        throws IOException
+    {
+        out.writeUTF(kind);
+        ApiDigest.writeString(out, name);
+        out.writeUTF(toScope(access).name());
+        out.writeBoolean((access & Opcodes.ACC_ABSTRACT) != 0);
+        out.writeBoolean((access & Opcodes.ACC_INTERFACE) != 0);
+        out.writeBoolean((access & Opcodes.ACC_FINAL) != 0);
+        out.writeBoolean((access & Opcodes.ACC_STATIC) != 0);
+        out.writeBoolean((access & Opcodes.ACC_TRANSIENT) != 0);
+        out.writeBoolean((access & Opcodes.ACC_VARARGS) != 0);
+        ApiDigest.writeAnnotations(out, annotations);
+    }
+
+
+    /**
+     * Drop the digest, as the content of the item is changing.
+     */
+    protected void resetApiDigest()
+    {
+        apiDigest = null;
     }
 
 
     public AnnotationData getAnnotation(String desc)
     {
-        for (AnnotationData annotation : this.annotations)
+        for (AnnotationData annotation : getAnnotations())
         {
             if (desc != null && desc.equals(annotation.getDesc()))
             {
@@ -293,9 +450,9 @@ public abstract class JavaItem
     {
         final int prime = 31;
         int result = 1;
-        result = prime * result + (isStatic ? 1231 : 1237);
+        result = prime * result + (isStatic() ? 1231 : 1237);
         result = prime * result + ((name == null) ? 0 : name.hashCode());
-        result = prime * result + ((visibility == null) ? 0 : visibility.hashCode());
+        result = prime * result + getVisibility().hashCode();
         return result;
     }
 
@@ -310,7 +467,7 @@ public abstract class JavaItem
         if (getClass() != obj.getClass())
             return false;
         JavaItem other = (JavaItem)obj;
-        if (isStatic != other.isStatic)
+        if (isStatic() != other.isStatic())
             return false;
         if (name == null)
         {
@@ -319,7 +476,7 @@ public abstract class JavaItem
         }
         else if (!name.equals(other.name))
             return false;
-        if (visibility != other.visibility)
+        if (getVisibility() != other.getVisibility())
             return false;
         return true;
     }
@@ -0,0 +1,29 @@
+/*
+ * Copyright 2012 William Bernardet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.japi.checker.model;
+
+/**
+ * Recovers the line numbers of the methods of a class which has been parsed
+ * without its method bodies.
+ */
+public interface LineNumberResolver {
+
+    /**
+     * Set the line number of the methods of the given class.
+     * @param clazz the class to resolve the line numbers for.
+     */
+    void resolveLineNumbers(ClassData clazz);
+}
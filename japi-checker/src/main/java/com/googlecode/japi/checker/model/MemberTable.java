@@ -0,0 +1,125 @@
+/*
+ * Copyright 2012 William Bernardet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.japi.checker.model;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.googlecode.japi.checker.Scope;
+
+/**
+ * The members which can be reached on a class: its own members, plus the members
+ * inherited from its super classes and interfaces. Private members, constructors and
+ * static interface methods are not inherited.
+ * When several members match, the one found first wins: the own members, then the
+ * super classes, then the interfaces. Like the resolution done by the virtual machine,
+ * the fields are looked up by name and descriptor.
+ */
+public final class MemberTable {
+    private final Map<String, MethodData> methods = new HashMap<String, MethodData>();
+    private final Map<String, FieldData> fields = new HashMap<String, FieldData>();
+
+    /**
+     * Build the table of a class out of the tables of its direct super types.
+     * @param clazz the class.
+     * @param superClass the table of the super class, or null if unknown.
+     * @param interfaces the tables of the known interfaces.
+     */
+    public MemberTable(ClassData clazz, MemberTable superClass, List<MemberTable> interfaces) {
+        for (MethodData method : clazz.getMethods()) {
+            putIfAbsent(methods, method.getKey(), method);
+        }
+        for (FieldData field : clazz.getFields()) {
+            putIfAbsent(fields, getFieldKey(field.getName(), field.getDescriptor()), field);
+        }
+        if (superClass != null) {
+            inherit(superClass);
+        }
+        for (MemberTable iface : interfaces) {
+            inherit(iface);
+        }
+    }
+
+    private void inherit(MemberTable table) {
+        for (Map.Entry<String, MethodData> entry : table.methods.entrySet()) {
+            MethodData method = entry.getValue();
+            if (isInherited(method) && !method.getName().startsWith("<")
+                    && !(method.isStatic() && method.getOwner() != null && method.getOwner().isInterface())) {
+                putIfAbsent(methods, entry.getKey(), method);
+            }
+        }
+        for (Map.Entry<String, FieldData> entry : table.fields.entrySet()) {
+            if (isInherited(entry.getValue())) {
+                putIfAbsent(fields, entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private static boolean isInherited(JavaItem item) {
+        return item.getVisibility() != Scope.PRIVATE;
+    }
+
+    private static <T> void putIfAbsent(Map<String, T> map, String key, T value) {
+        if (!map.containsKey(key)) {
+            map.put(key, value);
+        }
+    }
+
+    private static String getFieldKey(String name, String descriptor) {
+        return name + ':' + descriptor;
+    }
+
+    /**
+     * @param method a method, e.g. of another version of the class.
+     * @return the method with the same name and descriptor reachable on the class, or null.
+     *         A concrete method only matches a concrete method: the abstract ones, e.g. declared
+     *         by an interface, would leave the existing subclasses without implementation.
+     */
+    public MethodData getMethod(MethodData method) {
+        MethodData result = methods.get(method.getKey());
+        if (result != null && result.isAbstract() && !method.isAbstract()) {
+            return null;
+        }
+        return result;
+    }
+
+    /**
+     * @param name the name of the method.
+     * @param descriptor the descriptor of the method.
+     * @return the method reachable on the class, or null.
+     */
+    public MethodData getMethod(String name, String descriptor) {
+        return methods.get(ClassData.getMethodKey(name, descriptor));
+    }
+
+    /**
+     * @param field a field, e.g. of another version of the class.
+     * @return the field with the same name and descriptor reachable on the class, or null.
+     */
+    public FieldData getField(FieldData field) {
+        return getField(field.getName(), field.getDescriptor());
+    }
+
+    /**
+     * @param name the name of the field.
+     * @param descriptor the descriptor of the field.
+     * @return the field reachable on the class, or null.
+     */
+    public FieldData getField(String name, String descriptor) {
+        return fields.get(getFieldKey(name, descriptor));
+    }
+}
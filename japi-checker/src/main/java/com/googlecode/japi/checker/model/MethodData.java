@@ -16,7 +16,10 @@
 package com.googlecode.japi.checker.model;
 
 
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 
@@ -30,8 +33,9 @@ public class MethodData
 {
     private String signature;
     private String descriptor;
-    private List<String> exceptions = new ArrayList<String>();
+    private List<String> exceptions;
     private int line;
+    private String key;
 
 
     public MethodData(ClassDataLoader loader,
@@ -45,6 +49,8 @@ public class MethodData
         super(loader, owner, access, name);
         this.setSignature(signature);
         this.setDescriptor(descriptor);
+        // most methods throw nothing, or a single exception.
+        this.exceptions = new ArrayList<String>(exceptions == null ? 0 : exceptions.length);
         if (exceptions != null)
         {
             Collections.addAll(this.exceptions, exceptions);
@@ -66,6 +72,40 @@ public class MethodData
     }
 
 
+    @Override
+    public boolean hasSameApi(JavaItem item)
+    {
+        if (!super.hasSameApi(item))
+        {
+            return false;
+        }
+        MethodData method = (MethodData)item;
+        return equals(descriptor, method.descriptor) && equals(signature, method.signature)
+               && exceptions.equals(method.exceptions);
+    }
+
+
+    @Override
+    protected void writeApi(DataOutput out)
+        throws IOException
+    {
+        super.writeApi(out);
+        writeApi(out, descriptor, signature, exceptions);
+    }
+
+
+    /**
+     * Write the API specific to methods, also used for the methods of packed classes.
+     */
+    static void writeApi(DataOutput out, String descriptor, String signature, Collection<String> exceptions)
+        throws IOException
+    {
+        ApiDigest.writeString(out, descriptor);
+        ApiDigest.writeString(out, signature);
+        ApiDigest.writeStrings(out, exceptions);
+    }
+
+
     /**
      * @return the signature
      */
@@ -97,6 +137,7 @@ public class MethodData
     protected void setDescriptor(String descriptor)
     {
         this.descriptor = descriptor;
+        this.key = null;
     }
 
 
@@ -109,6 +150,29 @@ public class MethodData
     }
 
 
+    @Override
+    protected void setName(String name)
+    {
+        super.setName(name);
+        this.key = null;
+    }
+
+
+    /**
+     * @return the name and descriptor of the method, identifying it within its class.
+     */
+    String getKey()
+    {
+        String key = this.key;
+        if (key == null)
+        {
+            key = ClassData.getMethodKey(getName(), descriptor);
+            this.key = key;
+        }
+        return key;
+    }
+
+
     /**
      * @param exceptions the exceptions to set
      */
@@ -133,8 +197,25 @@ public class MethodData
     }
 
 
+    /**
+     * @return the line number of the method as parsed so far, without recovering it.
+     */
+    int getParsedLineNumber()
+    {
+        return line;
+    }
+
+
+    /**
+     * @return the line number of the method, the line numbers are recovered first
+     *         if the owner class has been parsed without its method bodies.
+     */
     public int getLineNumber()
     {
+        if (getOwner() != null)
+        {
+            getOwner().resolveLineNumbers();
+        }
         return line;
     }
 
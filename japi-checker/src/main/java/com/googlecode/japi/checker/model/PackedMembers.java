@@ -0,0 +1,190 @@
+/*
+ * Copyright 2012 William Bernardet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.japi.checker.model;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The methods and fields of a class stored column by column, one array per property
+ * instead of one object per member. The columns which would only hold null or zero values
+ * are not allocated. The member objects are rebuilt by {@link #unpackMethods(ClassData)}
+ * and {@link #unpackFields(ClassData)}.
+ */
+final class PackedMembers {
+    private final int[] methodAccess;
+    private final String[] methodNames;
+    private final String[] methodDescriptors;
+    private final String[] methodSignatures;
+    private final String[][] methodExceptions;
+    private final int[] methodLines;
+    private final AnnotationData[][] methodAnnotations;
+    private final int[] fieldAccess;
+    private final String[] fieldNames;
+    private final String[] fieldDescriptors;
+    private final String[] fieldSignatures;
+    private final Object[] fieldValues;
+    private final AnnotationData[][] fieldAnnotations;
+
+    PackedMembers(List<MethodData> methods, List<FieldData> fields) {
+        int count = methods.size();
+        methodAccess = new int[count];
+        methodNames = new String[count];
+        methodDescriptors = new String[count];
+        String[] signatures = new String[count];
+        String[][] exceptions = new String[count][];
+        int[] lines = new int[count];
+        AnnotationData[][] annotations = new AnnotationData[count][];
+        boolean hasSignatures = false;
+        boolean hasExceptions = false;
+        boolean hasLines = false;
+        boolean hasAnnotations = false;
+        for (int i = 0; i < count; i++) {
+            MethodData method = methods.get(i);
+            methodAccess[i] = method.getAccess();
+            methodNames[i] = method.getName();
+            methodDescriptors[i] = method.getDescriptor();
+            signatures[i] = method.getSignature();
+            hasSignatures |= signatures[i] != null;
+            if (!method.getExceptions().isEmpty()) {
+                exceptions[i] = method.getExceptions().toArray(new String[method.getExceptions().size()]);
+                hasExceptions = true;
+            }
+            lines[i] = method.getParsedLineNumber();
+            hasLines |= lines[i] != 0;
+            annotations[i] = toArray(method.getAnnotations());
+            hasAnnotations |= annotations[i] != null;
+        }
+        methodSignatures = hasSignatures ? signatures : null;
+        methodExceptions = hasExceptions ? exceptions : null;
+        methodLines = hasLines ? lines : null;
+        methodAnnotations = hasAnnotations ? annotations : null;
+
+        count = fields.size();
+        fieldAccess = new int[count];
+        fieldNames = new String[count];
+        fieldDescriptors = new String[count];
+        signatures = new String[count];
+        Object[] values = new Object[count];
+        annotations = new AnnotationData[count][];
+        hasSignatures = false;
+        boolean hasValues = false;
+        hasAnnotations = false;
+        for (int i = 0; i < count; i++) {
+            FieldData field = fields.get(i);
+            fieldAccess[i] = field.getAccess();
+            fieldNames[i] = field.getName();
+            fieldDescriptors[i] = field.getDescriptor();
+            signatures[i] = field.getSignature();
+            hasSignatures |= signatures[i] != null;
+            values[i] = field.getValue();
+            hasValues |= values[i] != null;
+            annotations[i] = toArray(field.getAnnotations());
+            hasAnnotations |= annotations[i] != null;
+        }
+        fieldSignatures = hasSignatures ? signatures : null;
+        fieldValues = hasValues ? values : null;
+        fieldAnnotations = hasAnnotations ? annotations : null;
+    }
+
+    /**
+     * Write the API of the fields, the same as {@link ApiDigest#writeItems(DataOutput, List)} does
+     * for the unpacked fields.
+     */
+    void writeFieldsApi(DataOutput out) throws IOException {
+        Integer[] order = ApiDigest.sortMembers(fieldNames, fieldDescriptors);
+        out.writeInt(order.length);
+        for (int i : order) {
+            JavaItem.writeApi(out, FieldData.class.getSimpleName(), fieldNames[i], fieldAccess[i],
+                    toList(fieldAnnotations, i));
+            FieldData.writeApi(out, fieldDescriptors[i], get(fieldSignatures, i), get(fieldValues, i));
+        }
+    }
+
+    /**
+     * Write the API of the methods, the same as {@link ApiDigest#writeItems(DataOutput, List)} does
+     * for the unpacked methods.
+     */
+    void writeMethodsApi(DataOutput out) throws IOException {
+        Integer[] order = ApiDigest.sortMembers(methodNames, methodDescriptors);
+        out.writeInt(order.length);
+        for (int i : order) {
+            JavaItem.writeApi(out, MethodData.class.getSimpleName(), methodNames[i], methodAccess[i],
+                    toList(methodAnnotations, i));
+            String[] exceptions = get(methodExceptions, i);
+            MethodData.writeApi(out, methodDescriptors[i], get(methodSignatures, i),
+                    exceptions == null ? Collections.<String>emptyList() : Arrays.asList(exceptions));
+        }
+    }
+
+    private static List<AnnotationData> toList(AnnotationData[][] column, int i) {
+        AnnotationData[] annotations = get(column, i);
+        return annotations == null ? Collections.<AnnotationData>emptyList() : Arrays.asList(annotations);
+    }
+
+    private static AnnotationData[] toArray(List<AnnotationData> annotations) {
+        return annotations.isEmpty() ? null : annotations.toArray(new AnnotationData[annotations.size()]);
+    }
+
+    private static <T> T get(T[] column, int i) {
+        return column == null ? null : column[i];
+    }
+
+    private static void addAnnotations(JavaItem item, AnnotationData[][] column, int i) {
+        if (column != null && column[i] != null) {
+            for (AnnotationData annotation : column[i]) {
+                item.add(annotation);
+            }
+        }
+    }
+
+    /**
+     * @param owner the class the methods belong to.
+     * @return new objects for the packed methods, in their original order.
+     */
+    List<MethodData> unpackMethods(ClassData owner) {
+        List<MethodData> methods = new ArrayList<MethodData>(methodNames.length);
+        for (int i = 0; i < methodNames.length; i++) {
+            MethodData method = new MethodData(owner.getClassDataLoader(), owner, methodAccess[i], methodNames[i],
+                    methodDescriptors[i], get(methodSignatures, i), get(methodExceptions, i));
+            if (methodLines != null) {
+                method.setLineNumber(methodLines[i]);
+            }
+            addAnnotations(method, methodAnnotations, i);
+            methods.add(method);
+        }
+        return methods;
+    }
+
+    /**
+     * @param owner the class the fields belong to.
+     * @return new objects for the packed fields, in their original order.
+     */
+    List<FieldData> unpackFields(ClassData owner) {
+        List<FieldData> fields = new ArrayList<FieldData>(fieldNames.length);
+        for (int i = 0; i < fieldNames.length; i++) {
+            FieldData field = new FieldData(owner.getClassDataLoader(), owner, fieldAccess[i], fieldNames[i],
+                    fieldDescriptors[i], get(fieldSignatures, i), get(fieldValues, i));
+            addAnnotations(field, fieldAnnotations, i);
+            fields.add(field);
+        }
+        return fields;
+    }
+}
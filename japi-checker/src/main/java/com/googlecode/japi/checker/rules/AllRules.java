@@ -16,15 +16,29 @@
 package com.googlecode.japi.checker.rules;
 
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 
+import com.googlecode.japi.checker.AnnotationAwareRule;
+import com.googlecode.japi.checker.ContextualRule;
+import com.googlecode.japi.checker.ItemKind;
 import com.googlecode.japi.checker.Reporter;
 import com.googlecode.japi.checker.Rule;
+import com.googlecode.japi.checker.RuleContext;
+import com.googlecode.japi.checker.RuleSet;
+import com.googlecode.japi.checker.TypedRule;
 import com.googlecode.japi.checker.model.JavaItem;
 
-public class AllRules implements Rule {
+/**
+ * All the rules, each pair of items is only passed to the rules checking its kind.
+ * Subclasses may change the {@link #rules} in their constructor, they must not change
+ * once the rule is in use.
+ */
+public class AllRules implements TypedRule, AnnotationAwareRule, ContextualRule {
 
     protected List<Rule> rules = new ArrayList<Rule>();
+    private volatile RuleSet ruleSet;
 
     public AllRules() {
         rules.add(new CheckChangeOfScope());
@@ -47,9 +61,44 @@ public class AllRules implements Rule {
     @Override
     public void checkBackwardCompatibility(Reporter reporter,
             JavaItem reference, JavaItem newItem) {
-        for (Rule rule : rules) {
-            rule.checkBackwardCompatibility(reporter, reference, newItem);
+        getRuleSet().checkBackwardCompatibility(reporter, reference, newItem);
+    }
+
+    @Override
+    public void begin(RuleContext context) {
+        getRuleSet().begin(context);
+    }
+
+    @Override
+    public void checkBackwardCompatibility(Reporter reporter, RuleContext context,
+            JavaItem reference, JavaItem newItem) {
+        getRuleSet().checkBackwardCompatibility(reporter, context, reference, newItem);
+    }
+
+    @Override
+    public Set<ItemKind> getItemKinds() {
+        Set<ItemKind> kinds = EnumSet.noneOf(ItemKind.class);
+        for (ItemKind kind : ItemKind.values()) {
+            if (!getRuleSet().isEmpty(kind)) {
+                kinds.add(kind);
+            }
+        }
+        return kinds;
+    }
+
+    @Override
+    public Set<String> getAnnotationDescriptors() {
+        return getRuleSet().getAnnotationDescriptors();
+    }
+
+    private RuleSet getRuleSet() {
+        // built on first use, as subclasses change the rules after this constructor.
+        RuleSet result = ruleSet;
+        if (result == null) {
+            result = new RuleSet(rules);
+            ruleSet = result;
         }
+        return result;
     }
 
 
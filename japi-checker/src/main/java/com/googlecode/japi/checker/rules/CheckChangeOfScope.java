@@ -15,15 +15,21 @@
  */
 package com.googlecode.japi.checker.rules;
 
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+import com.googlecode.japi.checker.AnnotationAwareRule;
 import com.googlecode.japi.checker.Reporter;
 import com.googlecode.japi.checker.Scope;
 import com.googlecode.japi.checker.Reporter.Report;
-import com.googlecode.japi.checker.Rule;
+import com.googlecode.japi.checker.ItemKind;
+import com.googlecode.japi.checker.TypedRule;
 import com.googlecode.japi.checker.Severity;
 import com.googlecode.japi.checker.model.ClassData;
 import com.googlecode.japi.checker.model.JavaItem;
 
-public class CheckChangeOfScope implements Rule {
+public class CheckChangeOfScope implements TypedRule, AnnotationAwareRule {
 
     @Override
     public void checkBackwardCompatibility(Reporter reporter,
@@ -49,4 +55,13 @@ public class CheckChangeOfScope implements Rule {
         return item.getOwner();
     }
 
+    @Override
+    public Set<ItemKind> getItemKinds() {
+        return EnumSet.allOf(ItemKind.class);
+    }
+
+    @Override
+    public Set<String> getAnnotationDescriptors() {
+        return Collections.emptySet();
+    }
 }
@@ -15,14 +15,20 @@
  */
 package com.googlecode.japi.checker.rules;
 
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+import com.googlecode.japi.checker.AnnotationAwareRule;
 import com.googlecode.japi.checker.Reporter;
-import com.googlecode.japi.checker.Rule;
+import com.googlecode.japi.checker.ItemKind;
+import com.googlecode.japi.checker.TypedRule;
 import com.googlecode.japi.checker.Severity;
 import com.googlecode.japi.checker.Reporter.Report;
 import com.googlecode.japi.checker.model.ClassData;
 import com.googlecode.japi.checker.model.JavaItem;
 
-public class CheckClassVersion implements Rule {
+public class CheckClassVersion implements TypedRule, AnnotationAwareRule {
 
     @Override
     public void checkBackwardCompatibility(Reporter reporter,
@@ -35,4 +41,13 @@ public class CheckClassVersion implements Rule {
         }
     }
 
+    @Override
+    public Set<ItemKind> getItemKinds() {
+        return EnumSet.of(ItemKind.CLASS);
+    }
+
+    @Override
+    public Set<String> getAnnotationDescriptors() {
+        return Collections.emptySet();
+    }
 }
@@ -15,14 +15,20 @@
  */
 package com.googlecode.japi.checker.rules;
 
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+import com.googlecode.japi.checker.AnnotationAwareRule;
 import com.googlecode.japi.checker.Reporter;
 import com.googlecode.japi.checker.Severity;
 import com.googlecode.japi.checker.Reporter.Report;
 import com.googlecode.japi.checker.model.FieldData;
 import com.googlecode.japi.checker.model.JavaItem;
-import com.googlecode.japi.checker.Rule;
+import com.googlecode.japi.checker.ItemKind;
+import com.googlecode.japi.checker.TypedRule;
 
-public class CheckFieldChangeToTransient implements Rule {
+public class CheckFieldChangeToTransient implements TypedRule, AnnotationAwareRule {
 
     @Override
     public void checkBackwardCompatibility(Reporter reporter,
@@ -37,4 +43,13 @@ public class CheckFieldChangeToTransient implements Rule {
         }
     }
 
+    @Override
+    public Set<ItemKind> getItemKinds() {
+        return EnumSet.of(ItemKind.FIELD);
+    }
+
+    @Override
+    public Set<String> getAnnotationDescriptors() {
+        return Collections.emptySet();
+    }
 }
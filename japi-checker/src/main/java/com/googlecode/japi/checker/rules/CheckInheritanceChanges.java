@@ -15,16 +15,20 @@
  */
 package com.googlecode.japi.checker.rules;
 
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+import com.googlecode.japi.checker.AnnotationAwareRule;
 import com.googlecode.japi.checker.Reporter;
-import com.googlecode.japi.checker.Rule;
+import com.googlecode.japi.checker.ItemKind;
+import com.googlecode.japi.checker.TypedRule;
 import com.googlecode.japi.checker.Severity;
 import com.googlecode.japi.checker.Reporter.Report;
 import com.googlecode.japi.checker.model.ClassData;
 import com.googlecode.japi.checker.model.JavaItem;
 
-public class CheckInheritanceChanges implements Rule {
-
-    private static final String JAVA_LANG_OBJECT_NAME = "java/lang/Object";
+public class CheckInheritanceChanges implements TypedRule, AnnotationAwareRule {
 
     @Override
     public void checkBackwardCompatibility(Reporter reporter,
@@ -47,42 +51,27 @@ public class CheckInheritanceChanges implements Rule {
 
     private boolean doesExtend(ClassData newItem, String superClassName)
     {
-        if (newItem == null)
-        {
-            return false;
-        }
-        else if (newItem.getSuperName().equals(superClassName))
+        if (newItem.getSuperName() != null && newItem.getSuperName().equals(superClassName))
         {
             return true;
         }
-        else if (!newItem.getSuperName().equals(JAVA_LANG_OBJECT_NAME))
-        {
-            return doesExtend(newItem.getClassDataLoader().fromName(newItem.getSuperName()), superClassName);
-        }
-        else
-        {
-            return false;
-        }
+        return !newItem.getName().equals(superClassName)
+            && newItem.getClassDataLoader().getTypeHierarchy().isSubclass(newItem.getName(), superClassName);
     }
 
     private boolean hasInterface(ClassData newItem, String ifaceRef)
     {
-        if (newItem == null)
-        {
-            return false;
-        }
-        else if (newItem.getInterfaces().contains(ifaceRef))
-        {
-            return true;
-        }
-        else if (!newItem.getSuperName().equals(JAVA_LANG_OBJECT_NAME))
-        {
-            return hasInterface(newItem.getClassDataLoader().fromName(newItem.getSuperName()), ifaceRef);
-        }
-        else
-        {
-            return false;
-        }
+        return newItem.getInterfaces().contains(ifaceRef)
+            || newItem.getClassDataLoader().getTypeHierarchy().isSubtype(newItem.getName(), ifaceRef);
     }
 
+    @Override
+    public Set<ItemKind> getItemKinds() {
+        return EnumSet.of(ItemKind.CLASS);
+    }
+
+    @Override
+    public Set<String> getAnnotationDescriptors() {
+        return Collections.emptySet();
+    }
 }
@@ -15,17 +15,27 @@
  */
 package com.googlecode.japi.checker.rules;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Set;
+
+import com.googlecode.japi.checker.AnnotationAwareRule;
 import com.googlecode.japi.checker.Reporter;
 import com.googlecode.japi.checker.Scope;
 import com.googlecode.japi.checker.Reporter.Report;
-import com.googlecode.japi.checker.Rule;
+import com.googlecode.japi.checker.ItemKind;
+import com.googlecode.japi.checker.TypedRule;
 import com.googlecode.japi.checker.Severity;
 import com.googlecode.japi.checker.model.JavaItem;
 import com.googlecode.japi.checker.model.MethodData;
 
-public class CheckJSR305 implements Rule {
+public class CheckJSR305 implements TypedRule, AnnotationAwareRule {
     private static final String JSR305_NONNULL_DESC = "Ljavax/annotation/Nonnull;";
     private static final String JSR305_NULLABLE_DESC = "Ljavax/annotation/Nullable;";
+    private static final Set<String> ANNOTATIONS = Collections.unmodifiableSet(
+            new HashSet<String>(Arrays.asList(JSR305_NONNULL_DESC, JSR305_NULLABLE_DESC)));
     
     
     @Override
@@ -43,4 +53,13 @@ public class CheckJSR305 implements Rule {
         }
     }
 
+    @Override
+    public Set<ItemKind> getItemKinds() {
+        return EnumSet.of(ItemKind.METHOD);
+    }
+
+    @Override
+    public Set<String> getAnnotationDescriptors() {
+        return ANNOTATIONS;
+    }
 }
@@ -15,11 +15,16 @@
  */
 package com.googlecode.japi.checker.rules;
 
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 
+import com.googlecode.japi.checker.AnnotationAwareRule;
 import com.googlecode.japi.checker.ClassDataLoader;
 import com.googlecode.japi.checker.Reporter;
-import com.googlecode.japi.checker.Rule;
+import com.googlecode.japi.checker.ItemKind;
+import com.googlecode.japi.checker.TypedRule;
 import com.googlecode.japi.checker.RuleHelpers;
 import com.googlecode.japi.checker.Scope;
 import com.googlecode.japi.checker.Severity;
@@ -33,7 +38,7 @@ import com.googlecode.japi.checker.model.MethodData;
  * The check is not occurring for private scope.
  * '
  */
-public class CheckMethodExceptions implements Rule {
+public class CheckMethodExceptions implements TypedRule, AnnotationAwareRule {
 
 
     /**
@@ -89,5 +94,14 @@ public class CheckMethodExceptions implements Rule {
         } 
         return false;
     }
-    
+
+    @Override
+    public Set<ItemKind> getItemKinds() {
+        return EnumSet.of(ItemKind.METHOD);
+    }
+
+    @Override
+    public Set<String> getAnnotationDescriptors() {
+        return Collections.emptySet();
+    }
 }
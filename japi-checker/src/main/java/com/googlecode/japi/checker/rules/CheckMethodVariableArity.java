@@ -15,10 +15,16 @@
  */
 package com.googlecode.japi.checker.rules;
 
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+import com.googlecode.japi.checker.AnnotationAwareRule;
 import com.googlecode.japi.checker.Reporter;
 import com.googlecode.japi.checker.Scope;
 import com.googlecode.japi.checker.Reporter.Report;
-import com.googlecode.japi.checker.Rule;
+import com.googlecode.japi.checker.ItemKind;
+import com.googlecode.japi.checker.TypedRule;
 import com.googlecode.japi.checker.Severity;
 import com.googlecode.japi.checker.model.JavaItem;
 import com.googlecode.japi.checker.model.MethodData;
@@ -45,7 +51,7 @@ import com.googlecode.japi.checker.model.MethodData;
  * @author Tomas Rohovsky
  *
  */
-public class CheckMethodVariableArity implements Rule {
+public class CheckMethodVariableArity implements TypedRule, AnnotationAwareRule {
 	
 	@Override
     public void checkBackwardCompatibility(Reporter reporter, JavaItem reference, JavaItem newItem) {
@@ -57,4 +63,14 @@ public class CheckMethodVariableArity implements Rule {
 					+ " has been changed from variable arity to array", newItem, reference));
         }
     }
+
+    @Override
+    public Set<ItemKind> getItemKinds() {
+        return EnumSet.of(ItemKind.METHOD);
+    }
+
+    @Override
+    public Set<String> getAnnotationDescriptors() {
+        return Collections.emptySet();
+    }
 }
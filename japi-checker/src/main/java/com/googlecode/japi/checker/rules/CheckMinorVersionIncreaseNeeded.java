@@ -8,11 +8,18 @@
 package com.googlecode.japi.checker.rules;
 
 
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.Set;
 
+import com.googlecode.japi.checker.Accumulator;
+import com.googlecode.japi.checker.AnnotationAwareRule;
+import com.googlecode.japi.checker.ContextualRule;
 import com.googlecode.japi.checker.Reporter;
-import com.googlecode.japi.checker.Rule;
+import com.googlecode.japi.checker.ItemKind;
+import com.googlecode.japi.checker.RuleContext;
+import com.googlecode.japi.checker.TypedRule;
 import com.googlecode.japi.checker.Scope;
 import com.googlecode.japi.checker.Severity;
 import com.googlecode.japi.checker.Reporter.Report;
@@ -23,15 +30,54 @@ import com.googlecode.japi.checker.model.MethodData;
 
 
 public class CheckMinorVersionIncreaseNeeded
-    implements Rule
+    implements TypedRule, AnnotationAwareRule, ContextualRule
 {
-    private boolean minorVersionIncreased;
+    /**
+     * Tells if public members have been added to the public classes, which warrants a minor version increase.
+     */
+    public static class Result
+        implements Accumulator<Result>
+    {
+        private boolean versionIncreaseNecessary;
+
 
-    private boolean versionIncreaseNecessary;
+        public boolean isVersionIncreaseNecessary()
+        {
+            return versionIncreaseNecessary;
+        }
+
+
+        @Override
+        public void merge(Result other)
+        {
+            versionIncreaseNecessary |= other.versionIncreaseNecessary;
+        }
+    }
 
 
     @Override
     public void checkBackwardCompatibility(Reporter reporter, JavaItem reference, JavaItem newItem)
+    {
+        check(reporter, new RuleContext(false), reference, newItem);
+    }
+
+
+    @Override
+    public void begin(RuleContext context)
+    {
+        // the result tells whether the rule has been used.
+        context.getAccumulator(Result.class);
+    }
+
+
+    @Override
+    public void checkBackwardCompatibility(Reporter reporter, RuleContext context, JavaItem reference, JavaItem newItem)
+    {
+        check(reporter, context, reference, newItem);
+    }
+
+
+    private void check(Reporter reporter, RuleContext context, JavaItem reference, JavaItem newItem)
     {
         if (reference instanceof ClassData && Scope.PUBLIC.equals(reference.getVisibility()))
         {
@@ -39,6 +85,7 @@ public class CheckMinorVersionIncreaseNeeded
             ClassData newCD = (ClassData)newItem;
             Set<MethodData> oldMethods = new HashSet<MethodData>(oldCD.getMethods());
             Set<FieldData> oldFields = new HashSet<FieldData>(oldCD.getFields());
+            boolean report = !context.isNewMinorVersion();
 
             for (MethodData md : newCD.getMethods())
             {
@@ -46,8 +93,8 @@ public class CheckMinorVersionIncreaseNeeded
                 {
                     if (!oldMethods.contains(md))
                     {
-                        versionIncreaseNecessary = true;
-                        if (!minorVersionIncreased)
+                        context.getAccumulator(Result.class).versionIncreaseNecessary = true;
+                        if (report)
                         {
                             reporter.report(new Report(Severity.ERROR, "Adding the new public method " + md.toString() + " warrants a minor version increase!", reference, newItem));
                         }
@@ -61,8 +108,8 @@ public class CheckMinorVersionIncreaseNeeded
                 {
                     if (!oldFields.contains(fd))
                     {
-                        versionIncreaseNecessary = true;
-                        if (!minorVersionIncreased)
+                        context.getAccumulator(Result.class).versionIncreaseNecessary = true;
+                        if (report)
                         {
                             reporter.report(new Report(Severity.ERROR, "Adding the new public field " + fd.toString() + " warrants a minor version increase!", reference, newItem));
                         }
@@ -73,14 +120,15 @@ public class CheckMinorVersionIncreaseNeeded
     }
 
 
-    public void setMinorVersionIncreased(boolean minorVersionIncreased)
+    @Override
+    public Set<ItemKind> getItemKinds()
     {
-        this.minorVersionIncreased = minorVersionIncreased;
+        return EnumSet.of(ItemKind.CLASS);
     }
 
-
-    public boolean isVersionIncreaseNecessary()
+    @Override
+    public Set<String> getAnnotationDescriptors()
     {
-        return versionIncreaseNecessary;
+        return Collections.emptySet();
     }
 }
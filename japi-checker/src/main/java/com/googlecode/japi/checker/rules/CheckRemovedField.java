@@ -15,16 +15,23 @@
  */
 package com.googlecode.japi.checker.rules;
 
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+import com.googlecode.japi.checker.AnnotationAwareRule;
 import com.googlecode.japi.checker.Reporter;
-import com.googlecode.japi.checker.Rule;
+import com.googlecode.japi.checker.ItemKind;
+import com.googlecode.japi.checker.TypedRule;
 import com.googlecode.japi.checker.Scope;
 import com.googlecode.japi.checker.Reporter.Report;
 import com.googlecode.japi.checker.Severity;
 import com.googlecode.japi.checker.model.ClassData;
 import com.googlecode.japi.checker.model.FieldData;
 import com.googlecode.japi.checker.model.JavaItem;
+import com.googlecode.japi.checker.model.MemberTable;
 
-public class CheckRemovedField implements Rule {
+public class CheckRemovedField implements TypedRule, AnnotationAwareRule {
 
     @Override
     public void checkBackwardCompatibility(Reporter reporter,
@@ -33,20 +40,26 @@ public class CheckRemovedField implements Rule {
             ClassData referenceClass = (ClassData)reference;
             ClassData newClass = (ClassData)newItem;
             for (FieldData oldField : referenceClass.getFields()) {
-                boolean found = false;
-                for (FieldData newField: newClass.getFields()) {
-                    if (oldField.isSame(newField)) {
-                        found = true;
-                        break;
-                    }
-                }
+                boolean found = newClass.getField(oldField.getName()) != null;
                 if (!found && oldField.getVisibility().isMoreVisibleThan(Scope.NO_SCOPE)) {
-                	reporter.report(new Report(Severity.ERROR, "Could not find " + oldField + " in newer version.", reference, newItem));
+                    // the field might have been pulled up to a super class or interface, the field
+                    // rules then check the inherited field.
+                    MemberTable members = newClass.getClassDataLoader().getTypeHierarchy().getMembers(newClass.getName());
+                    if (members == null || members.getField(oldField) == null) {
+                        reporter.report(new Report(Severity.ERROR, "Could not find " + oldField + " in newer version.", reference, newItem));
+                    }
                 }
             }
         }
     }
 
-    
-    
+    @Override
+    public Set<ItemKind> getItemKinds() {
+        return EnumSet.of(ItemKind.CLASS);
+    }
+
+    @Override
+    public Set<String> getAnnotationDescriptors() {
+        return Collections.emptySet();
+    }
 }
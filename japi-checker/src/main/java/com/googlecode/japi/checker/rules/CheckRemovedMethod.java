@@ -15,16 +15,23 @@
  */
 package com.googlecode.japi.checker.rules;
 
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+import com.googlecode.japi.checker.AnnotationAwareRule;
 import com.googlecode.japi.checker.Reporter;
 import com.googlecode.japi.checker.Reporter.Report;
-import com.googlecode.japi.checker.Rule;
+import com.googlecode.japi.checker.ItemKind;
+import com.googlecode.japi.checker.TypedRule;
 import com.googlecode.japi.checker.Scope;
 import com.googlecode.japi.checker.Severity;
 import com.googlecode.japi.checker.model.ClassData;
 import com.googlecode.japi.checker.model.JavaItem;
+import com.googlecode.japi.checker.model.MemberTable;
 import com.googlecode.japi.checker.model.MethodData;
 
-public class CheckRemovedMethod implements Rule {
+public class CheckRemovedMethod implements TypedRule, AnnotationAwareRule {
 
     @Override
     public void checkBackwardCompatibility(Reporter reporter,
@@ -33,34 +40,12 @@ public class CheckRemovedMethod implements Rule {
             ClassData referenceClass = (ClassData)reference;
             ClassData newClass = (ClassData)newItem;
             for (MethodData oldMethod : referenceClass.getMethods()) {
-                boolean found = false;
-                for (MethodData newMethod: newClass.getMethods()) {
-                    if (oldMethod.isSame(newMethod)) {
-                        found = true;
-                        break;
-                    }
-                }
+                boolean found = newClass.getMethod(oldMethod) != null;
                 if (!found && oldMethod.getVisibility().isMoreVisibleThan(Scope.NO_SCOPE)) {
-                    ClassData superClass = newClass.getClassDataLoader().fromName(newClass.getSuperName());
-                    boolean foundInSuperclass = false;
-                    while (superClass != null)
-                    {
-                        for (MethodData smd : superClass.getMethods())
-                        {
-                            if (smd.isSame(oldMethod))
-                            {
-                                foundInSuperclass = true;
-                                break;
-                            }
-                        }
-
-                        if (foundInSuperclass)
-                        {
-                            break;
-                        }
-                        superClass = newClass.getClassDataLoader().fromName(superClass.getSuperName());
-                    }
-
+                    // the method might have been pulled up to a super class or interface, the method
+                    // rules then check the inherited method.
+                    MemberTable members = newClass.getClassDataLoader().getTypeHierarchy().getMembers(newClass.getName());
+                    boolean foundInSuperclass = members != null && members.getMethod(oldMethod) != null;
                     if (!foundInSuperclass)
                     {
                         reporter.report(new Report(Severity.ERROR, "Could not find " + oldMethod + " in newer version.", reference, newItem));
@@ -70,4 +55,13 @@ public class CheckRemovedMethod implements Rule {
         }
     }
 
+    @Override
+    public Set<ItemKind> getItemKinds() {
+        return EnumSet.of(ItemKind.CLASS);
+    }
+
+    @Override
+    public Set<String> getAnnotationDescriptors() {
+        return Collections.emptySet();
+    }
 }
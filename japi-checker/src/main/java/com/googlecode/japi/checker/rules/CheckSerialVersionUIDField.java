@@ -15,8 +15,14 @@
  */
 package com.googlecode.japi.checker.rules;
 
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+import com.googlecode.japi.checker.AnnotationAwareRule;
 import com.googlecode.japi.checker.Reporter;
-import com.googlecode.japi.checker.Rule;
+import com.googlecode.japi.checker.ItemKind;
+import com.googlecode.japi.checker.TypedRule;
 import com.googlecode.japi.checker.Severity;
 import com.googlecode.japi.checker.Reporter.Report;
 import com.googlecode.japi.checker.model.FieldData;
@@ -27,7 +33,7 @@ import com.googlecode.japi.checker.model.JavaItem;
  * This field is used by the serialized interface to identify the class
  * so changing its value is not a good idea from BC prospective. 
  */
-public class CheckSerialVersionUIDField implements Rule {
+public class CheckSerialVersionUIDField implements TypedRule, AnnotationAwareRule {
 
     @Override
     public void checkBackwardCompatibility(Reporter reporter,
@@ -46,7 +52,6 @@ public class CheckSerialVersionUIDField implements Rule {
                     reporter.report(new Report(Severity.ERROR, "The type for field serialVersionUID is invalid, it must be a long.", reference, newItem));
                     return;
                 }
-                System.out.println(referenceField.getValue().getClass().getName());
                 if (((Long)referenceField.getValue()).longValue() != ((Long)newField.getValue()).longValue()) {
                     reporter.report(new Report(Severity.ERROR, "The value of the serialVersionUID" +
                             " field has changed from " + toHex(referenceField) + " to "  + toHex(newField) + ".", reference, newItem));
@@ -59,4 +64,13 @@ public class CheckSerialVersionUIDField implements Rule {
         return String.format("0x%x", ((Long)field.getValue()).longValue());
     }
 
+    @Override
+    public Set<ItemKind> getItemKinds() {
+        return EnumSet.of(ItemKind.FIELD);
+    }
+
+    @Override
+    public Set<String> getAnnotationDescriptors() {
+        return Collections.emptySet();
+    }
 }
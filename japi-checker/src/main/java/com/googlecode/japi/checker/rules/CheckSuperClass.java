@@ -15,10 +15,16 @@
  */
 package com.googlecode.japi.checker.rules;
 
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+import com.googlecode.japi.checker.AnnotationAwareRule;
 import com.googlecode.japi.checker.Reporter;
 import com.googlecode.japi.checker.Severity;
 import com.googlecode.japi.checker.Reporter.Report;
-import com.googlecode.japi.checker.Rule;
+import com.googlecode.japi.checker.ItemKind;
+import com.googlecode.japi.checker.TypedRule;
 import com.googlecode.japi.checker.RuleHelpers;
 import com.googlecode.japi.checker.Scope;
 import com.googlecode.japi.checker.model.ClassData;
@@ -37,7 +43,7 @@ import com.googlecode.japi.checker.model.JavaItem;
  * inherits from B or A in the new version. 
  *
  */
-public class CheckSuperClass implements Rule {
+public class CheckSuperClass implements TypedRule, AnnotationAwareRule {
     
     @Override
     public void checkBackwardCompatibility(Reporter reporter,
@@ -52,4 +58,14 @@ public class CheckSuperClass implements Rule {
             }
         }
     }
+
+    @Override
+    public Set<ItemKind> getItemKinds() {
+        return EnumSet.of(ItemKind.CLASS);
+    }
+
+    @Override
+    public Set<String> getAnnotationDescriptors() {
+        return Collections.emptySet();
+    }
 }
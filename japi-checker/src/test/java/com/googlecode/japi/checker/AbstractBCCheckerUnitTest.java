@@ -21,6 +21,7 @@ import static org.junit.Assert.fail;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.logging.Handler;
 import java.util.logging.LogRecord;
@@ -74,6 +75,14 @@ public class AbstractBCCheckerUnitTest {
         assertNotNull("The newVersion library is not found.", newVersion);
     }
     
+    public File getReference() {
+        return reference;
+    }
+
+    public File getNewVersion() {
+        return newVersion;
+    }
+
     @After
     public void tearDown() {
         Logger.getLogger(ClassDumper.class.getName()).removeHandler(handler);
@@ -92,7 +101,36 @@ public class AbstractBCCheckerUnitTest {
      * @throws IOException
      */
     public BasicReporter check(Class<? extends Rule> clazz, String ... includes) throws InstantiationException, IllegalAccessException, IOException {
-        BCChecker checker = new BCChecker();
+        return check(new BCChecker(), clazz, includes);
+    }
+
+    /**
+     * Same as {@link #check(Class, String...)} but using a preconfigured checker.
+     * @param checker
+     * @param clazz
+     * @param includes
+     * @return
+     * @throws InstantiationException
+     * @throws IllegalAccessException
+     * @throws IOException
+     */
+    public BasicReporter check(BCChecker checker, Class<? extends Rule> clazz, String ... includes) throws InstantiationException, IllegalAccessException, IOException {
+        return check(checker, reference, newVersion, clazz, includes);
+    }
+
+    /**
+     * Same as {@link #check(BCChecker, Class, String...)} but on custom reference and new version.
+     * @param checker
+     * @param reference
+     * @param newVersion
+     * @param clazz
+     * @param includes
+     * @return
+     * @throws InstantiationException
+     * @throws IllegalAccessException
+     * @throws IOException
+     */
+    public BasicReporter check(BCChecker checker, File reference, File newVersion, Class<? extends Rule> clazz, String ... includes) throws InstantiationException, IllegalAccessException, IOException {
         BasicReporter reporter = new BasicReporter();
         List<Rule> rules = new ArrayList<Rule>();
         if (clazz != null) {
@@ -129,6 +167,33 @@ public class AbstractBCCheckerUnitTest {
             return messages;
         }
 
+        /**
+         * @return all the messages in a stable order, to compare runs with each other.
+         */
+        public List<String> getSortedMessages() {
+            List<String> result = new ArrayList<String>();
+            for (Report message : messages) {
+                result.add(message.getSeverity() + ": " + message.getMessage());
+            }
+            Collections.sort(result);
+            return result;
+        }
+
+        /**
+         * @param severity the severity to filter on.
+         * @return the messages of the given severity in a stable order.
+         */
+        public List<String> getSortedMessages(Severity severity) {
+            List<String> result = new ArrayList<String>();
+            for (Report message : messages) {
+                if (message.getSeverity() == severity) {
+                    result.add(message.getMessage());
+                }
+            }
+            Collections.sort(result);
+            return result;
+        }
+
         public int count(Severity severity) {
             int count = 0;
             for (Report message : messages) {
@@ -15,21 +15,61 @@
  */
 package com.googlecode.japi.checker;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
 
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.objectweb.asm.Opcodes;
 
 import com.googlecode.japi.checker.Severity;
+import com.googlecode.japi.checker.Reporter.Report;
+import com.googlecode.japi.checker.model.AnnotationData;
+import com.googlecode.japi.checker.model.ClassData;
+import com.googlecode.japi.checker.model.FieldData;
+import com.googlecode.japi.checker.model.JavaItem;
+import com.googlecode.japi.checker.model.MethodData;
+import com.googlecode.japi.checker.utils.AntPatternMatcher;
+import com.googlecode.japi.checker.rules.AllRules;
 import com.googlecode.japi.checker.rules.CheckChangeOfScope;
 import com.googlecode.japi.checker.rules.CheckFieldChangeOfType;
 import com.googlecode.japi.checker.rules.CheckFieldChangeToStatic;
 import com.googlecode.japi.checker.rules.CheckFieldChangeToTransient;
 import com.googlecode.japi.checker.rules.CheckInheritanceChanges;
+import com.googlecode.japi.checker.rules.CheckJSR305;
 import com.googlecode.japi.checker.rules.CheckMethodChangedToFinal;
 import com.googlecode.japi.checker.rules.CheckMethodChangedToStatic;
 import com.googlecode.japi.checker.rules.CheckMethodExceptions;
 import com.googlecode.japi.checker.rules.CheckMethodVariableArity;
+import com.googlecode.japi.checker.rules.CheckMinorVersionIncreaseNeeded;
+import com.googlecode.japi.checker.rules.CheckRemovedField;
 import com.googlecode.japi.checker.rules.CheckRemovedMethod;
 import com.googlecode.japi.checker.rules.CheckSerialVersionUIDField;
 import com.googlecode.japi.checker.rules.CheckSuperClass;
@@ -39,6 +79,9 @@ import com.googlecode.japi.checker.rules.ClassChangedToInterface;
 import com.googlecode.japi.checker.rules.InterfaceChangedToClass;
 
 public class TestBCChecker extends AbstractBCCheckerUnitTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
     
     @Test
     public void testBCCheckerInclude() throws InstantiationException, IllegalAccessException, IOException {
@@ -49,6 +92,743 @@ public class TestBCChecker extends AbstractBCCheckerUnitTest {
     }
 
     
+    @Test
+    public void testParallelReading() throws InstantiationException, IllegalAccessException, IOException {
+        BCChecker checker = new BCChecker();
+        checker.setParallelism(4);
+        BasicReporter parallel = check(checker, AllRules.class);
+        BasicReporter sequential = check(AllRules.class);
+        assertEquals(sequential.getSortedMessages(), parallel.getSortedMessages());
+    }
+
+    @Test
+    public void testMemoryMappedReading() throws InstantiationException, IllegalAccessException, IOException {
+        BCChecker checker = new BCChecker();
+        checker.setMemoryMapped(true);
+        checker.setParallelism(2);
+        BasicReporter mapped = check(checker, AllRules.class);
+        BasicReporter regular = check(AllRules.class);
+        assertEquals(regular.getSortedMessages(), mapped.getSortedMessages());
+    }
+
+    @Test
+    public void testParallelDirectoryReading() throws InstantiationException, IllegalAccessException, IOException {
+        File reference = explode(getReference(), "reference");
+        File newVersion = explode(getNewVersion(), "new");
+        BCChecker checker = new BCChecker();
+        checker.setParallelism(4);
+        BasicReporter directories = check(checker, reference, newVersion, AllRules.class);
+        BasicReporter jars = check(AllRules.class);
+        // INFO messages mention the paths being read, so only compare the findings.
+        assertEquals(jars.getSortedMessages(Severity.ERROR), directories.getSortedMessages(Severity.ERROR));
+        assertEquals(jars.getSortedMessages(Severity.WARNING), directories.getSortedMessages(Severity.WARNING));
+    }
+
+    @Test
+    public void testSignatureParsing() throws InstantiationException, IllegalAccessException, IOException {
+        BCChecker checker = new BCChecker();
+        checker.setParseMode(ParseMode.SIGNATURES);
+        BasicReporter signatures = check(checker, AllRules.class);
+        BasicReporter full = check(AllRules.class);
+        assertEquals(full.getSortedMessages(), signatures.getSortedMessages());
+        // line numbers are recovered on demand.
+        List<String> lines = getLines(signatures);
+        assertEquals(getLines(full), lines);
+        assertFalse(lines.isEmpty());
+    }
+
+    @Test
+    public void testModelCache() throws InstantiationException, IllegalAccessException, IOException {
+        File cache = tmp.newFolder("cache");
+        BasicReporter uncached = check(AllRules.class);
+        for (int i = 0; i < 2; i++) {
+            BCChecker checker = new BCChecker();
+            checker.setCacheDirectory(cache);
+            BasicReporter cached = check(checker, AllRules.class);
+            assertEquals(uncached.getSortedMessages(), cached.getSortedMessages());
+            assertEquals(getLines(uncached), getLines(cached));
+        }
+        assertEquals(2, cache.list().length);
+
+        // line numbers are still recovered when the cached model skipped the method bodies.
+        for (int i = 0; i < 2; i++) {
+            BCChecker checker = new BCChecker();
+            checker.setCacheDirectory(cache);
+            checker.setParseMode(ParseMode.SIGNATURES);
+            BasicReporter cached = check(checker, AllRules.class);
+            assertEquals(uncached.getSortedMessages(), cached.getSortedMessages());
+            assertEquals(getLines(uncached), getLines(cached));
+        }
+        assertEquals(4, cache.list().length);
+    }
+
+    @Test
+    public void testModelCacheEviction() throws IOException {
+        File cache = tmp.newFolder("cache");
+        BCChecker checker = new BCChecker();
+        checker.setCacheDirectory(cache, 1);
+        BasicReporter reporter = new BasicReporter();
+        checker.setReporter(reporter);
+        checker.checkBacwardCompatibility(getReference(), getNewVersion());
+        // every entry is bigger than the cache, so only the latest entry survives.
+        assertEquals(1, cache.list().length);
+    }
+
+    @Test
+    public void testApiSnapshotAsReference() throws InstantiationException, IllegalAccessException, IOException {
+        File snapshot = new File(tmp.getRoot(), "reference.snapshot");
+        new ApiSnapshotWriter().write(getReference(), snapshot);
+        assertTrue(Utils.isApiSnapshot(snapshot));
+        assertFalse(Utils.isApiSnapshot(getReference()));
+        BasicReporter fromSnapshot = check(new BCChecker(), snapshot, getNewVersion(), AllRules.class);
+        BasicReporter fromJar = check(AllRules.class);
+        assertEquals(fromJar.getSortedMessages(Severity.ERROR), fromSnapshot.getSortedMessages(Severity.ERROR));
+        assertEquals(fromJar.getSortedMessages(Severity.WARNING), fromSnapshot.getSortedMessages(Severity.WARNING));
+    }
+
+    @Test
+    public void testApiSnapshotLookup() throws IOException {
+        File snapshot = new File(tmp.getRoot(), "reference.snapshot");
+        new ApiSnapshotWriter().write(getReference(), snapshot);
+        DefaultClassDataLoader loader = new DefaultClassDataLoader();
+        loader.read(snapshot.toURI());
+        loader.readDependency(getNewVersion().toURI());
+        ClassData clazz = loader.fromName("com/googlecode/japi/checker/tests/ClassToAbstract");
+        // the snapshot comes first on the classpath.
+        assertFalse(clazz.isAbstract());
+        assertSame(clazz, loader.fromName("com/googlecode/japi/checker/tests/ClassToAbstract"));
+        assertEquals(loadFromJar(clazz.getName()).getMethods().size(), clazz.getMethods().size());
+        assertNull(loader.fromName("does/not/Exist"));
+        assertEquals(1, loader.getClasses(snapshot.toURI(), Collections.singletonList(
+                new AntPatternMatcher("**/ClassToAbstract.class")), Collections.<AntPatternMatcher>emptyList()).size());
+    }
+
+    @Test
+    public void testMemberIndex() throws IOException {
+        ClassData clazz = loadFromJar("com/googlecode/japi/checker/tests/PublicScopeFieldTestCases");
+        assertFalse(clazz.getMethods().isEmpty());
+        assertFalse(clazz.getFields().isEmpty());
+        for (MethodData method : clazz.getMethods()) {
+            assertSame(method, clazz.getMethod(method.getName(), method.getDescriptor()));
+            assertSame(method, clazz.getMethod(method));
+        }
+        for (FieldData field : clazz.getFields()) {
+            assertSame(field, clazz.getField(field.getName()));
+        }
+        assertNull(clazz.getMethod("doesNotExist", "()V"));
+        assertNull(clazz.getField("doesNotExist"));
+    }
+
+    @Test
+    public void testAccessFlags() throws IOException {
+        ClassData clazz = loadFromJar("com/googlecode/japi/checker/tests/PublicScopeFieldTestCases");
+        assertEquals(Opcodes.ACC_PUBLIC, clazz.getAccess() & Opcodes.ACC_PUBLIC);
+        for (FieldData field : clazz.getFields()) {
+            assertEquals(JavaItem.toScope(field.getAccess()), field.getVisibility());
+            assertEquals((field.getAccess() & Opcodes.ACC_STATIC) != 0, field.isStatic());
+            assertEquals((field.getAccess() & Opcodes.ACC_FINAL) != 0, field.isFinal());
+            assertSame(clazz.getClassDataLoader(), field.getClassDataLoader());
+            assertTrue(field.getAnnotations().isEmpty());
+        }
+    }
+
+    @Test
+    public void testPackedDependencyMembers() throws IOException {
+        String name = "com/googlecode/japi/checker/tests/PublicScopeFieldTestCases";
+        ClassData expected = loadFromJar(name);
+        DefaultClassDataLoader loader = new DefaultClassDataLoader();
+        loader.setDependencyParseMode(ParseMode.FULL);
+        loader.readDependency(getReference().toURI());
+        ClassData clazz = loader.fromName(name);
+        assertTrue(clazz.isPacked());
+        assertEquals(expected.getSuperName(), clazz.getSuperName());
+        assertTrue(clazz.isPacked());
+        // the digest is computed from the packed members.
+        assertArrayEquals(expected.getApiDigest(), clazz.getApiDigest());
+        assertTrue(clazz.isPacked());
+        assertEquals(expected.getMethods().size(), clazz.getMethods().size());
+        assertFalse(clazz.isPacked());
+        for (MethodData method : expected.getMethods()) {
+            MethodData unpacked = clazz.getMethod(method);
+            assertSame(clazz, unpacked.getOwner());
+            assertEquals(method.getLineNumber(), unpacked.getLineNumber());
+            assertArrayEquals(method.getApiDigest(), unpacked.getApiDigest());
+        }
+        for (FieldData field : expected.getFields()) {
+            assertEquals(field.getValue(), clazz.getField(field.getName()).getValue());
+        }
+    }
+
+    @Test
+    public void testPackedApiDigest() throws IOException {
+        for (File file : Arrays.asList(getReference(), getNewVersion())) {
+            DefaultClassDataLoader unpacked = new DefaultClassDataLoader();
+            unpacked.read(file.toURI());
+            DefaultClassDataLoader packed = new DefaultClassDataLoader();
+            packed.setDependencyParseMode(ParseMode.FULL);
+            packed.readDependency(file.toURI());
+            for (ClassData expected : unpacked.getClasses().values()) {
+                ClassData clazz = packed.fromName(expected.getName());
+                assertArrayEquals(expected.getName(), expected.getApiDigest(), clazz.getApiDigest());
+                assertEquals(!expected.getMethods().isEmpty() || !expected.getFields().isEmpty(), clazz.isPacked());
+            }
+        }
+    }
+
+    private ClassData loadFromJar(String name) throws IOException {
+        DefaultClassDataLoader loader = new DefaultClassDataLoader();
+        loader.read(getReference().toURI());
+        return loader.fromName(name);
+    }
+
+    private static List<String> getLines(BasicReporter reporter) {
+        List<String> result = new ArrayList<String>();
+        for (Report report : reporter.getMessages()) {
+            if (report.getNewItem() instanceof MethodData) {
+                result.add(report.getMessage() + ":" + ((MethodData) report.getNewItem()).getLineNumber());
+            }
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    @Test
+    public void testClasspathOrderShadowing() throws IOException {
+        String name = "com/googlecode/japi/checker/tests/ClassToAbstract";
+        DefaultClassDataLoader loader = new DefaultClassDataLoader();
+        loader.read(getReference().toURI());
+        loader.readDependency(getNewVersion().toURI());
+        assertFalse(loader.fromName(name).isAbstract());
+        assertSame(loader.fromName(name), loader.getClasses().get(name));
+
+        loader = new DefaultClassDataLoader();
+        loader.read(getNewVersion().toURI());
+        loader.readDependency(getReference().toURI());
+        assertTrue(loader.fromName(name).isAbstract());
+        assertNull(loader.fromName("does/not/Exist"));
+    }
+
+    @Test
+    public void testGetClassesIsACopy() throws IOException {
+        String added = "com/googlecode/japi/checker/tests/exceptions/MyNewException";
+        DefaultClassDataLoader loader = new DefaultClassDataLoader();
+        loader.read(getReference().toURI());
+        Map<String, ClassData> classes = loader.getClasses();
+        loader.readDependency(getNewVersion().toURI());
+        assertFalse(classes.containsKey(added));
+        assertNotNull(loader.getClasses().get(added));
+
+        // the lazily indexed dependency classes are part of the loader too.
+        LazyClassDataLoader lazyLoader = new LazyClassDataLoader();
+        lazyLoader.read(getReference().toURI());
+        lazyLoader.readDependency(getNewVersion().toURI());
+        assertSame(lazyLoader.fromName(added), lazyLoader.getClasses().get(added));
+        assertEquals(loader.getClasses().keySet(), lazyLoader.getClasses().keySet());
+    }
+
+    @Test
+    public void testLazyDependencyLoading() throws IOException {
+        LazyClassDataLoader loader = new LazyClassDataLoader();
+        loader.read(getNewVersion().toURI());
+        loader.readDependency(getReference().toURI());
+        assertTrue(loader.fromName("com/googlecode/japi/checker/tests/ClassToAbstract").isAbstract());
+        ClassData removed = loader.fromName("com/googlecode/japi/checker/tests/RemovedClass");
+        assertNotNull(removed);
+        assertSame(removed, loader.fromName("com/googlecode/japi/checker/tests/RemovedClass"));
+        assertNull(loader.fromName("java/lang/Object"));
+    }
+
+    @Test
+    public void testBoundedDependencyCache() throws IOException {
+        String first = "com/googlecode/japi/checker/tests/exceptions/MyNewException";
+        String second = "com/googlecode/japi/checker/tests/exceptions/MyAdditionalException";
+        String artifactClass = "com/googlecode/japi/checker/tests/ClassToAbstract";
+        LazyClassDataLoader loader = new LazyClassDataLoader();
+        loader.setMaxCacheSize(1);
+        loader.read(getReference().toURI());
+        loader.readDependency(getNewVersion().toURI());
+        ClassData pinned = loader.fromName(artifactClass);
+        ClassData dependency = loader.fromName(first);
+        assertSame(dependency, loader.fromName(first));
+        // only one dependency class fits, the other one gets parsed again.
+        assertNotNull(loader.fromName(second));
+        ClassData reloaded = loader.fromName(first);
+        assertNotSame(dependency, reloaded);
+        assertArrayEquals(dependency.getApiDigest(), reloaded.getApiDigest());
+        assertSame(pinned, loader.fromName(artifactClass));
+    }
+
+    @Test
+    public void testBoundedDependencyCacheCheck() throws InstantiationException, IllegalAccessException, IOException {
+        BCChecker boundedChecker = new BCChecker();
+        boundedChecker.setDependencyCacheSize(1);
+        boundedChecker.addToReferenceClasspath(getNewVersion());
+        boundedChecker.addToNewArtifactClasspath(getReference());
+        BasicReporter bounded = check(boundedChecker, AllRules.class);
+        BCChecker checker = new BCChecker();
+        checker.addToReferenceClasspath(getNewVersion());
+        checker.addToNewArtifactClasspath(getReference());
+        BasicReporter eager = check(checker, AllRules.class);
+        assertEquals(eager.getSortedMessages(), bounded.getSortedMessages());
+    }
+
+    @Test
+    public void testLazyDependencies() throws InstantiationException, IllegalAccessException, IOException {
+        BCChecker lazyChecker = new BCChecker();
+        lazyChecker.setLazyDependencies(true);
+        lazyChecker.addToReferenceClasspath(getNewVersion());
+        lazyChecker.addToNewArtifactClasspath(getReference());
+        BasicReporter lazy = check(lazyChecker, AllRules.class);
+        BCChecker checker = new BCChecker();
+        checker.addToReferenceClasspath(getNewVersion());
+        checker.addToNewArtifactClasspath(getReference());
+        BasicReporter eager = check(checker, AllRules.class);
+        assertEquals(eager.getSortedMessages(), lazy.getSortedMessages());
+    }
+
+    @Test
+    public void testConcurrentClasspathReading() throws InstantiationException, IllegalAccessException, IOException {
+        File corrupted = createCorruptedJar();
+        BCChecker concurrent = new BCChecker();
+        concurrent.setParallelism(4);
+        concurrent.setWarnOnDependencyLoadingError(true);
+        concurrent.addToReferenceClasspath(getNewVersion());
+        concurrent.addToReferenceClasspath(corrupted);
+        concurrent.addToNewArtifactClasspath(corrupted);
+        concurrent.addToNewArtifactClasspath(getReference());
+        BasicReporter parallel = check(concurrent, AllRules.class);
+        BCChecker checker = new BCChecker();
+        checker.setWarnOnDependencyLoadingError(true);
+        checker.addToReferenceClasspath(getNewVersion());
+        checker.addToReferenceClasspath(corrupted);
+        checker.addToNewArtifactClasspath(corrupted);
+        checker.addToNewArtifactClasspath(getReference());
+        BasicReporter sequential = check(checker, AllRules.class);
+        int corruptions = 0;
+        for (String message : sequential.getSortedMessages(Severity.WARNING)) {
+            if (message.contains("corrupted/Corrupted.class")) {
+                corruptions++;
+            }
+        }
+        assertEquals(2, corruptions);
+        // same reports, in the same order.
+        assertEquals(getMessages(sequential), getMessages(parallel));
+    }
+
+    @Test(expected = ReadClassException.class)
+    public void testConcurrentClasspathReadingFailure() throws InstantiationException, IllegalAccessException, IOException {
+        BCChecker checker = new BCChecker();
+        checker.setParallelism(4);
+        checker.addToReferenceClasspath(getNewVersion());
+        checker.addToNewArtifactClasspath(createCorruptedJar());
+        check(checker, AllRules.class);
+    }
+
+    @Test
+    public void testParallelRuleEvaluation() throws InstantiationException, IllegalAccessException, IOException {
+        BCChecker concurrent = new BCChecker();
+        concurrent.setRuleParallelism(4);
+        concurrent.setLazyDependencies(true);
+        concurrent.setParseMode(ParseMode.SIGNATURES);
+        concurrent.addToNewArtifactClasspath(getReference());
+        BasicReporter parallel = check(concurrent, AllRules.class);
+        BCChecker checker = new BCChecker();
+        checker.setLazyDependencies(true);
+        checker.setParseMode(ParseMode.SIGNATURES);
+        checker.addToNewArtifactClasspath(getReference());
+        BasicReporter sequential = check(checker, AllRules.class);
+        assertTrue(sequential.count(Severity.ERROR) > 0);
+        // same reports, in the same order.
+        assertEquals(getMessages(sequential), getMessages(parallel));
+        assertEquals(getLines(sequential), getLines(parallel));
+    }
+
+    @Test
+    public void testApiDigest() throws IOException {
+        DefaultClassDataLoader reference = new DefaultClassDataLoader();
+        reference.read(getReference().toURI());
+        DefaultClassDataLoader newer = new DefaultClassDataLoader();
+        newer.read(getNewVersion().toURI());
+        String api = "com/googlecode/japi/checker/tests/inheritance/superinterface/Api";
+        String impl = "com/googlecode/japi/checker/tests/inheritance/superinterface/Impl";
+        assertArrayEquals(reference.fromName(api).getApiDigest(), newer.fromName(api).getApiDigest());
+        assertFalse(Arrays.equals(reference.fromName(impl).getApiDigest(), newer.fromName(impl).getApiDigest()));
+        // unchanged members of a changed class keep their digest.
+        MethodData call = reference.fromName(impl).getMethod("call", "()V");
+        assertArrayEquals(call.getApiDigest(), newer.fromName(impl).getMethod(call).getApiDigest());
+
+        // the models can also be compared directly.
+        assertTrue(reference.fromName(api).hasSameApi(newer.fromName(api)));
+        assertFalse(reference.fromName(impl).hasSameApi(newer.fromName(impl)));
+        assertTrue(call.hasSameApi(newer.fromName(impl).getMethod(call)));
+        assertFalse(call.hasSameApi(reference.fromName(api).getMethods().get(0)));
+    }
+
+    @Test
+    public void testSharedSymbolTable() throws IOException {
+        DefaultClassDataLoader reference = new DefaultClassDataLoader();
+        DefaultClassDataLoader newer = new DefaultClassDataLoader();
+        newer.setSymbolTable(reference.getSymbolTable());
+        reference.read(getReference().toURI());
+        newer.read(getNewVersion().toURI());
+        String impl = "com/googlecode/japi/checker/tests/inheritance/superinterface/Impl";
+        ClassData referenceClass = reference.fromName(impl);
+        ClassData newClass = newer.fromName(impl);
+        assertSame(referenceClass.getName(), newClass.getName());
+        assertSame(referenceClass.getSuperName(), newClass.getSuperName());
+        MethodData call = referenceClass.getMethod("call", "()V");
+        assertSame(call.getName(), newClass.getMethod(call).getName());
+        assertSame(call.getDescriptor(), newClass.getMethod(call).getDescriptor());
+        // the same descriptor used by unrelated methods is only held once.
+        for (ClassData clazz : reference.getClasses().values()) {
+            for (MethodData method : clazz.getMethods()) {
+                if (method.getDescriptor().equals("()V")) {
+                    assertSame(call.getDescriptor(), method.getDescriptor());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testAnnotationPolicy() throws IOException {
+        String nonnull = "Ljavax/annotation/Nonnull;";
+        String nullable = "Ljavax/annotation/Nullable;";
+        String checkNonnull = "com/googlecode/japi/checker/tests/jsr305/CheckNonnull";
+        String getter = "getNonnullToNothingPublicObject";
+        DefaultClassDataLoader all = new DefaultClassDataLoader();
+        all.read(getReference().toURI());
+        assertNotNull(all.fromName(checkNonnull).getMethod(getter, "()Ljava/lang/Object;").getAnnotation(nonnull));
+        DefaultClassDataLoader skipping = new DefaultClassDataLoader();
+        skipping.setAnnotationPolicy(AnnotationPolicy.of(Collections.singleton(nullable)));
+        skipping.read(getReference().toURI());
+        assertTrue(skipping.fromName(checkNonnull).getMethod(getter, "()Ljava/lang/Object;").getAnnotations().isEmpty());
+
+        // only the annotations declared by the rules are needed, unless a rule does not declare them.
+        assertEquals(Collections.emptySet(), new RuleSet(Arrays.asList(new AllRules())).getAnnotationDescriptors());
+        assertEquals(new HashSet<String>(Arrays.asList(nonnull, nullable)),
+                new RuleSet(Arrays.asList(new AllRules(), new CheckJSR305())).getAnnotationDescriptors());
+        com.googlecode.japi.checker.Rule undeclared = new com.googlecode.japi.checker.Rule() {
+            @Override
+            public void checkBackwardCompatibility(Reporter reporter, JavaItem reference, JavaItem newItem) {
+            }
+        };
+        assertNull(new RuleSet(Arrays.asList(new CheckJSR305(), undeclared)).getAnnotationDescriptors());
+    }
+
+    @Test
+    public void testAnnotationPolicyOfSnapshotsAndModelCache() throws IOException {
+        String nonnull = "Ljavax/annotation/Nonnull;";
+        String checkNonnull = "com/googlecode/japi/checker/tests/jsr305/CheckNonnull";
+        AnnotationPolicy policy = AnnotationPolicy.of(Collections.singleton("Ljavax/annotation/Nullable;"));
+        DefaultClassDataLoader fromJar = new DefaultClassDataLoader();
+        fromJar.setAnnotationPolicy(policy);
+        fromJar.read(getReference().toURI());
+        ClassData expected = fromJar.fromName(checkNonnull);
+
+        // snapshots always hold all the annotations.
+        File snapshot = new File(tmp.getRoot(), "reference.snapshot");
+        new ApiSnapshotWriter().write(getReference(), snapshot);
+        DefaultClassDataLoader fromSnapshot = new DefaultClassDataLoader();
+        fromSnapshot.setAnnotationPolicy(policy);
+        fromSnapshot.read(snapshot.toURI());
+        assertNoAnnotation(fromSnapshot.fromName(checkNonnull), nonnull);
+        assertArrayEquals(expected.getApiDigest(), fromSnapshot.fromName(checkNonnull).getApiDigest());
+
+        // an entry holding all the annotations, whatever the policy it is read with.
+        ModelCache cache = new ModelCache(tmp.newFolder("cache"), Long.MAX_VALUE);
+        DefaultClassDataLoader all = new DefaultClassDataLoader();
+        all.setModelCache(cache);
+        all.read(getReference().toURI());
+        assertNotNull(all.fromName(checkNonnull).getMethod("getNonnullToNothingPublicObject",
+                "()Ljava/lang/Object;").getAnnotation(nonnull));
+        File entry = new File(cache.getDirectory(), cache.getKey(getReference(), ParseMode.FULL, AnnotationPolicy.ALL) + ".model");
+        assertTrue(entry.isFile());
+        assertTrue(entry.renameTo(new File(cache.getDirectory(), cache.getKey(getReference(), ParseMode.FULL, policy) + ".model")));
+        DefaultClassDataLoader fromCache = new DefaultClassDataLoader();
+        fromCache.setAnnotationPolicy(policy);
+        fromCache.setModelCache(cache);
+        fromCache.read(getReference().toURI());
+        assertNoAnnotation(fromCache.fromName(checkNonnull), nonnull);
+        assertArrayEquals(expected.getApiDigest(), fromCache.fromName(checkNonnull).getApiDigest());
+    }
+
+    private static void assertNoAnnotation(ClassData clazz, String desc) {
+        assertNull(clazz.getAnnotation(desc));
+        for (MethodData method : clazz.getMethods()) {
+            assertNull(method.getAnnotation(desc));
+        }
+        for (FieldData field : clazz.getFields()) {
+            assertNull(field.getAnnotation(desc));
+        }
+    }
+
+    @Test
+    public void testAnnotationData() {
+        AnnotationData annotation = new AnnotationData("Ljavax/annotation/Nonnull;", true);
+        assertTrue(annotation.isEmpty());
+        assertNull(annotation.put("when", "ALWAYS"));
+        assertNull(annotation.put("value", 1));
+        assertEquals("ALWAYS", annotation.put("when", "MAYBE"));
+        assertEquals(2, annotation.size());
+        assertEquals("MAYBE", annotation.get("when"));
+        assertNull(annotation.get("missing"));
+        assertTrue(annotation.containsKey("value"));
+        assertTrue(annotation.containsValue(1));
+        assertEquals(new HashSet<String>(Arrays.asList("when", "value")), annotation.keySet());
+        Map.Entry<String, Object> entry = annotation.entrySet().iterator().next();
+        assertEquals("when", entry.getKey());
+        try {
+            entry.setValue("NEVER");
+            fail();
+        } catch (UnsupportedOperationException e) {
+            assertEquals("MAYBE", annotation.get("when"));
+        }
+    }
+
+    @Test
+    public void testSkipUnchanged() throws InstantiationException, IllegalAccessException, IOException {
+        BCChecker checker = new BCChecker();
+        checker.setSkipUnchanged(true);
+        BasicReporter skipping = check(checker, AllRules.class);
+        assertTrue(checker.getSkippedClassCount() > 0);
+        assertTrue(checker.getSkippedClassCount() < checker.getCheckedClassCount());
+        assertTrue(checker.getSkippedMemberCount() > 0);
+        BasicReporter full = check(AllRules.class);
+        assertTrue(full.count(Severity.ERROR) > 0);
+        // only the reports about unchanged items are missing.
+        assertEquals(getProblems(full), getProblems(skipping));
+    }
+
+    @Test
+    public void testTypedRuleDispatch() throws IOException {
+        final Map<ItemKind, Integer> typedCalls = new EnumMap<ItemKind, Integer>(ItemKind.class);
+        final Map<ItemKind, Integer> untypedCalls = new EnumMap<ItemKind, Integer>(ItemKind.class);
+        TypedRule typed = new TypedRule() {
+            @Override
+            public void checkBackwardCompatibility(Reporter reporter, JavaItem reference, JavaItem newItem) {
+                count(typedCalls, ItemKind.of(reference));
+            }
+
+            @Override
+            public Set<ItemKind> getItemKinds() {
+                return EnumSet.of(ItemKind.METHOD);
+            }
+        };
+        com.googlecode.japi.checker.Rule untyped = new com.googlecode.japi.checker.Rule() {
+            @Override
+            public void checkBackwardCompatibility(Reporter reporter, JavaItem reference, JavaItem newItem) {
+                count(untypedCalls, ItemKind.of(reference));
+            }
+        };
+        BCChecker checker = new BCChecker();
+        checker.setRules(Arrays.asList(typed, untyped));
+        checker.checkBacwardCompatibility(getReference(), getNewVersion());
+        assertEquals(Collections.singleton(ItemKind.METHOD), typedCalls.keySet());
+        assertEquals(EnumSet.allOf(ItemKind.class), untypedCalls.keySet());
+        assertEquals(untypedCalls.get(ItemKind.METHOD), typedCalls.get(ItemKind.METHOD));
+
+        com.googlecode.japi.checker.Rule removedMethod = new CheckRemovedMethod();
+        RuleSet rules = new RuleSet(Arrays.asList(removedMethod, untyped));
+        assertEquals(Arrays.asList(removedMethod, untyped), rules.getRules(ItemKind.CLASS));
+        assertEquals(Arrays.asList(untyped), rules.getRules(ItemKind.FIELD));
+        assertEquals(EnumSet.allOf(ItemKind.class), new AllRules().getItemKinds());
+    }
+
+    @Test
+    public void testMaxErrors() throws InstantiationException, IllegalAccessException, IOException {
+        BasicReporter full = check(AllRules.class);
+        int errors = full.getSortedMessages(Severity.ERROR).size();
+        assertTrue(errors > 1);
+
+        BCChecker checker = new BCChecker();
+        checker.setMaxErrors(1);
+        BasicReporter stopped = check(checker, AllRules.class);
+        assertTrue(checker.isStopped());
+        int stoppedErrors = stopped.getSortedMessages(Severity.ERROR).size();
+        assertTrue(stoppedErrors >= 1 && stoppedErrors < errors);
+        List<String> messages = getMessages(stopped);
+        assertEquals("WARNING: Stopped after 1 errors, the remaining classes have not been checked.",
+                messages.get(messages.size() - 1));
+
+        // the same reports, whatever the parallelism.
+        BCChecker concurrent = new BCChecker();
+        concurrent.setMaxErrors(1);
+        concurrent.setRuleParallelism(4);
+        assertEquals(messages, getMessages(check(concurrent, AllRules.class)));
+        assertTrue(concurrent.isStopped());
+
+        // a budget that is not reached does not change anything.
+        BCChecker large = new BCChecker();
+        large.setMaxErrors(errors + 1);
+        assertEquals(getMessages(full), getMessages(check(large, AllRules.class)));
+        assertFalse(large.isStopped());
+    }
+
+    @Test
+    public void testMaxErrorsStopsTheRuleWorkers() throws InstantiationException, IllegalAccessException, IOException {
+        BCChecker all = new BCChecker();
+        all.setRuleParallelism(2);
+        check(all, ErrorOnEveryClass.class);
+        // more classes than partitions.
+        assertTrue(all.getCheckedClassCount() > 8);
+
+        BCChecker sequential = new BCChecker();
+        sequential.setMaxErrors(1);
+        List<String> expected = getMessages(check(sequential, ErrorOnEveryClass.class));
+        BCChecker concurrent = new BCChecker();
+        concurrent.setMaxErrors(1);
+        concurrent.setRuleParallelism(2);
+        assertEquals(expected, getMessages(check(concurrent, ErrorOnEveryClass.class)));
+        // each of the 8 partitions stops after its first class.
+        assertTrue(concurrent.getCheckedClassCount() <= 8);
+    }
+
+    @Test
+    public void testStreaming() throws InstantiationException, IllegalAccessException, IOException {
+        List<String> expected = getMessages(check(AllRules.class));
+        BCChecker checker = new BCChecker();
+        checker.setStreaming(true);
+        assertEquals(expected, getMessages(check(checker, AllRules.class)));
+
+        // parallel reading, and then the classes restored from the model cache.
+        checker.setParallelism(4);
+        checker.setCacheDirectory(tmp.newFolder("cache"));
+        assertEquals(expected, getMessages(check(checker, AllRules.class)));
+        assertEquals(expected, getMessages(check(checker, AllRules.class)));
+
+        // the check stops at the same place.
+        BCChecker sequential = new BCChecker();
+        sequential.setMaxErrors(1);
+        BCChecker streaming = new BCChecker();
+        streaming.setMaxErrors(1);
+        streaming.setStreaming(true);
+        assertEquals(getMessages(check(sequential, AllRules.class)), getMessages(check(streaming, AllRules.class)));
+        assertTrue(streaming.isStopped());
+
+        // only the included classes are checked against.
+        BCChecker included = new BCChecker();
+        included.setStreaming(true);
+        assertEquals(getMessages(check(AllRules.class, "**/inheritance/**")),
+                getMessages(check(included, AllRules.class, "**/inheritance/**")));
+    }
+
+    @Test
+    public void testRulesReusedAcrossChecks() throws IOException {
+        List<com.googlecode.japi.checker.Rule> rules = Arrays.<com.googlecode.japi.checker.Rule>asList(new AllRules());
+        BCChecker checker = new BCChecker();
+        checker.setRules(rules);
+        List<String> patch = getMessages(check(checker, getReference(), getNewVersion(), false));
+        assertTrue(patch.toString().contains("warrants a minor version increase"));
+        List<String> minor = getMessages(check(checker, getReference(), getNewVersion(), true));
+        assertFalse(minor.toString().contains("warrants a minor version increase"));
+        // nothing has been added this time, the previous check must not leak.
+        List<String> unchanged = getMessages(check(checker, getReference(), getReference(), true));
+        assertTrue(unchanged.toString().contains("no public method/field/class changes were detected"));
+
+        // the same instances, concurrently.
+        BCChecker concurrent = new BCChecker();
+        concurrent.setRules(rules);
+        concurrent.setRuleParallelism(4);
+        assertEquals(patch, getMessages(check(concurrent, getReference(), getNewVersion(), false)));
+        assertEquals(minor, getMessages(check(concurrent, getReference(), getNewVersion(), true)));
+        assertEquals(unchanged, getMessages(check(concurrent, getReference(), getReference(), true)));
+    }
+
+    private static BasicReporter check(BCChecker checker, File reference, File newVersion, boolean newMinorVersion)
+            throws IOException {
+        BasicReporter reporter = new BasicReporter();
+        checker.setReporter(reporter);
+        checker.setNewMinorVersion(newMinorVersion);
+        checker.checkBacwardCompatibility(reference, newVersion);
+        return reporter;
+    }
+
+    @Test
+    public void testRuleContextMerge() {
+        RuleContext context = new RuleContext(true);
+        assertNull(context.findAccumulator(CheckMinorVersionIncreaseNeeded.Result.class));
+        assertFalse(context.getAccumulator(CheckMinorVersionIncreaseNeeded.Result.class).isVersionIncreaseNecessary());
+        RuleContext fork = context.fork();
+        assertTrue(fork.isNewMinorVersion());
+        assertNull(fork.findAccumulator(CheckMinorVersionIncreaseNeeded.Result.class));
+        ClassData reference = new ClassData(null, null, Opcodes.ACC_PUBLIC, "Foo", null, "java/lang/Object", new String[0], 50);
+        ClassData newClass = new ClassData(null, null, Opcodes.ACC_PUBLIC, "Foo", null, "java/lang/Object", new String[0], 50);
+        newClass.add(new MethodData(null, newClass, Opcodes.ACC_PUBLIC, "added", "()V", null, new String[0]));
+        new CheckMinorVersionIncreaseNeeded().checkBackwardCompatibility(new BasicReporter(), fork, reference, newClass);
+        context.merge(fork);
+        assertTrue(context.getAccumulator(CheckMinorVersionIncreaseNeeded.Result.class).isVersionIncreaseNecessary());
+    }
+
+    private static void count(Map<ItemKind, Integer> calls, ItemKind kind) {
+        Integer count = calls.get(kind);
+        calls.put(kind, count == null ? 1 : count + 1);
+    }
+
+    private static List<String> getProblems(BasicReporter reporter) {
+        List<String> result = new ArrayList<String>();
+        for (Report report : reporter.getMessages()) {
+            if (report.getSeverity() != Severity.INFO) {
+                result.add(report.getSeverity() + ": " + report.getMessage());
+            }
+        }
+        return result;
+    }
+
+    private File createCorruptedJar() throws IOException {
+        File jar = tmp.newFile("corrupted.jar");
+        ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(jar));
+        try {
+            zos.putNextEntry(new ZipEntry("corrupted/Corrupted.class"));
+            zos.write(new byte[] {(byte) 0xca, (byte) 0xfe, (byte) 0xba, (byte) 0xbe, 0, 0});
+            zos.closeEntry();
+        } finally {
+            zos.close();
+        }
+        return jar;
+    }
+
+    private static List<String> getMessages(BasicReporter reporter) {
+        List<String> result = new ArrayList<String>();
+        for (Report report : reporter.getMessages()) {
+            result.add(report.getSeverity() + ": " + report.getMessage());
+        }
+        return result;
+    }
+
+    private File explode(File file, String name) throws IOException {
+        if (file.isDirectory()) {
+            return file;
+        }
+        File dir = tmp.newFolder(name);
+        ZipFile zip = new ZipFile(file);
+        try {
+            for (Enumeration<? extends ZipEntry> entries = zip.entries(); entries.hasMoreElements();) {
+                ZipEntry entry = entries.nextElement();
+                File target = new File(dir, entry.getName());
+                if (entry.isDirectory()) {
+                    target.mkdirs();
+                    continue;
+                }
+                target.getParentFile().mkdirs();
+                InputStream is = zip.getInputStream(entry);
+                OutputStream os = new FileOutputStream(target);
+                try {
+                    byte[] buffer = new byte[2048];
+                    int count = 0;
+                    while ((count = is.read(buffer)) != -1) {
+                        os.write(buffer, 0, count);
+                    }
+                } finally {
+                    os.close();
+                    is.close();
+                }
+            }
+        } finally {
+            zip.close();
+        }
+        return dir;
+    }
+
     @Test
     public void testCheckerClassRemoved() throws InstantiationException, IllegalAccessException, IOException {
         BasicReporter reporter = check(null, "**/RemovedClass.class");
@@ -161,6 +941,67 @@ public class TestBCChecker extends AbstractBCCheckerUnitTest {
         assertEquals(2, reporter.count(Severity.ERROR));
     }
     
+    @Test
+    public void testCheckInheritanceChangesThroughSuperInterface() throws InstantiationException, IllegalAccessException, IOException {
+        BasicReporter reporter = check(CheckInheritanceChanges.class, "**/inheritance/superinterface/*.class");
+        assertEquals(0, reporter.count(Severity.ERROR));
+    }
+
+    @Test
+    public void testCheckRemovedMethodPulledUp() throws InstantiationException, IllegalAccessException, IOException {
+        BasicReporter reporter = check(CheckRemovedMethod.class, "**/inheritance/pullup/*.class");
+        // private methods are not inherited.
+        reporter.assertContains(Severity.ERROR, "Could not find method hidden(()V) in newer version.");
+        assertEquals(1, reporter.count(Severity.ERROR));
+    }
+
+    @Test
+    public void testCheckRemovedFieldPulledUp() throws InstantiationException, IllegalAccessException, IOException {
+        BasicReporter reporter = check(CheckRemovedField.class, "**/inheritance/pullup/*.class");
+        reporter.assertContains(Severity.ERROR, "Could not find field hidden(I) in newer version.");
+        assertEquals(1, reporter.count(Severity.ERROR));
+    }
+
+    @Test
+    public void testPulledUpMembersChanged() throws InstantiationException, IllegalAccessException, IOException {
+        String includes = "**/inheritance/pullupchanged/*.class";
+        // the inherited field has another type, so the clients cannot link to it.
+        BasicReporter reporter = check(CheckRemovedField.class, includes);
+        reporter.assertContains(Severity.ERROR, "Could not find field typeChanged(I) in newer version.");
+        assertEquals(1, reporter.count(Severity.ERROR));
+        // only an abstract method is inherited, the subclasses would miss the implementation.
+        reporter = check(CheckRemovedMethod.class, includes);
+        reporter.assertContains(Severity.ERROR, "Could not find method implemented(()V) in newer version.");
+        assertEquals(1, reporter.count(Severity.ERROR));
+        // the other inherited members are checked by the member rules.
+        reporter = check(CheckFieldChangeToStatic.class, includes);
+        reporter.assertContains(Severity.ERROR, "The field madeStatic(I) is now static.");
+        assertEquals(1, reporter.count(Severity.ERROR));
+        reporter = check(CheckMethodChangedToStatic.class, includes);
+        reporter.assertContains(Severity.ERROR, "The method madeStatic(()V) has been made static.");
+        assertEquals(1, reporter.count(Severity.ERROR));
+        reporter = check(CheckChangeOfScope.class, includes);
+        reporter.assertContains(Severity.ERROR, "The visibility of the narrowed method has been changed from PUBLIC to PROTECTED");
+        assertEquals(1, reporter.count(Severity.ERROR));
+    }
+
+    @Test
+    public void testTypeHierarchy() throws IOException {
+        DefaultClassDataLoader loader = new DefaultClassDataLoader();
+        loader.read(getNewVersion().toURI());
+        TypeHierarchy hierarchy = loader.getTypeHierarchy();
+        String impl = "com/googlecode/japi/checker/tests/inheritance/superinterface/Impl";
+        String api = "com/googlecode/japi/checker/tests/inheritance/superinterface/Api";
+        assertTrue(hierarchy.isSubtype(impl, api));
+        assertTrue(hierarchy.isSubtype(impl, impl));
+        assertTrue(hierarchy.isSubtype(impl, "java/lang/Object"));
+        assertFalse(hierarchy.isSubclass(impl, api));
+        assertTrue(hierarchy.isSubclass(impl, "java/lang/Object"));
+        assertFalse(hierarchy.isSubtype(api, impl));
+        assertFalse(hierarchy.isSubtype("does/not/Exist", api));
+        assertSame(hierarchy, loader.getTypeHierarchy());
+    }
+
     @Test
     public void testCheckRemovedMethod() throws InstantiationException, IllegalAccessException, IOException {
         BasicReporter reporter = check(CheckRemovedMethod.class, "**/CheckRemovedMethod.class");
@@ -275,4 +1116,13 @@ public class TestBCChecker extends AbstractBCCheckerUnitTest {
         reporter.assertContains(Severity.ERROR, "The parameter of the publicArityToArray has been changed from variable arity to array");
         reporter.assertContains(Severity.ERROR, "The parameter of the protectedArityToArray has been changed from variable arity to array");
     }
+
+    public static class ErrorOnEveryClass implements com.googlecode.japi.checker.Rule {
+        @Override
+        public void checkBackwardCompatibility(Reporter reporter, JavaItem reference, JavaItem newItem) {
+            if (reference instanceof ClassData) {
+                reporter.report(new Report(Severity.ERROR, "Checked " + reference.getName(), reference, newItem));
+            }
+        }
+    }
 }
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2011 William Bernardet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.japi.checker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.googlecode.japi.checker.model.ClassData;
+
+public class TestLazyClassDataLoader extends AbstractBCCheckerUnitTest {
+    private static final String FIRST = "com/googlecode/japi/checker/tests/ClassToAbstract";
+    private static final String SECOND = "com/googlecode/japi/checker/tests/RemovedClass";
+    private static final String THIRD = "com/googlecode/japi/checker/tests/exceptions/MyException";
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void testLeastRecentlyUsedEviction() throws IOException {
+        File classes = extract(FIRST, SECOND, THIRD);
+        long first = classFile(classes, FIRST).length();
+        long second = classFile(classes, SECOND).length();
+        long third = classFile(classes, THIRD).length();
+        LazyClassDataLoader loader = new LazyClassDataLoader();
+        // any two of the classes fit, not the three of them.
+        loader.setMaxCacheSize(Math.max(first + second, Math.max(first + third, second + third)));
+        loader.readDependency(classes.toURI());
+
+        ClassData firstClass = loader.fromName(FIRST);
+        ClassData secondClass = loader.fromName(SECOND);
+        assertEquals(first + second, loader.getCacheSize());
+        // using the first class makes the second one the least recently used.
+        assertSame(firstClass, loader.fromName(FIRST));
+        assertNotNull(loader.fromName(THIRD));
+        assertEquals(first + third, loader.getCacheSize());
+        assertSame(firstClass, loader.fromName(FIRST));
+        ClassData reloaded = loader.fromName(SECOND);
+        assertNotSame(secondClass, reloaded);
+        assertEquals(SECOND, reloaded.getName());
+        // the third class was the least recently used.
+        assertEquals(first + second, loader.getCacheSize());
+        assertSame(firstClass, loader.fromName(FIRST));
+        assertSame(reloaded, loader.fromName(SECOND));
+    }
+
+    @Test
+    public void testSingleClassLargerThanTheBound() throws IOException {
+        File classes = extract(FIRST, SECOND);
+        LazyClassDataLoader loader = new LazyClassDataLoader();
+        loader.setMaxCacheSize(1);
+        loader.readDependency(classes.toURI());
+        ClassData firstClass = loader.fromName(FIRST);
+        // the only class held is never dropped.
+        assertSame(firstClass, loader.fromName(FIRST));
+        assertEquals(classFile(classes, FIRST).length(), loader.getCacheSize());
+        assertNotNull(loader.fromName(SECOND));
+        assertEquals(classFile(classes, SECOND).length(), loader.getCacheSize());
+        assertNotSame(firstClass, loader.fromName(FIRST));
+    }
+
+    @Test
+    public void testTransientReadFailure() throws IOException {
+        File classes = extract(FIRST);
+        File classFile = classFile(classes, FIRST);
+        File moved = new File(classes, "moved");
+        LazyClassDataLoader loader = new LazyClassDataLoader();
+        loader.readDependency(classes.toURI());
+        assertTrue(classFile.renameTo(moved));
+        assertNull(loader.fromName(FIRST));
+        // the class is read again once the file is back.
+        assertTrue(moved.renameTo(classFile));
+        ClassData clazz = loader.fromName(FIRST);
+        assertNotNull(clazz);
+        assertSame(clazz, loader.fromName(FIRST));
+    }
+
+    @Test
+    public void testClassFileDefiningAnotherClass() throws IOException {
+        File classes = extract(FIRST, SECOND);
+        write(classFile(classes, FIRST), readClassFile(SECOND));
+        LazyClassDataLoader loader = new LazyClassDataLoader();
+        loader.readDependency(classes.toURI());
+        assertNull(loader.fromName(FIRST));
+        // the class file is not read again.
+        write(classFile(classes, FIRST), readClassFile(FIRST));
+        assertNull(loader.fromName(FIRST));
+        assertNotNull(loader.fromName(SECOND));
+    }
+
+    @Test
+    public void testMemberTablesOfBoundedCache() throws IOException {
+        File classes = extract(FIRST, SECOND);
+        LazyClassDataLoader loader = new LazyClassDataLoader();
+        loader.readDependency(classes.toURI());
+        TypeHierarchy hierarchy = loader.getTypeHierarchy();
+        assertSame(hierarchy.getMembers(FIRST), hierarchy.getMembers(FIRST));
+
+        // the tables would keep the classes they refer to.
+        loader = new LazyClassDataLoader();
+        loader.setMaxCacheSize(1);
+        loader.readDependency(classes.toURI());
+        hierarchy = loader.getTypeHierarchy();
+        assertNotNull(hierarchy.getMembers(FIRST));
+        assertNotSame(hierarchy.getMembers(FIRST), hierarchy.getMembers(FIRST));
+        ClassData firstClass = loader.fromName(FIRST);
+        assertNotNull(loader.fromName(SECOND));
+        assertNotSame(firstClass, loader.fromName(FIRST));
+    }
+
+    private static File classFile(File directory, String name) {
+        return new File(directory, name + ".class");
+    }
+
+    /**
+     * Copy class files of the reference into a new directory.
+     */
+    private File extract(String... names) throws IOException {
+        File directory = tmp.newFolder("classes");
+        for (String name : names) {
+            File file = classFile(directory, name);
+            file.getParentFile().mkdirs();
+            write(file, readClassFile(name));
+        }
+        return directory;
+    }
+
+    private byte[] readClassFile(String name) throws IOException {
+        String path = name + ".class";
+        if (getReference().isDirectory()) {
+            return toBytes(new FileInputStream(new File(getReference(), path)));
+        }
+        ZipFile zip = new ZipFile(getReference());
+        try {
+            ZipEntry entry = zip.getEntry(path);
+            assertNotNull(path, entry);
+            return toBytes(zip.getInputStream(entry));
+        } finally {
+            zip.close();
+        }
+    }
+
+    private static byte[] toBytes(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void write(File file, byte[] data) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+    }
+}
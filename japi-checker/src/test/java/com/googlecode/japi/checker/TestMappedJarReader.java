@@ -0,0 +1,204 @@
+/*
+ * Copyright 2012 William Bernardet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.japi.checker;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.googlecode.japi.checker.AbstractClassReader.ClassFile;
+import com.googlecode.japi.checker.model.ClassData;
+
+public class TestMappedJarReader extends AbstractBCCheckerUnitTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void testStoredEntries() throws IOException {
+        Map<String, byte[]> classFiles = readClassFiles();
+        File archive = new File(tmp.getRoot(), "stored.jar");
+        write(archive, classFiles, ZipEntry.STORED);
+        assertEquals(classFiles.size(), new MappedJarReader(archive, new DefaultClassDataLoader()).getMappedClassFiles().size());
+        assertSameClasses(classFiles, archive);
+    }
+
+    @Test
+    public void testStoredAndDeflatedEntries() throws IOException {
+        Map<String, byte[]> classFiles = readClassFiles();
+        File archive = new File(tmp.getRoot(), "mixed.jar");
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(archive));
+        try {
+            int i = 0;
+            for (Map.Entry<String, byte[]> classFile : classFiles.entrySet()) {
+                putEntry(out, classFile.getKey(), classFile.getValue(), i++ % 2 == 0 ? ZipEntry.STORED : ZipEntry.DEFLATED);
+            }
+        } finally {
+            out.close();
+        }
+        ClassBuffer buffer = ClassBuffer.get();
+        for (ClassFile file : new MappedJarReader(archive, new DefaultClassDataLoader()).getMappedClassFiles()) {
+            file.load(buffer);
+            assertArrayEquals(file.getName(), classFiles.get(file.getName()),
+                    Arrays.copyOf(buffer.getData(), buffer.getLength()));
+        }
+        assertSameClasses(classFiles, archive);
+    }
+
+    @Test
+    public void testInvalidStoredEntry() throws IOException {
+        Map<String, byte[]> classFiles = readClassFiles();
+        File archive = new File(tmp.getRoot(), "invalid.jar");
+        write(archive, classFiles, ZipEntry.STORED);
+        // the central directory now tells a larger size than the stored data.
+        RandomAccessFile file = new RandomAccessFile(archive, "rw");
+        try {
+            ByteBuffer record = ByteBuffer.allocate(22).order(ByteOrder.LITTLE_ENDIAN);
+            file.seek(file.length() - 22);
+            file.readFully(record.array());
+            ByteBuffer header = ByteBuffer.allocate(46).order(ByteOrder.LITTLE_ENDIAN);
+            file.seek(record.getInt(16));
+            file.readFully(header.array());
+            header.putInt(24, header.getInt(24) + 1);
+            file.seek(record.getInt(16));
+            file.write(header.array());
+        } finally {
+            file.close();
+        }
+        ClassFile first = new MappedJarReader(archive, new DefaultClassDataLoader()).getMappedClassFiles().get(0);
+        try {
+            first.load(ClassBuffer.get());
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Invalid size for stored entry " + first.getName()));
+        }
+    }
+
+    @Test
+    public void testFallbackForZip64Archives() throws IOException {
+        Map<String, byte[]> classFiles = readClassFiles();
+        File archive = new File(tmp.getRoot(), "zip64.jar");
+        write(archive, classFiles, ZipEntry.DEFLATED);
+        convertToZip64(archive);
+        assertNull(new MappedJarReader(archive, new DefaultClassDataLoader()).getMappedClassFiles());
+        assertSameClasses(classFiles, archive);
+    }
+
+    private Map<String, byte[]> readClassFiles() throws IOException {
+        AbstractClassReader reader = new DefaultClassDataLoader().createReader(getReference(), ParseMode.FULL);
+        Map<String, byte[]> classFiles = new LinkedHashMap<String, byte[]>();
+        ClassBuffer buffer = ClassBuffer.get();
+        for (String name : reader.list()) {
+            reader.reload(name, buffer);
+            classFiles.put(name, Arrays.copyOf(buffer.getData(), buffer.getLength()));
+        }
+        assertFalse(classFiles.isEmpty());
+        return classFiles;
+    }
+
+    /**
+     * The mapped reader must find the same classes as the jar reader, whatever the path it takes.
+     */
+    private static void assertSameClasses(Map<String, byte[]> classFiles, File archive) throws IOException {
+        DefaultClassDataLoader loader = new DefaultClassDataLoader();
+        JarReader expected = new JarReader(archive, loader);
+        expected.read();
+        MappedJarReader actual = new MappedJarReader(archive, loader);
+        actual.read();
+        assertEquals(classFiles.keySet(), actual.getClassFiles().keySet());
+        for (Map.Entry<String, ClassData> entry : expected.getClassFiles().entrySet()) {
+            ClassData clazz = actual.getClassFiles().get(entry.getKey());
+            assertNotNull(entry.getKey(), clazz);
+            assertEquals(entry.getValue().getName(), clazz.getName());
+            assertArrayEquals(entry.getKey(), entry.getValue().getApiDigest(), clazz.getApiDigest());
+        }
+    }
+
+    private static void write(File archive, Map<String, byte[]> classFiles, int method) throws IOException {
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(archive));
+        try {
+            for (Map.Entry<String, byte[]> classFile : classFiles.entrySet()) {
+                putEntry(out, classFile.getKey(), classFile.getValue(), method);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Replace the end of central directory record by its zip64 variant, as written for the
+     * archives having too many entries or being too large.
+     */
+    private static void convertToZip64(File archive) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(archive, "rw");
+        try {
+            // the archive has no comment, so the record takes the last 22 bytes.
+            long end = file.length() - 22;
+            ByteBuffer record = ByteBuffer.allocate(22).order(ByteOrder.LITTLE_ENDIAN);
+            file.seek(end);
+            file.readFully(record.array());
+            long entries = record.getShort(10) & 0xffff;
+            long size = record.getInt(12) & 0xffffffffL;
+            long offset = record.getInt(16) & 0xffffffffL;
+            ByteBuffer trailer = ByteBuffer.allocate(56 + 20 + 22).order(ByteOrder.LITTLE_ENDIAN);
+            trailer.putInt(0x06064b50).putLong(44).putShort((short) 45).putShort((short) 45).putInt(0).putInt(0)
+                    .putLong(entries).putLong(entries).putLong(size).putLong(offset);
+            trailer.putInt(0x07064b50).putInt(0).putLong(end).putInt(1);
+            trailer.putInt(0x06054b50).putShort((short) 0).putShort((short) 0).putShort((short) 0xffff)
+                    .putShort((short) 0xffff).putInt((int) size).putInt(0xffffffff).putShort((short) 0);
+            file.seek(end);
+            file.write(trailer.array());
+        } finally {
+            file.close();
+        }
+    }
+
+    private static void putEntry(ZipOutputStream out, String name, byte[] data, int method) throws IOException {
+        ZipEntry entry = new ZipEntry(name);
+        entry.setMethod(method);
+        if (method == ZipEntry.STORED) {
+            CRC32 crc = new CRC32();
+            crc.update(data);
+            entry.setCrc(crc.getValue());
+            entry.setSize(data.length);
+            entry.setCompressedSize(data.length);
+        }
+        out.putNextEntry(entry);
+        out.write(data);
+        out.closeEntry();
+    }
+}
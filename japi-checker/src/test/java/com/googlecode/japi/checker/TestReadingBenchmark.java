@@ -0,0 +1,180 @@
+/*
+ * Copyright 2012 William Bernardet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.japi.checker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.googlecode.japi.checker.AbstractClassReader.ClassFile;
+
+/**
+ * Measures the memory allocated while reading archives. The measures are skipped
+ * unless the japi.benchmark system property is true, the archives to read are given by
+ * the japi.benchmark.archives property (the reference test jar by default):
+ * mvn test -Dtest=TestReadingBenchmark -Djapi.benchmark=true -Djapi.benchmark.archives=a.jar:b.jar
+ */
+public class TestReadingBenchmark extends AbstractBCCheckerUnitTest {
+    private static final int WARMUP = 5;
+
+    private ThreadMXBean threads;
+    private Method allocatedBytes;
+    private List<File> archives = new ArrayList<File>();
+
+    @Before
+    public void setUpBenchmark() throws ClassNotFoundException, NoSuchMethodException {
+        assumeTrue(Boolean.getBoolean("japi.benchmark"));
+        // dumping the model would dominate the measures.
+        Logger.getLogger(ClassDumper.class.getName()).setLevel(Level.INFO);
+        Logger.getLogger(AnnotationDumper.class.getName()).setLevel(Level.INFO);
+        Logger.getLogger(MethodDumper.class.getName()).setLevel(Level.INFO);
+        threads = ManagementFactory.getThreadMXBean();
+        // only available from the HotSpot extension of the bean.
+        allocatedBytes = Class.forName("com.sun.management.ThreadMXBean").getMethod("getThreadAllocatedBytes", long.class);
+        String paths = System.getProperty("japi.benchmark.archives");
+        if (paths == null) {
+            archives.add(getReference());
+        } else {
+            for (String path : paths.split(File.pathSeparator)) {
+                archives.add(new File(path));
+            }
+        }
+    }
+
+    /**
+     * Bytes allocated per class to extract the class files, without parsing them:
+     * the stream copy the readers used to do, against the mapped archive.
+     */
+    @Test
+    public void bytesCopiedPerClass() throws Exception {
+        for (File archive : archives) {
+            List<ClassFile> files = new MappedJarReader(archive, new DefaultClassDataLoader()).getMappedClassFiles();
+            if (files == null) {
+                System.out.println(archive.getName() + " cannot be mapped");
+                continue;
+            }
+            for (int i = 0; i < WARMUP; i++) {
+                extractWithStreams(archive, null, null);
+                extractFromMapping(files);
+            }
+            long start = allocatedBytes();
+            long size = extractWithStreams(archive, null, null);
+            long streams = allocatedBytes() - start;
+            start = allocatedBytes();
+            assertEquals(size, extractFromMapping(files));
+            long mapped = allocatedBytes() - start;
+            int count = files.size();
+            System.out.println(archive.getName() + ": " + count + " classes, " + size / count + " bytes/class on average, "
+                    + "allocated bytes/class: streams=" + streams / count + " mapped=" + mapped / count);
+        }
+    }
+
+    /**
+     * Bytes allocated per class to read an archive, including the parsing: the stream copy
+     * into a new array the readers used to do, against the jar and mapped readers.
+     */
+    @Test
+    public void allocatedBytesPerClass() throws Exception {
+        for (File archive : archives) {
+            DefaultClassDataLoader loader = new DefaultClassDataLoader();
+            JarReader parser = new JarReader(archive, loader);
+            for (int i = 0; i < WARMUP; i++) {
+                extractWithStreams(archive, parser, loader);
+                new JarReader(archive, loader).read();
+                new MappedJarReader(archive, loader).read();
+            }
+            long start = allocatedBytes();
+            extractWithStreams(archive, parser, loader);
+            long streams = allocatedBytes() - start;
+            JarReader jar = new JarReader(archive, loader);
+            start = allocatedBytes();
+            jar.read();
+            long jarReader = allocatedBytes() - start;
+            MappedJarReader mapped = new MappedJarReader(archive, loader);
+            start = allocatedBytes();
+            mapped.read();
+            long mappedReader = allocatedBytes() - start;
+            int count = jar.getClassFiles().size();
+            assertEquals(count, mapped.getClassFiles().size());
+            System.out.println(archive.getName() + ": " + count + " classes, allocated bytes/class: streams="
+                    + streams / count + " JarReader=" + jarReader / count + " MappedJarReader=" + mappedReader / count);
+        }
+    }
+
+    /**
+     * Extract the class files the way the readers used to, each into a new array.
+     * @param parser the reader parsing the class files, or null to only extract them.
+     * @param loader the loader the parsed classes are associated with.
+     */
+    private static long extractWithStreams(File archive, AbstractClassReader parser, ClassDataLoader loader)
+            throws IOException {
+        long size = 0;
+        ZipInputStream zis = new ZipInputStream(new BufferedInputStream(new FileInputStream(archive)));
+        try {
+            ZipEntry entry = null;
+            byte buffer[] = new byte[2048];
+            int count = 0;
+            while ((entry = zis.getNextEntry()) != null) {
+                if (entry.getName().endsWith(".class")) {
+                    ByteArrayOutputStream os = new ByteArrayOutputStream();
+                    while ((count = zis.read(buffer)) != -1) {
+                        os.write(buffer, 0, count);
+                    }
+                    byte[] data = os.toByteArray();
+                    if (parser != null) {
+                        parser.parseClass(new ClassDumper(loader, parser.getSymbolTable(),
+                                parser.getAnnotationPolicy()), entry.getName(), data, data.length);
+                    }
+                    size += data.length;
+                }
+            }
+        } finally {
+            zis.close();
+        }
+        return size;
+    }
+
+    private static long extractFromMapping(List<ClassFile> files) throws IOException {
+        long size = 0;
+        for (ClassFile file : files) {
+            ClassBuffer buffer = ClassBuffer.get();
+            file.load(buffer);
+            size += buffer.getLength();
+        }
+        return size;
+    }
+
+    private long allocatedBytes() throws Exception {
+        return (Long) allocatedBytes.invoke(threads, Thread.currentThread().getId());
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2012 William Bernardet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.japi.checker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.googlecode.japi.checker.DefaultClassDataLoader.ClassStream;
+import com.googlecode.japi.checker.Reporter.Report;
+import com.googlecode.japi.checker.model.ClassData;
+import com.googlecode.japi.checker.utils.AntPatternMatcher;
+
+public class TestStreamingCheck extends AbstractBCCheckerUnitTest {
+    private static final String CHILD = "com/googlecode/japi/checker/tests/inheritance/pullup/Child";
+    private static final String PARENT = "com/googlecode/japi/checker/tests/inheritance/pullup/Parent";
+    private static final String UNRELATED = "com/googlecode/japi/checker/tests/ClassToAbstract";
+    private static final String REMOVED = "com/googlecode/japi/checker/tests/RemovedClass";
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void testWaitForMissingSuperType() throws IOException {
+        // the subclass comes first and its super class last, the rules must see the super class anyway.
+        File archive = writeNewVersion(CHILD, PARENT);
+        DefaultClassDataLoader referenceLoader = new DefaultClassDataLoader();
+        referenceLoader.read(getReference().toURI());
+        List<ClassData> classes = new ArrayList<ClassData>();
+        for (String name : Arrays.asList(CHILD, UNRELATED, REMOVED)) {
+            classes.add(referenceLoader.fromName(name));
+        }
+        DefaultClassDataLoader loader = new DefaultClassDataLoader();
+        ClassStream stream = loader.prepareStream(archive.toURI());
+        stream.register();
+        final List<String> checked = new ArrayList<String>();
+        BasicReporter reporter = new BasicReporter();
+        StreamingCheck check = new StreamingCheck(reporter, stream, classes,
+                Collections.<AntPatternMatcher>emptyList(), Collections.<AntPatternMatcher>emptyList()) {
+            @Override
+            protected void check(Reporter buffer, ClassData clazz, ClassData newClazz) {
+                if (clazz.getName().equals(REMOVED)) {
+                    assertNull(newClazz);
+                } else {
+                    assertNotNull(clazz.getName(), newClazz);
+                }
+                if (clazz.getName().equals(CHILD)) {
+                    // only the classes read so far are visible through the loader.
+                    assertNotNull(newClazz.getClassDataLoader().fromName(PARENT));
+                }
+                checked.add(clazz.getName());
+                buffer.report(new Report(Severity.ERROR, clazz.getName(), clazz, newClazz));
+            }
+
+            @Override
+            protected boolean shouldStop() {
+                return false;
+            }
+        };
+        assertTrue(check.run());
+        // the subclass is checked last, once its super class is read.
+        assertEquals(Arrays.asList(REMOVED, UNRELATED, CHILD), checked);
+        List<String> reported = new ArrayList<String>();
+        for (Report report : reporter.getMessages()) {
+            reported.add(report.getMessage());
+        }
+        // the reports still follow the order of the reference classes.
+        assertEquals(Arrays.asList(CHILD, UNRELATED, REMOVED), reported);
+        assertNotNull(check.getNewClasses().get(PARENT));
+    }
+
+    /**
+     * Copy the classes of the new version into an archive, the first class at the beginning
+     * and the last one at the end.
+     */
+    private File writeNewVersion(String first, String last) throws IOException {
+        AbstractClassReader reader = new DefaultClassDataLoader().createReader(getNewVersion(), ParseMode.FULL);
+        List<String> names = new ArrayList<String>(reader.list());
+        assertTrue(names.remove(first + ".class"));
+        assertTrue(names.remove(last + ".class"));
+        names.add(0, first + ".class");
+        names.add(last + ".class");
+        File archive = new File(tmp.getRoot(), "streamed.jar");
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(archive));
+        try {
+            ClassBuffer buffer = ClassBuffer.get();
+            for (String name : names) {
+                reader.reload(name, buffer);
+                out.putNextEntry(new ZipEntry(name));
+                out.write(buffer.getData(), 0, buffer.getLength());
+                out.closeEntry();
+            }
+        } finally {
+            out.close();
+        }
+        return archive;
+    }
+}
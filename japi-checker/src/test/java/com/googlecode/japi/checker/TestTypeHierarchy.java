@@ -0,0 +1,103 @@
+/*
+ * Copyright 2012 William Bernardet
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.japi.checker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import com.googlecode.japi.checker.model.MemberTable;
+
+public class TestTypeHierarchy extends AbstractBCCheckerUnitTest {
+    private static final String CHILD = "com/googlecode/japi/checker/tests/inheritance/pullup/Child";
+    private static final String PARENT = "com/googlecode/japi/checker/tests/inheritance/pullup/Parent";
+    private static final String IFACE = "com/googlecode/japi/checker/tests/inheritance/pullup/Iface";
+
+    @Test
+    public void testInheritedMembers() throws IOException {
+        // the members of the child have been pulled up to the parent in the new version.
+        MemberTable members = new TypeHierarchy(read(getNewVersion())).getMembers(CHILD);
+        assertNotNull(members);
+        assertEquals(PARENT, members.getMethod("pulled", "()V").getOwner().getName());
+        assertEquals(PARENT, members.getField("pulledField", "I").getOwner().getName());
+        assertEquals(IFACE, members.getMethod("fromIface", "()V").getOwner().getName());
+        assertNotNull(new TypeHierarchy(read(getNewVersion())).getMembers(PARENT).getMethod("pulled", "()V"));
+        // private members are not inherited.
+        assertNull(members.getMethod("hidden", "()V"));
+        assertNull(members.getField("hidden", "I"));
+
+        members = new TypeHierarchy(read(getReference())).getMembers(CHILD);
+        // the own members win over the inherited ones.
+        assertEquals(CHILD, members.getMethod("hidden", "()V").getOwner().getName());
+        assertEquals(CHILD, members.getMethod("fromIface", "()V").getOwner().getName());
+    }
+
+    @Test
+    public void testMemoizedMembers() throws IOException {
+        DefaultClassDataLoader loader = read(getNewVersion());
+        TypeHierarchy memoizing = new TypeHierarchy(loader);
+        assertSame(memoizing.getMembers(CHILD), memoizing.getMembers(CHILD));
+        TypeHierarchy rebuilding = new TypeHierarchy(loader, false);
+        MemberTable members = rebuilding.getMembers(CHILD);
+        assertNotSame(members, rebuilding.getMembers(CHILD));
+        // the tables are rebuilt out of the same classes.
+        assertSame(memoizing.getMembers(CHILD).getMethod("pulled", "()V"), members.getMethod("pulled", "()V"));
+        assertNull(rebuilding.getMembers("does/not/Exist"));
+        assertNull(memoizing.getMembers("does/not/Exist"));
+    }
+
+    @Test
+    public void testSameApi() throws IOException {
+        TypeHierarchy reference = new TypeHierarchy(read(getReference()));
+        TypeHierarchy newer = new TypeHierarchy(read(getNewVersion()));
+        assertTrue(reference.hasSameApi(IFACE, newer));
+        assertFalse(reference.hasSameApi(PARENT, newer));
+        assertFalse(reference.hasSameApi(CHILD, newer));
+        // the result for each hierarchy is kept.
+        assertTrue(newer.hasSameApi(CHILD, newer));
+        assertFalse(newer.hasSameApi(CHILD, reference));
+        // the types which cannot be loaded are compared by name.
+        assertTrue(reference.hasSameApi("does/not/Exist", newer));
+        assertFalse(reference.hasSameApi(CHILD, new TypeHierarchy(new DefaultClassDataLoader())));
+    }
+
+    @Test
+    public void testMissingSuperTypes() throws IOException {
+        TypeHierarchy hierarchy = new TypeHierarchy(read(getNewVersion()));
+        // java/lang/Object is not part of the artifact, the subtypes still know about it.
+        assertTrue(hierarchy.isSubclass(CHILD, PARENT));
+        assertTrue(hierarchy.isSubclass(CHILD, "java/lang/Object"));
+        assertTrue(hierarchy.isSubtype(CHILD, IFACE));
+        assertFalse(hierarchy.isSubclass(CHILD, IFACE));
+        assertFalse(hierarchy.isSubtype(PARENT, IFACE));
+        assertFalse(hierarchy.isSubtype("java/lang/Object", PARENT));
+    }
+
+    private static DefaultClassDataLoader read(File artifact) throws IOException {
+        DefaultClassDataLoader loader = new DefaultClassDataLoader();
+        loader.read(artifact.toURI());
+        return loader;
+    }
+}